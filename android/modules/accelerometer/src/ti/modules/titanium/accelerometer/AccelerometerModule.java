@@ -36,6 +36,7 @@ public class AccelerometerModule extends KrollModule
 	public AccelerometerModule(TiContext tiContext)
 	{
 		super(tiContext);
+		eventManager.setCoalesced(EVENT_UPDATE, true);
 	}
 
 	@Override
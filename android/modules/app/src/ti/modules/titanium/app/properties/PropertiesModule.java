@@ -6,6 +6,8 @@
  */
 package ti.modules.titanium.app.properties;
 
+import java.util.HashMap;
+
 import org.appcelerator.kroll.KrollDefaultValueProvider;
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollInvocation;
@@ -152,6 +154,10 @@ public class PropertiesModule extends KrollModule {
 		
 		Log.i(LCAT, "setList passed with ["+key+"] and a list of ["+value.length+"] items.");
 
+		appProperties.setList(key, toStringList(value));
+	}
+
+	protected String[] toStringList(Object[] value) {
 		String[] valueList = new String[value.length];
 		for (int i = 0; i < value.length; i++) {
 			Object v = value[i];
@@ -163,11 +169,40 @@ public class PropertiesModule extends KrollModule {
 				valueList[i] = v.toString();
 			}
 		}
-		appProperties.setList(key, valueList);
+		return valueList;
 	}
 
 	@Kroll.method
 	public void setString(String key, String value) {
 		appProperties.setString(key, value);
 	}
+
+	@Kroll.method
+	public void setProperties(KrollDict properties) {
+		HashMap<String, Object> values = new HashMap<String, Object>(properties.size());
+		for (String key : properties.keySet()) {
+			Object v = properties.get(key);
+			if (v instanceof Object[]) {
+				values.put(key, toStringList((Object[]) v));
+			} else if (v instanceof KrollDict) {
+				values.put(key, TiConvert.toJSON((KrollDict) v).toString());
+			} else if (v instanceof Number) {
+				// stored the way setInt and setDouble would, so the typed getters find what they expect
+				double d = ((Number) v).doubleValue();
+				if (d == Math.rint(d) && d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE) {
+					values.put(key, (int) d);
+				} else {
+					values.put(key, d + "");
+				}
+			} else {
+				values.put(key, v);
+			}
+		}
+		appProperties.setProperties(values);
+	}
+
+	@Kroll.method
+	public void flush() {
+		appProperties.flush();
+	}
 }
@@ -55,6 +55,7 @@ public class GeolocationModule extends KrollModule
 	public GeolocationModule(TiContext tiContext)
 	{
 		super(tiContext);
+		eventManager.setCoalesced(TiC.EVENT_HEADING, true);
 		tiCompass = new TiCompass(this);
 		tiLocation = new TiLocation(this);
 	}
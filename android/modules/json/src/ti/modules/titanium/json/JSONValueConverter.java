@@ -0,0 +1,29 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.json;
+
+import org.appcelerator.kroll.KrollInvocation;
+import org.appcelerator.kroll.KrollJavascriptConverter;
+
+/**
+ * Hands JS arguments through untouched, so {@link JSONModule#stringify} can serialize
+ * Rhino objects directly instead of converting them to KrollDicts first.
+ */
+public class JSONValueConverter implements KrollJavascriptConverter
+{
+	private static final JSONValueConverter _instance = new JSONValueConverter();
+
+	public static JSONValueConverter getInstance()
+	{
+		return _instance;
+	}
+
+	public Object convertJavascript(KrollInvocation invocation, Object o, Class<?> target)
+	{
+		return o;
+	}
+}
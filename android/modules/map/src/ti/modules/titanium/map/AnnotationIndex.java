@@ -0,0 +1,269 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A grid over the coordinates of a map's annotations. It finds the annotations in a
+ * region without walking all of them, and it can gather the ones that are close together
+ * at the current zoom into clusters.
+ *
+ * Coordinates are in microdegrees, like GeoPoint. The index is built from a snapshot of
+ * the annotations and never changes afterwards, so any thread can query it.
+ */
+public class AnnotationIndex
+{
+	// the grid is sized for about this many annotations per cell
+	private static final int CELL_TARGET = 8;
+	private static final int MIN_CELL_SIZE = 1000;
+	private static final int MAX_CELL_SIZE = 10000000;
+
+	private static final int MAX_LATITUDE = 90000000;
+	private static final int MAX_LONGITUDE = 180000000;
+
+	/**
+	 * One marker to draw. It's either a single annotation, or a cluster of count
+	 * annotations drawn at their center, which has no proxy.
+	 */
+	public static class Entry
+	{
+		public final AnnotationProxy proxy;
+		public final int latitude;
+		public final int longitude;
+		public final int count;
+
+		Entry(AnnotationProxy proxy, int latitude, int longitude, int count) {
+			this.proxy = proxy;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.count = count;
+		}
+
+		public boolean isCluster() {
+			return count > 1;
+		}
+	}
+
+	private static class Positions
+	{
+		int[] values = new int[64];
+		int size;
+
+		void add(int position) {
+			if (size == values.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			values[size++] = position;
+		}
+	}
+
+	private static class Cluster
+	{
+		int first;
+		int count;
+		long latitudes;
+		long longitudes;
+	}
+
+	private AnnotationProxy[] proxies;
+	private int[] latitudes;
+	private int[] longitudes;
+	private int cellSize;
+	// the positions of the annotations in each cell, by cellKey
+	private HashMap<Long, int[]> cells = new HashMap<Long, int[]>();
+
+	public AnnotationIndex(AnnotationProxy[] proxies, int[] latitudes, int[] longitudes)
+	{
+		this.proxies = proxies;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+
+		int count = proxies.length;
+		if (count == 0) {
+			cellSize = MAX_CELL_SIZE;
+			return;
+		}
+
+		int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+		int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			minLat = Math.min(minLat, latitudes[i]);
+			maxLat = Math.max(maxLat, latitudes[i]);
+			minLon = Math.min(minLon, longitudes[i]);
+			maxLon = Math.max(maxLon, longitudes[i]);
+		}
+		double area = ((double) maxLat - minLat + 1) * ((double) maxLon - minLon + 1);
+		cellSize = (int) Math.sqrt(area * CELL_TARGET / count);
+		cellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, cellSize));
+
+		// count the annotations in each cell first, so each one gets an exact array
+		long[] keys = new long[count];
+		HashMap<Long, int[]> sizes = new HashMap<Long, int[]>();
+		for (int i = 0; i < count; i++) {
+			keys[i] = cellKey(cellOf(latitudes[i], cellSize), cellOf(longitudes[i], cellSize));
+			int[] size = sizes.get(keys[i]);
+			if (size == null) {
+				size = new int[1];
+				sizes.put(keys[i], size);
+			}
+			size[0]++;
+		}
+		for (Map.Entry<Long, int[]> entry : sizes.entrySet()) {
+			cells.put(entry.getKey(), new int[entry.getValue()[0]]);
+			entry.getValue()[0] = 0;
+		}
+		for (int i = 0; i < count; i++) {
+			int[] size = sizes.get(keys[i]);
+			cells.get(keys[i])[size[0]++] = i;
+		}
+	}
+
+	private static long cellKey(int latitudeCell, int longitudeCell)
+	{
+		return ((long) latitudeCell << 32) | (longitudeCell & 0xffffffffL);
+	}
+
+	private static int cellOf(int value, int size)
+	{
+		return (int) Math.floor((double) value / size);
+	}
+
+	public int size()
+	{
+		return proxies.length;
+	}
+
+	/**
+	 * Finds the markers to draw for the annotations inside the bounds. The longitudes may
+	 * run past the antimeridian.
+	 *
+	 * @param clusterSize when > 0, the annotations in each clusterSize square are drawn as one
+	 * cluster. The squares are aligned to the equator and the prime meridian, so clusters stay
+	 * put while the map is panned.
+	 * @param shown an annotation that always gets an entry of its own, even when it's outside
+	 * the bounds. May be null.
+	 */
+	public ArrayList<Entry> query(int minLat, int maxLat, int minLon, int maxLon, int clusterSize, AnnotationProxy shown)
+	{
+		Positions found = new Positions();
+		if ((long) maxLon - minLon >= 2L * MAX_LONGITUDE) {
+			collect(minLat, maxLat, -MAX_LONGITUDE, MAX_LONGITUDE, found);
+		} else {
+			while (minLon < -MAX_LONGITUDE) {
+				minLon += 2 * MAX_LONGITUDE;
+				maxLon += 2 * MAX_LONGITUDE;
+			}
+			while (minLon > MAX_LONGITUDE) {
+				minLon -= 2 * MAX_LONGITUDE;
+				maxLon -= 2 * MAX_LONGITUDE;
+			}
+			if (maxLon > MAX_LONGITUDE) {
+				collect(minLat, maxLat, minLon, MAX_LONGITUDE, found);
+				collect(minLat, maxLat, -MAX_LONGITUDE, maxLon - 2 * MAX_LONGITUDE, found);
+			} else {
+				collect(minLat, maxLat, minLon, maxLon, found);
+			}
+		}
+
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		int shownPosition = -1;
+		if (shown != null) {
+			for (int i = 0; i < proxies.length; i++) {
+				if (proxies[i] == shown) {
+					shownPosition = i;
+					entries.add(new Entry(shown, latitudes[i], longitudes[i], 1));
+					break;
+				}
+			}
+		}
+
+		if (clusterSize <= 0) {
+			for (int i = 0; i < found.size; i++) {
+				int position = found.values[i];
+				if (position != shownPosition) {
+					entries.add(new Entry(proxies[position], latitudes[position], longitudes[position], 1));
+				}
+			}
+			return entries;
+		}
+
+		LinkedHashMap<Long, Cluster> clusters = new LinkedHashMap<Long, Cluster>();
+		for (int i = 0; i < found.size; i++) {
+			int position = found.values[i];
+			if (position == shownPosition) {
+				continue;
+			}
+			long key = cellKey(cellOf(latitudes[position], clusterSize), cellOf(longitudes[position], clusterSize));
+			Cluster cluster = clusters.get(key);
+			if (cluster == null) {
+				cluster = new Cluster();
+				cluster.first = position;
+				clusters.put(key, cluster);
+			}
+			cluster.count++;
+			cluster.latitudes += latitudes[position];
+			cluster.longitudes += longitudes[position];
+		}
+		for (Cluster cluster : clusters.values()) {
+			if (cluster.count == 1) {
+				int position = cluster.first;
+				entries.add(new Entry(proxies[position], latitudes[position], longitudes[position], 1));
+			} else {
+				entries.add(new Entry(null, (int) (cluster.latitudes / cluster.count),
+					(int) (cluster.longitudes / cluster.count), cluster.count));
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Adds the positions of the annotations inside the bounds, which don't cross the antimeridian.
+	 */
+	private void collect(int minLat, int maxLat, int minLon, int maxLon, Positions found)
+	{
+		minLat = Math.max(minLat, -MAX_LATITUDE);
+		maxLat = Math.min(maxLat, MAX_LATITUDE);
+		if (minLat > maxLat || minLon > maxLon) {
+			return;
+		}
+
+		int fromLat = cellOf(minLat, cellSize), toLat = cellOf(maxLat, cellSize);
+		int fromLon = cellOf(minLon, cellSize), toLon = cellOf(maxLon, cellSize);
+		long visited = ((long) toLat - fromLat + 1) * ((long) toLon - fromLon + 1);
+		if (visited > cells.size()) {
+			// zoomed out past the data, it's quicker to go over the cells there are
+			for (int[] cell : cells.values()) {
+				collect(cell, minLat, maxLat, minLon, maxLon, found);
+			}
+			return;
+		}
+		for (int latCell = fromLat; latCell <= toLat; latCell++) {
+			for (int lonCell = fromLon; lonCell <= toLon; lonCell++) {
+				int[] cell = cells.get(cellKey(latCell, lonCell));
+				if (cell != null) {
+					collect(cell, minLat, maxLat, minLon, maxLon, found);
+				}
+			}
+		}
+	}
+
+	private void collect(int[] cell, int minLat, int maxLat, int minLon, int maxLon, Positions found)
+	{
+		for (int position : cell) {
+			int latitude = latitudes[position], longitude = longitudes[position];
+			if (latitude >= minLat && latitude <= maxLat && longitude >= minLon && longitude <= maxLon) {
+				found.add(position);
+			}
+		}
+	}
+}
@@ -9,7 +9,10 @@ package ti.modules.titanium.map;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollProxy;
@@ -21,6 +24,7 @@ import org.appcelerator.titanium.io.TiBaseFile;
 import org.appcelerator.titanium.io.TiFileFactory;
 import org.appcelerator.titanium.proxy.TiViewProxy;
 import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiBackgroundTask;
 import org.appcelerator.titanium.util.TiConfig;
 import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.util.TiUIHelper;
@@ -28,7 +32,12 @@ import org.appcelerator.titanium.view.TiUIView;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.ShapeDrawable;
@@ -81,6 +90,13 @@ public class TiMapView extends TiUIView
 	private static final int MSG_SELECT_ANNOTATION = 309;
 	private static final int MSG_REMOVE_ALL_ANNOTATIONS = 310;
 	private static final int MSG_UPDATE_ANNOTATIONS = 311;
+	private static final int MSG_REFRESH_MARKERS = 312;
+
+	// how long the map has to stop moving before the markers are worked out again
+	private static final int REFRESH_MARKERS_DELAY = 200;
+	// the width of the squares annotations are clustered in, in dip
+	private static final int CLUSTER_SIZE = 48;
+	private static final int MAX_CLUSTER_MARKERS = 64;
 
 	private boolean scrollEnabled;
 	private boolean regionFit;
@@ -96,6 +112,24 @@ public class TiMapView extends TiUIView
 	private ArrayList<SelectedAnnotation> selectedAnnotations;
 	private Handler handler;
 
+	private boolean clusterAnnotations;
+	private AnnotationIndex annotationIndex;
+	private int indexGeneration;
+	private int markerGeneration;
+	// the annotation whose details are showing, it's never culled or clustered
+	private AnnotationProxy shownAnnotation;
+
+	// markers are shared by every annotation with the same image or color
+	private HashMap<String, Drawable> imageMarkers = new HashMap<String, Drawable>();
+	private HashMap<Integer, Drawable> colorMarkers = new HashMap<Integer, Drawable>();
+	@SuppressWarnings("serial")
+	private LinkedHashMap<Integer, Drawable> clusterMarkers = new LinkedHashMap<Integer, Drawable>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Drawable> eldest) {
+			return size() > MAX_CLUSTER_MARKERS;
+		}
+	};
+
 	class LocalMapView extends MapView
 	{
 		private boolean scrollEnabled;
@@ -147,30 +181,91 @@ public class TiMapView extends TiUIView
 				d.put(TiC.PROPERTY_LATITUDE_DELTA, scaleFromGoogle(lastLatitudeSpan));
 				d.put(TiC.PROPERTY_LONGITUDE_DELTA, scaleFromGoogle(lastLongitudeSpan));
 				proxy.fireEvent(TiC.EVENT_REGION_CHANGED, d);
+				refreshMarkers(REFRESH_MARKERS_DELAY);
 			}
 		}
 	}
 
 	class TitaniumOverlay extends ItemizedOverlay<TiOverlayItem>
 	{
-		ArrayList<AnnotationProxy> annotations;
+		ArrayList<AnnotationIndex.Entry> entries = new ArrayList<AnnotationIndex.Entry>();
 		TitaniumOverlayListener listener;
+		// the items of the annotations drawn last, so they're only built once while they stay in view
+		HashMap<AnnotationProxy, TiOverlayItem> items = new HashMap<AnnotationProxy, TiOverlayItem>();
+		HashMap<AnnotationProxy, TiOverlayItem> lastItems;
 
 		public TitaniumOverlay(Drawable defaultDrawable, TitaniumOverlayListener listener) {
 			super(defaultDrawable);
 			this.listener = listener;
+			populate();
 		}
 
-		public void setAnnotations(ArrayList<AnnotationProxy> annotations) {
-			this.annotations = new ArrayList<AnnotationProxy>(annotations);
+		/**
+		 * Replaces the markers drawn, see {@link AnnotationIndex#query}.
+		 */
+		public void setEntries(ArrayList<AnnotationIndex.Entry> entries) {
+			this.entries = entries;
+			lastItems = items;
+			items = new HashMap<AnnotationProxy, TiOverlayItem>();
+			// the last focused item may be past the end of the new ones
+			setLastFocusedIndex(-1);
 			populate();
+			lastItems = null;
+		}
+
+		/**
+		 * @return the index of the annotation's item, or -1 if it's culled or in a cluster
+		 */
+		public int indexOf(AnnotationProxy annotation) {
+			int size = entries.size();
+			for (int i = 0; i < size; i++) {
+				if (entries.get(i).proxy == annotation) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Makes sure the annotation has an item of its own.
+		 * @return the index of its item, or -1 if it has no coordinates
+		 */
+		public int show(AnnotationProxy annotation) {
+			int index = indexOf(annotation);
+			if (index == -1) {
+				KrollDict a = annotation.getProperties();
+				if (!a.containsKey(TiC.PROPERTY_LATITUDE) || !a.containsKey(TiC.PROPERTY_LONGITUDE)) {
+					return -1;
+				}
+				ArrayList<AnnotationIndex.Entry> shown = new ArrayList<AnnotationIndex.Entry>(entries);
+				shown.add(new AnnotationIndex.Entry(annotation, scaleToGoogle(a.getDouble(TiC.PROPERTY_LATITUDE)),
+					scaleToGoogle(a.getDouble(TiC.PROPERTY_LONGITUDE)), 1));
+				setEntries(shown);
+				index = shown.size() - 1;
+			}
+			return index;
 		}
 
 		@Override
 		protected TiOverlayItem createItem(int i) {
+			AnnotationIndex.Entry entry = entries.get(i);
+			if (entry.isCluster()) {
+				TiOverlayItem item = new TiOverlayItem(new GeoPoint(entry.latitude, entry.longitude), null, null, null);
+				item.setClusterSize(entry.count);
+				item.setMarker(makeClusterMarker(entry.count));
+				return item;
+			}
+			TiOverlayItem item = lastItems != null ? lastItems.get(entry.proxy) : null;
+			if (item == null) {
+				item = makeItem(entry.proxy);
+			}
+			items.put(entry.proxy, item);
+			return item;
+		}
+
+		private TiOverlayItem makeItem(AnnotationProxy p) {
 			TiOverlayItem item = null;
 
-			AnnotationProxy p = annotations.get(i);
 			KrollDict a = p.getProperties();
 			if (a.containsKey(TiC.PROPERTY_LATITUDE) && a.containsKey(TiC.PROPERTY_LONGITUDE)) {
 				String title = a.optString(TiC.PROPERTY_TITLE, "");
@@ -187,8 +282,9 @@ public class TiMapView extends TiUIView
 						imagePath = a.getString(TiC.PROPERTY_PIN_IMAGE);
 					}
 					Drawable marker = makeMarker(imagePath);
-					boundCenterBottom(marker);
-					item.setMarker(marker);
+					if (marker != null) {
+						item.setMarker(marker);
+					}
 				} else if (a.containsKey(TiC.PROPERTY_PINCOLOR)) {
 					Object value = a.get(TiC.PROPERTY_PINCOLOR);
 					
@@ -215,7 +311,7 @@ public class TiMapView extends TiUIView
 						}
 					} catch (Exception e) {
 						// May as well catch all errors 
-						Log.w(LCAT, "Unable to parse color [" + a.getString(TiC.PROPERTY_PINCOLOR)+"] for item ["+i+"]");
+						Log.w(LCAT, "Unable to parse color [" + a.getString(TiC.PROPERTY_PINCOLOR)+"] for item ["+title+"]");
 					}
 				}
 
@@ -244,14 +340,14 @@ public class TiMapView extends TiUIView
 					}
 				}
 			} else {
-				Log.w(LCAT, "Skipping annotation: No coordinates #" + i);
+				Log.w(LCAT, "Skipping annotation: No coordinates");
 			}
 			return item;
 		}
 
 		@Override
 		public int size() {
-			return (annotations == null) ? 0 : annotations.size();
+			return entries.size();
 		}
 
 		@Override
@@ -435,6 +531,10 @@ public class TiMapView extends TiUIView
 			case MSG_UPDATE_ANNOTATIONS :
 				doUpdateAnnotations();
 				return true;
+
+			case MSG_REFRESH_MARKERS :
+				doRefreshMarkers();
+				return true;
 		}
 
 		return false;
@@ -445,10 +545,12 @@ public class TiMapView extends TiUIView
 			view.removeView(itemView);
 			itemView.clearLastIndex();
 		}
+		shownAnnotation = null;
 	}
 
 	private void showAnnotation(int index, TiOverlayItem item) {
 		if (view != null && itemView != null && item != null) {
+			shownAnnotation = item.getProxy();
 			itemView.setItem(index, item);
 			//Make sure the annotation is always on top of the marker
 			int y = -1*item.getMarker(TiOverlayItem.ITEM_STATE_FOCUSED_MASK).getIntrinsicHeight();
@@ -475,6 +577,11 @@ public class TiMapView extends TiUIView
 		if (overlay != null) {
 			synchronized(overlay) {
 				TiOverlayItem item = overlay.getItem(index);
+				if (item.isCluster()) {
+					hideAnnotation();
+					zoomInto(item.getPoint());
+					return;
+				}
 				if (itemView != null && index == itemView.getLastIndex() && itemView.getVisibility() == View.VISIBLE) {
 					hideAnnotation();
 					return;
@@ -514,6 +621,9 @@ public class TiMapView extends TiUIView
 		if (d.containsKey(TiC.PROPERTY_USER_LOCATION)) {
 			doUserLocation(d.getBoolean(TiC.PROPERTY_USER_LOCATION));
 		}
+		if (d.containsKey(TiC.PROPERTY_CLUSTER_ANNOTATIONS)) {
+			clusterAnnotations = TiConvert.toBoolean(d, TiC.PROPERTY_CLUSTER_ANNOTATIONS);
+		}
 		if (d.containsKey(TiC.PROPERTY_ANNOTATIONS)) {
 			proxy.setProperty(TiC.PROPERTY_ANNOTATIONS, d.get(TiC.PROPERTY_ANNOTATIONS));
 			Object [] annotations = (Object[]) d.get(TiC.PROPERTY_ANNOTATIONS);
@@ -543,6 +653,9 @@ public class TiMapView extends TiUIView
 			} else {
 				doSetMapType(TiConvert.toInt(newValue));
 			}
+		} else if (key.equals(TiC.PROPERTY_CLUSTER_ANNOTATIONS)) {
+			clusterAnnotations = TiConvert.toBoolean(newValue);
+			refreshMarkers(0);
 		} else {
 			super.propertyChanged(key, oldValue, newValue, proxy);
 		}
@@ -604,10 +717,13 @@ public class TiMapView extends TiUIView
 					overlay = null;
 				}
 
+				// drop the index of the old annotations, and any still being built
+				annotationIndex = null;
+				indexGeneration++;
 				if (annotations.size() > 0) {
 					overlay = new TitaniumOverlay(makeMarker(Color.BLUE), this);
-					overlay.setAnnotations(annotations);
 					overlays.add(overlay);
+					indexAnnotations(annotations);
 
 					int numSelectedAnnotations = selectedAnnotations.size();
 					for(int i = 0; i < numSelectedAnnotations; i++) {
@@ -644,13 +760,17 @@ public class TiMapView extends TiUIView
 	public void doSelectAnnotation(boolean select, String title, boolean animate, boolean center)
 	{
 		if (title != null && view != null && annotations != null && overlay != null) {
-			int index = ((ViewProxy)proxy).findAnnotation(title);
-			if (index > -1) {
+			int position = ((ViewProxy)proxy).findAnnotation(title);
+			if (position > -1) {
 				if (overlay != null) {
 					synchronized(overlay) {
-						TiOverlayItem item = overlay.getItem(index);
-
 						if (select) {
+							int index = overlay.show(annotations.get(position));
+							if (index == -1) {
+								return;
+							}
+							TiOverlayItem item = overlay.getItem(index);
+
 							if (itemView != null && index == itemView.getLastIndex() && itemView.getVisibility() != View.VISIBLE) {
 								showAnnotation(index, item);
 								return;
@@ -677,6 +797,153 @@ public class TiMapView extends TiUIView
 		}
 	}
 
+	/**
+	 * Indexes the coordinates of the annotations on a background thread, then works out
+	 * the markers to draw.
+	 */
+	private void indexAnnotations(ArrayList<AnnotationProxy> annotations)
+	{
+		int count = annotations.size();
+		AnnotationProxy[] proxies = new AnnotationProxy[count];
+		int[] latitudes = new int[count];
+		int[] longitudes = new int[count];
+		int indexed = 0;
+		for (int i = 0; i < count; i++) {
+			AnnotationProxy p = annotations.get(i);
+			KrollDict a = p.getProperties();
+			if (a.containsKey(TiC.PROPERTY_LATITUDE) && a.containsKey(TiC.PROPERTY_LONGITUDE)) {
+				proxies[indexed] = p;
+				latitudes[indexed] = scaleToGoogle(a.getDouble(TiC.PROPERTY_LATITUDE));
+				longitudes[indexed] = scaleToGoogle(a.getDouble(TiC.PROPERTY_LONGITUDE));
+				indexed++;
+			} else {
+				Log.w(LCAT, "Skipping annotation: No coordinates #" + i);
+			}
+		}
+		if (indexed < count) {
+			AnnotationProxy[] trimmedProxies = new AnnotationProxy[indexed];
+			int[] trimmedLatitudes = new int[indexed];
+			int[] trimmedLongitudes = new int[indexed];
+			System.arraycopy(proxies, 0, trimmedProxies, 0, indexed);
+			System.arraycopy(latitudes, 0, trimmedLatitudes, 0, indexed);
+			System.arraycopy(longitudes, 0, trimmedLongitudes, 0, indexed);
+			proxies = trimmedProxies;
+			latitudes = trimmedLatitudes;
+			longitudes = trimmedLongitudes;
+		}
+
+		final AnnotationProxy[] indexedProxies = proxies;
+		final int[] indexedLatitudes = latitudes;
+		final int[] indexedLongitudes = longitudes;
+		final int generation = ++indexGeneration;
+		new TiBackgroundTask<AnnotationIndex>("indexing annotations") {
+			protected AnnotationIndex doInBackground() {
+				return new AnnotationIndex(indexedProxies, indexedLatitudes, indexedLongitudes);
+			}
+			protected void onResult(AnnotationIndex index) {
+				// the annotations may have changed again in the meantime
+				if (generation == indexGeneration) {
+					annotationIndex = index;
+					doRefreshMarkers();
+				}
+			}
+		}.execute(handler);
+	}
+
+	/**
+	 * Works out the markers to draw again after delay, or later still if this is called
+	 * again first, so panning and zooming only refresh them once the map stops.
+	 */
+	private void refreshMarkers(int delay)
+	{
+		handler.removeMessages(MSG_REFRESH_MARKERS);
+		handler.sendEmptyMessageDelayed(MSG_REFRESH_MARKERS, delay);
+	}
+
+	/**
+	 * Finds the annotations around the region in view, and the clusters they form at this
+	 * zoom level, on a background thread. Only those get an item in the overlay.
+	 */
+	private void doRefreshMarkers()
+	{
+		if (view == null || overlay == null || annotationIndex == null) {
+			return;
+		}
+
+		final int minLat, maxLat, minLon, maxLon;
+		int latitudeSpan = view.getLatitudeSpan();
+		int longitudeSpan = view.getLongitudeSpan();
+		if (view.getWidth() == 0 || latitudeSpan <= 0 || longitudeSpan <= 0) {
+			// not laid out yet, so there's no region to cull to
+			minLat = scaleToGoogle(-90);
+			maxLat = scaleToGoogle(90);
+			minLon = scaleToGoogle(-180);
+			maxLon = scaleToGoogle(180);
+		} else {
+			// half a screen either side, so short pans don't uncover missing markers
+			GeoPoint center = view.getMapCenter();
+			minLat = center.getLatitudeE6() - latitudeSpan;
+			maxLat = center.getLatitudeE6() + latitudeSpan;
+			minLon = center.getLongitudeE6() - longitudeSpan;
+			maxLon = center.getLongitudeE6() + longitudeSpan;
+		}
+
+		final int clusterSize;
+		if (clusterAnnotations) {
+			// the world is 256 pixels wide at zoom level 0, and doubles with each level
+			float density = view.getContext().getResources().getDisplayMetrics().density;
+			clusterSize = (int) (scaleToGoogle(360) * (long) (CLUSTER_SIZE * density) / (256L << view.getZoomLevel()));
+		} else {
+			clusterSize = 0;
+		}
+
+		final AnnotationIndex index = annotationIndex;
+		final TitaniumOverlay target = overlay;
+		final AnnotationProxy shown = shownAnnotation;
+		final int generation = ++markerGeneration;
+		new TiBackgroundTask<ArrayList<AnnotationIndex.Entry>>("finding annotations in view") {
+			protected ArrayList<AnnotationIndex.Entry> doInBackground() {
+				return index.query(minLat, maxLat, minLon, maxLon, clusterSize, shown);
+			}
+			protected void onResult(ArrayList<AnnotationIndex.Entry> entries) {
+				deliverMarkers(target, entries, generation);
+			}
+		}.execute(handler);
+	}
+
+	private void deliverMarkers(TitaniumOverlay target, ArrayList<AnnotationIndex.Entry> entries, int generation)
+	{
+		// the map moved again, the annotations changed or the view was torn down while this ran
+		if (generation != markerGeneration || target != overlay || view == null) {
+			return;
+		}
+		if (DBG) {
+			Log.d(LCAT, "Drawing " + entries.size() + " markers for " + annotationIndex.size() + " annotations");
+		}
+		synchronized(overlay) {
+			overlay.setEntries(entries);
+			if (shownAnnotation != null) {
+				int index = overlay.indexOf(shownAnnotation);
+				if (index != -1) {
+					itemView.setLastIndex(index);
+				} else {
+					hideAnnotation();
+				}
+			}
+		}
+		view.invalidate();
+	}
+
+	private void zoomInto(GeoPoint point)
+	{
+		final MapController controller = view.getController();
+		controller.animateTo(point, new Runnable() {
+			public void run() {
+				controller.zoomIn();
+			}
+		});
+	}
+
 	public void doUserLocation(boolean userLocation)
 	{
 		if (view != null) {
@@ -713,6 +980,16 @@ public class TiMapView extends TiUIView
 	}
 
 	private Drawable makeMarker(int c)
+	{
+		Drawable marker = colorMarkers.get(c);
+		if (marker == null) {
+			marker = createMarker(c);
+			colorMarkers.put(c, marker);
+		}
+		return marker;
+	}
+
+	private Drawable createMarker(int c)
 	{
 		OvalShape s = new OvalShape();
 		s.resize(1.0f, 1.0f);
@@ -724,18 +1001,101 @@ public class TiMapView extends TiUIView
 	}
 
 	private Drawable makeMarker(String pinImage)
+	{
+		// images that failed to load are cached too, as null, so they aren't read again
+		if (imageMarkers.containsKey(pinImage)) {
+			return imageMarkers.get(pinImage);
+		}
+		Drawable marker = createMarker(pinImage);
+		imageMarkers.put(pinImage, marker);
+		return marker;
+	}
+
+	private Drawable createMarker(String pinImage)
 	{
 		String url = proxy.getTiContext().resolveUrl(null, pinImage);
 		TiBaseFile file = TiFileFactory.createTitaniumFile(proxy.getTiContext(), new String[] { url }, false);
 		try {
 			Drawable d = new BitmapDrawable(TiUIHelper.createBitmap(file.getInputStream()));
-			d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
+			// centered over the location, like ItemizedOverlay.boundCenterBottom
+			int width = d.getIntrinsicWidth();
+			d.setBounds(-width / 2, -d.getIntrinsicHeight(), width - width / 2, 0);
 			return d;
 		} catch (IOException e) {
 			Log.e(LCAT, "Error creating drawable from path: " + pinImage.toString(), e);
 		}
 		return null;
 	}
+
+	private Drawable makeClusterMarker(int count)
+	{
+		Drawable marker = clusterMarkers.get(count);
+		if (marker == null) {
+			marker = new ClusterMarker(count, proxy.getContext().getResources().getDisplayMetrics().density);
+			clusterMarkers.put(count, marker);
+		}
+		return marker;
+	}
+
+	/**
+	 * A circle with the number of annotations in a cluster, centered over the cluster.
+	 */
+	private static class ClusterMarker extends Drawable
+	{
+		private String label;
+		private Paint fill;
+		private Paint text;
+
+		public ClusterMarker(int count, float density) {
+			label = String.valueOf(count);
+			fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+			fill.setColor(Color.argb(224, 0, 96, 192));
+			text = new Paint(Paint.ANTI_ALIAS_FLAG);
+			text.setColor(Color.WHITE);
+			text.setTextSize(12 * density);
+			text.setTextAlign(Paint.Align.CENTER);
+			text.setFakeBoldText(true);
+
+			int radius = (int) ((12 + 3 * label.length()) * density);
+			setBounds(-radius, -radius, radius, radius);
+		}
+
+		@Override
+		public void draw(Canvas canvas) {
+			Rect bounds = getBounds();
+			float x = bounds.exactCenterX(), y = bounds.exactCenterY();
+			canvas.drawCircle(x, y, bounds.width() / 2f, fill);
+			canvas.drawText(label, x, y - (text.ascent() + text.descent()) / 2, text);
+		}
+
+		@Override
+		public int getIntrinsicWidth() {
+			return getBounds().width();
+		}
+
+		@Override
+		public int getIntrinsicHeight() {
+			return getBounds().height();
+		}
+
+		@Override
+		public int getOpacity() {
+			return PixelFormat.TRANSLUCENT;
+		}
+
+		@Override
+		public void setAlpha(int alpha) {
+			fill.setAlpha(alpha);
+			text.setAlpha(alpha);
+		}
+
+		@Override
+		public void setColorFilter(ColorFilter cf) {
+			fill.setColorFilter(cf);
+			text.setColorFilter(cf);
+		}
+	}
+
 	private double scaleFromGoogle(int value) {
 		return (double)value / 1000000.0;
 	}
@@ -18,6 +18,7 @@ public class TiOverlayItem extends OverlayItem
 	private TiViewProxy leftView;
 	private TiViewProxy rightView;
 	private AnnotationProxy proxy;
+	private int clusterSize = 1;
 
 	public TiOverlayItem(GeoPoint location, String title, String snippet, AnnotationProxy proxy) {
 		super(location,title,snippet);
@@ -61,6 +62,21 @@ public class TiOverlayItem extends OverlayItem
 	public AnnotationProxy getProxy() {
 		return proxy;
 	}
+
+	public void setClusterSize(int clusterSize) {
+		this.clusterSize = clusterSize;
+	}
+
+	public int getClusterSize() {
+		return clusterSize;
+	}
+
+	/**
+	 * @return whether this stands for a cluster of annotations, in which case it has no proxy
+	 */
+	public boolean isCluster() {
+		return clusterSize > 1;
+	}
 	public boolean hasData() {
 		return getTitle() != null || getSnippet() != null | leftButtonPath != null || rightButtonPath != null;
 	}
@@ -240,6 +240,9 @@ public class TiOverlayItemView extends FrameLayout
 	public void clearLastIndex() {
 		lastIndex = -1;
 	}
+	public void setLastIndex(int index) {
+		lastIndex = index;
+	}
 	public int getLastIndex() {
 		return lastIndex;
 	}
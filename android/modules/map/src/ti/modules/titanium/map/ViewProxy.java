@@ -30,6 +30,7 @@ import android.view.Window;
 @Kroll.dynamicApis(properties = {
 	TiC.PROPERTY_ANIMATE,
 	TiC.PROPERTY_ANNOTATIONS,
+	TiC.PROPERTY_CLUSTER_ANNOTATIONS,
 	TiC.PROPERTY_MAP_TYPE,
 	TiC.PROPERTY_REGION,
 	TiC.PROPERTY_REGION_FIT,
@@ -328,6 +328,7 @@ public class TiVideoActivity extends Activity
 	@Override
 	protected void onStart() {
 		super.onStart();
+		((TiApplication) getApplication()).activityStarted(this);
 
 		if (messengerReceiver != null) {
 			if (DBG) {
@@ -358,6 +359,12 @@ public class TiVideoActivity extends Activity
 		videoView.pause();
 	}
 
+	@Override
+	protected void onStop() {
+		super.onStop();
+		((TiApplication) getApplication()).activityStopped(this);
+	}
+
 	@Override
 	protected void onDestroy() {
 		super.onDestroy();
@@ -69,6 +69,11 @@ public class HTTPClientProxy extends KrollProxy {
 		return client.getResponseXML();
 	}
 
+	@Kroll.getProperty @Kroll.method
+	public Object getResponseJSON() {
+		return client.getResponseJSON();
+	}
+
 	@Kroll.getProperty @Kroll.method
 	public int getStatus() {
 		return client.getStatus();
@@ -9,9 +9,11 @@ package ti.modules.titanium.network;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
@@ -81,8 +83,10 @@ import org.appcelerator.titanium.kroll.KrollCallback;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
 import org.appcelerator.titanium.util.TiConvert;
+import org.appcelerator.titanium.util.TiJSONReader;
 import org.appcelerator.titanium.util.TiMimeTypeHelper;
 import org.appcelerator.titanium.util.TiTempFileHelper;
+import org.json.JSONException;
 import org.mozilla.javascript.Context;
 
 import ti.modules.titanium.xml.DocumentProxy;
@@ -112,12 +116,18 @@ public class TiHTTPClient
 	private static final String ON_DATA_STREAM = "ondatastream";
 	private static final String ON_SEND_STREAM = "onsendstream";
 
+	// when true, the response body is parsed as JSON while it is received, see getResponseJSON()
+	private static final String PROPERTY_PARSE_JSON = "parseJSON";
+	// optional '.' separated path of the only value to keep from the parsed response
+	private static final String PROPERTY_JSON_PATH = "jsonPath";
+
 	private DefaultHttpClient client;
 	
 	private KrollProxy proxy;
 	private int readyState;
 	private String responseText;
 	private DocumentProxy responseXml;
+	private Object responseJSON;
 	private int status;
 	private String statusText;
 	private boolean connected;
@@ -234,8 +244,11 @@ public class TiHTTPClient
 				}
 
 				responseData = null;
+				responseJSON = null;
 
-				if (is != null) {
+				if (is != null && isParseJSON()) {
+					handleJSONEntity(is, entity.getContentLength());
+				} else if (is != null) {
 					long contentLength = entity.getContentLength();
 					if (DBG) {
 						Log.d(LCAT, "Content length: " + contentLength);
@@ -274,6 +287,31 @@ public class TiHTTPClient
 			return clientResponse;
 		}
 
+		private void handleJSONEntity(InputStream is, long contentLength)
+			throws IOException
+		{
+			// decode and parse as the bytes come in, the body is never held as a whole
+			TiJSONReader reader = new TiJSONReader(
+				new InputStreamReader(new DataStreamInputStream(is, contentLength), charset != null ? charset : HTTP.UTF_8),
+				proxy.getTiContext().getScope());
+			reader.setPath(TiConvert.toString(proxy.getProperty(PROPERTY_JSON_PATH)));
+			try {
+				long start = System.currentTimeMillis();
+				responseJSON = reader.parse();
+				if (DBG) {
+					Log.d(LCAT, "Parsed JSON response in " + (System.currentTimeMillis() - start) + "ms");
+				}
+			} catch (JSONException e) {
+				throw new IOException("Error parsing JSON response: " + e.getMessage());
+			} finally {
+				try {
+					entity.consumeContent();
+				} catch (IOException e) {
+					// Ignore
+				}
+			}
+		}
+
 		private TiFile createFileResponseData(boolean dumpResponseOut) throws IOException {
 			File outFile;
 			TiApplication app = TiApplication.getInstance();
@@ -313,22 +351,7 @@ public class TiHTTPClient
 			}
 			
 			responseOut.write(data, 0, size);
-			KrollCallback onDataStreamCallback = getCallback(ON_DATA_STREAM);
-			if (onDataStreamCallback != null) {
-				KrollDict o = new KrollDict();
-				o.put("totalCount", contentLength);
-				o.put("totalSize", totalSize);
-				o.put("size", size);
-				
-				byte[] blobData = new byte[size];
-				System.arraycopy(data, 0, blobData, 0, size);
-
-				TiBlob blob = TiBlob.blobFromData(proxy.getTiContext(), blobData, contentType);
-				o.put("blob", blob);
-				o.put("progress", ((double)totalSize)/((double)contentLength));
-
-				onDataStreamCallback.callAsync(o);
-			}
+			fireDataStream(data, size, totalSize, contentLength);
 		}
 		
 		private void finishedReceivingEntityData(long contentLength)
@@ -351,6 +374,62 @@ public class TiHTTPClient
 		}
 	}
 
+	private void fireDataStream(byte[] data, int size, long totalSize, long contentLength)
+	{
+		KrollCallback onDataStreamCallback = getCallback(ON_DATA_STREAM);
+		if (onDataStreamCallback != null) {
+			KrollDict o = new KrollDict();
+			o.put("totalCount", contentLength);
+			o.put("totalSize", totalSize);
+			o.put("size", size);
+
+			if (data != null) {
+				byte[] blobData = new byte[size];
+				System.arraycopy(data, 0, blobData, 0, size);
+
+				TiBlob blob = TiBlob.blobFromData(proxy.getTiContext(), blobData, contentType);
+				o.put("blob", blob);
+			}
+			o.put("progress", ((double)totalSize)/((double)contentLength));
+
+			onDataStreamCallback.callAsync(o);
+		}
+	}
+
+	// Reports ondatastream progress for responses that are consumed as a stream (no blob is passed)
+	private class DataStreamInputStream extends FilterInputStream
+	{
+		private long contentLength;
+		private long totalSize;
+
+		public DataStreamInputStream(InputStream in, long contentLength)
+		{
+			super(in);
+			this.contentLength = contentLength;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b != -1) {
+				totalSize++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			int count = super.read(buffer, offset, length);
+			if (count > 0) {
+				totalSize += count;
+				fireDataStream(null, count, totalSize, contentLength);
+			}
+			return count;
+		}
+	}
+
 	private interface ProgressListener {
 		public void progress(int progress);
 	}
@@ -557,6 +636,21 @@ public class TiHTTPClient
 		return responseData;
 	}
 
+	protected boolean isParseJSON()
+	{
+		return proxy.hasProperty(PROPERTY_PARSE_JSON) && TiConvert.toBoolean(proxy.getProperty(PROPERTY_PARSE_JSON));
+	}
+
+	/**
+	 * @return the response parsed as JSON while it was received (only the value at jsonPath if
+	 * one was set), or null unless parseJSON was set before send(). responseText and responseData
+	 * aren't populated for these requests.
+	 */
+	public Object getResponseJSON()
+	{
+		return responseJSON;
+	}
+
 	public DocumentProxy getResponseXML()
 	{
 		// avoid eating up tons of memory if we have a large binary data blob
@@ -8,6 +8,7 @@ package ti.modules.titanium.ui;
 
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.annotations.Kroll;
+import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.proxy.TiViewProxy;
 import org.appcelerator.titanium.util.AsyncResult;
@@ -37,6 +38,7 @@ public class ScrollViewProxy extends TiViewProxy
 	public ScrollViewProxy(TiContext context)
 	{
 		super(context);
+		eventManager.setCoalesced(TiC.EVENT_SCROLL, true);
 	}
 
 	@Override
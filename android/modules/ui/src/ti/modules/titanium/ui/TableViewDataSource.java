@@ -0,0 +1,210 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.ui;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.titanium.TiC;
+import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.kroll.KrollCallback;
+
+/**
+ * Rows of a table supplied on demand by a JS fetchRows(e) callback, see
+ * {@link TableViewProxy#setDataSource(KrollDict)}.
+ *
+ * Row proxies are only created for the rows around the ones being shown, a batch at a
+ * time, and the least recently shown are dropped once more than MAX_CACHED_ROWS are held.
+ * Rows that haven't been fetched yet are shown as an empty placeholder row.
+ *
+ * Apart from fetching, which runs on the callback's Kroll thread, this is only used
+ * on the UI thread.
+ */
+public class TableViewDataSource
+{
+	private static final String LCAT = "TableViewDataSource";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	public static final String PROPERTY_ROW_COUNT = "rowCount";
+	public static final String PROPERTY_FETCH_ROWS = "fetchRows";
+
+	// rows asked for per call to fetchRows
+	protected static final int BATCH_SIZE = 50;
+	// batches fetched ahead of and behind the one being shown
+	protected static final int PREFETCH_BATCHES = 1;
+	protected static final int MAX_CACHED_ROWS = 400;
+
+	/**
+	 * A row and the model's item for it.
+	 */
+	public static class Row
+	{
+		public TableViewRowProxy proxy;
+		public Object item;
+
+		Row(TableViewRowProxy proxy) {
+			this.proxy = proxy;
+		}
+	}
+
+	private TableViewProxy table;
+	private KrollCallback fetchRows;
+	private int rowCount;
+
+	@SuppressWarnings("serial")
+	private LinkedHashMap<Integer, Row> rows = new LinkedHashMap<Integer, Row>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Row> eldest) {
+			return size() > MAX_CACHED_ROWS;
+		}
+	};
+	private HashSet<Integer> pendingBatches = new HashSet<Integer>();
+	private TableViewRowProxy placeholder;
+	private volatile boolean released;
+
+	public TableViewDataSource(TableViewProxy table, KrollDict source)
+	{
+		Object callback = source.get(PROPERTY_FETCH_ROWS);
+		if (!(callback instanceof KrollCallback)) {
+			throw new IllegalArgumentException("A data source needs a fetchRows function");
+		}
+		this.table = table;
+		this.fetchRows = (KrollCallback) callback;
+		this.rowCount = Math.max(0, source.optInt(PROPERTY_ROW_COUNT, 0));
+
+		placeholder = new TableViewRowProxy(table.getTiContext());
+		placeholder.setProperty(TiC.PROPERTY_CLASS_NAME, TableViewProxy.CLASSNAME_NORMAL);
+		placeholder.setParent(table);
+	}
+
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	/**
+	 * @return the row at index, or a placeholder if it hasn't been fetched yet. Either way
+	 * the rows around it are fetched if they aren't held already.
+	 */
+	public Row getRow(int index)
+	{
+		Row row = rows.get(index);
+		int batch = index / BATCH_SIZE;
+		if (row == null) {
+			requestBatch(batch);
+		}
+		for (int i = 1; i <= PREFETCH_BATCHES; i++) {
+			requestBatchIfMissing(batch + i);
+			requestBatchIfMissing(batch - i);
+		}
+		if (row == null) {
+			return new Row(placeholder);
+		}
+		return row;
+	}
+
+	private void requestBatchIfMissing(int batch)
+	{
+		int start = batch * BATCH_SIZE;
+		if (start < 0 || start >= rowCount) {
+			return;
+		}
+		// checking the ends is enough, rows are dropped least recently shown first
+		int end = Math.min(start + BATCH_SIZE, rowCount) - 1;
+		if (!rows.containsKey(start) || !rows.containsKey(end)) {
+			requestBatch(batch);
+		}
+	}
+
+	private void requestBatch(int batch)
+	{
+		final int start = batch * BATCH_SIZE;
+		if (released || start < 0 || start >= rowCount || !pendingBatches.add(batch)) {
+			return;
+		}
+		final int count = Math.min(BATCH_SIZE, rowCount - start);
+		if (DBG) {
+			Log.d(LCAT, "Fetching rows " + start + " to " + (start + count - 1));
+		}
+		fetchRows.post(new Runnable() {
+			public void run() {
+				fetch(start, count);
+			}
+		}, 0);
+	}
+
+	private void fetch(final int start, int count)
+	{
+		if (released) {
+			return;
+		}
+		boolean fetched = false;
+		try {
+			fetched = fetchBatch(start, count);
+		} finally {
+			if (!fetched) {
+				// let the batch be asked for again rather than leaving it pending forever
+				table.getUIHandler().post(new Runnable() {
+					public void run() {
+						pendingBatches.remove(start / BATCH_SIZE);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * @return true once the rows are on their way to the UI thread
+	 */
+	private boolean fetchBatch(final int start, int count)
+	{
+		KrollDict args = new KrollDict();
+		args.put("start", start);
+		args.put("count", count);
+		Object result = fetchRows.callSync(args);
+
+		final TableViewRowProxy[] fetched = new TableViewRowProxy[count];
+		if (result instanceof Object[]) {
+			Object[] data = (Object[]) result;
+			for (int i = 0; i < count && i < data.length; i++) {
+				if (data[i] instanceof KrollDict || data[i] instanceof TableViewRowProxy) {
+					fetched[i] = table.rowProxyFor(data[i]);
+				}
+			}
+		} else {
+			Log.w(LCAT, "fetchRows didn't return an array of rows for " + start + " to " + (start + count - 1));
+		}
+		return table.getUIHandler().post(new Runnable() {
+			public void run() {
+				deliver(start, fetched);
+			}
+		});
+	}
+
+	private void deliver(int start, TableViewRowProxy[] fetched)
+	{
+		if (released) {
+			return;
+		}
+		pendingBatches.remove(start / BATCH_SIZE);
+		for (int i = 0; i < fetched.length; i++) {
+			// rows fetchRows didn't give us stay empty rather than being asked for again
+			rows.put(start + i, new Row(fetched[i] != null ? fetched[i] : placeholder));
+		}
+		table.updateView();
+	}
+
+	public void release()
+	{
+		released = true;
+		rows.clear();
+		pendingBatches.clear();
+	}
+}
@@ -21,11 +21,14 @@ import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.view.TiUIView;
 
 import ti.modules.titanium.ui.widget.TiUITableView;
+import ti.modules.titanium.ui.widget.tableview.TableViewModel;
+import ti.modules.titanium.ui.widget.tableview.TableViewModel.Item;
 import android.app.Activity;
 import android.os.Message;
 
 @Kroll.proxy(creatableInModule=UIModule.class)
 @Kroll.dynamicApis(properties = {
+	TiC.PROPERTY_FILTER_ANCHORED,
 	TiC.PROPERTY_FILTER_ATTRIBUTE,
 	TiC.PROPERTY_FILTER_CASE_INSENSITIVE,
 	TiC.PROPERTY_HEADER_TITLE,
@@ -50,6 +53,8 @@ public class TableViewProxy extends TiViewProxy
 	private static final int MSG_INSERT_ROW = TiViewProxy.MSG_LAST_ID + 5005;
 	private static final int MSG_APPEND_ROW = TiViewProxy.MSG_LAST_ID + 5006;
 	private static final int MSG_SCROLL_TO_TOP = TiViewProxy.MSG_LAST_ID + 5007;
+	private static final int MSG_UPDATE_ROW = TiViewProxy.MSG_LAST_ID + 5008;
+	private static final int MSG_SET_DATA_SOURCE = TiViewProxy.MSG_LAST_ID + 5009;
 
 	public static final String CLASSNAME_DEFAULT = "__default__";
 	public static final String CLASSNAME_HEADER = "__header__";
@@ -63,11 +68,13 @@ public class TableViewProxy extends TiViewProxy
 	}
 
 	private ArrayList<TableViewSectionProxy> localSections;
+	private TableViewDataSource dataSource;
 
 	public TableViewProxy(TiContext tiContext) {
 		super(tiContext);
 		
 		eventManager.addOnEventChangeListener(this);
+		eventManager.setCoalesced(TiC.EVENT_SCROLL, true);
 	}
 	
 	@Override
@@ -90,6 +97,7 @@ public class TableViewProxy extends TiViewProxy
 	public void releaseViews()
 	{
 		super.releaseViews();
+		clearDataSource();
 		if (localSections != null) {
 			for (TableViewSectionProxy section : localSections) {
 				section.releaseViews();
@@ -112,29 +120,42 @@ public class TableViewProxy extends TiViewProxy
 
 	@Kroll.method
 	public void updateRow(Object row, Object data, @Kroll.argument(optional=true) KrollDict options) {
+		TiContext ctx = getTiContext();
+		if (ctx == null) {
+			Log.w(LCAT, "Context has been GC'd, not updating row");
+			return;
+		}
+		if (ctx.isUIThread()) {
+			handleUpdateRow(row, data);
+			return;
+		}
+
+		sendBlockingUiMessage(MSG_UPDATE_ROW, new Object[] { row, data });
+	}
+
+	private void handleUpdateRow(Object row, Object data) {
 		TableViewSectionProxy sectionProxy = null;
+		int sectionIndex = -1;
 		int rowIndex = -1;
 		if (row instanceof Number) {
 			RowResult rr = new RowResult();
-			rowIndex = ((Number)row).intValue();
-			locateIndex(rowIndex, rr);
-			sectionProxy = rr.section;
+			if (locateIndex(((Number)row).intValue(), rr)) {
+				sectionProxy = rr.section;
+				sectionIndex = rr.sectionIndex;
+				rowIndex = rr.rowIndexInSection;
+			}
 		} else if (row instanceof TableViewRowProxy) {
-			ArrayList<TableViewSectionProxy> sections = getSections();
-			sectionLoop: for (int i = 0; i < sections.size(); i++) {
-				ArrayList<TableViewRowProxy> rows = sections.get(i).rows;
-				for (int j = 0; j < rows.size(); j++) {
-					if (rows.get(j) == row) {
-						sectionProxy = sections.get(i);
-						rowIndex = j;
-						break sectionLoop;
-					}
-				}
+			Item item = getTableView().getModel().getItem((TableViewRowProxy) row);
+			if (item != null && item.sectionIndex < getSections().size()) {
+				sectionIndex = item.sectionIndex;
+				sectionProxy = getSections().get(sectionIndex);
+				rowIndex = item.indexInSection;
 			}
 		}
 		if (sectionProxy != null) {
-			sectionProxy.updateRowAt(rowIndex, rowProxyFor(data));
-			getTableView().setModelDirty();
+			TableViewRowProxy rowProxy = rowProxyFor(data);
+			sectionProxy.updateRowAt(rowIndex, rowProxy);
+			getTableView().getModel().updateRow(sectionIndex, rowIndex, rowProxy);
 			updateView();
 		}
 	}
@@ -156,20 +177,27 @@ public class TableViewProxy extends TiViewProxy
 
 	private void handleAppendRow(Object row) {
 		TableViewRowProxy rowProxy = rowProxyFor(row);
+		TableViewModel model = getTableView().getModel();
 		ArrayList<TableViewSectionProxy> sections = getSections();
 		if (sections.size() == 0) {
 			Object[] data = { rowProxy };
 			processData(data);
+			model.setDirty();
 		} else {
 			TableViewSectionProxy lastSection = sections.get(sections.size() - 1);
 			TableViewSectionProxy addedToSection = addRowToSection(rowProxy, lastSection);
 			if (lastSection == null || !lastSection.equals(addedToSection)) {
 				sections.add(addedToSection);
+				model.setDirty();
+			} else if (rowProxy.hasProperty(TiC.PROPERTY_FOOTER)) {
+				// the row brought a new footer title for the section
+				model.setDirty();
+			} else {
+				model.insertRow(sections.size() - 1, lastSection.rows.size() - 1, rowProxy);
 			}
 			rowProxy.setProperty(TiC.PROPERTY_SECTION, addedToSection);
 			rowProxy.setProperty(TiC.PROPERTY_PARENT, addedToSection);
 		}
-		getTableView().setModelDirty();
 		updateView();
 	}
 
@@ -194,7 +222,7 @@ public class TableViewProxy extends TiViewProxy
 		RowResult rr = new RowResult();
 		if (locateIndex(index, rr)) {
 			rr.section.removeRowAt(rr.rowIndexInSection);
-			getTableView().setModelDirty();
+			getTableView().getModel().removeRow(rr.sectionIndex, rr.rowIndexInSection);
 			updateView();
 		} else {
 			throw new IllegalStateException(
@@ -249,6 +277,7 @@ public class TableViewProxy extends TiViewProxy
 			if (locateIndex(index, rr)) {
 				TableViewRowProxy rowProxy = rowProxyFor(data);
 				rr.section.insertRowAt(rr.rowIndexInSection, rowProxy);
+				getTableView().getModel().insertRow(rr.sectionIndex, rr.rowIndexInSection, rowProxy);
 			} else {
 				throw new IllegalStateException(
 					"Index out of range. Non-existant row at " + index);
@@ -257,8 +286,8 @@ public class TableViewProxy extends TiViewProxy
 			// Add first row.
 			Object[] args = { rowProxyFor(data) };
 			processData(args);
+			getTableView().setModelDirty();
 		}
-		getTableView().setModelDirty();
 		updateView();
 	}
 
@@ -282,7 +311,7 @@ public class TableViewProxy extends TiViewProxy
 			// TODO check for section
 			TableViewRowProxy rowProxy = rowProxyFor(data);
 			rr.section.insertRowAt(rr.rowIndexInSection + 1, rowProxy);
-			getTableView().setModelDirty();
+			getTableView().getModel().insertRow(rr.sectionIndex, rr.rowIndexInSection + 1, rowProxy);
 			updateView();
 		} else {
 			throw new IllegalStateException(
@@ -381,6 +410,7 @@ public class TableViewProxy extends TiViewProxy
 	
 	private void handleSetData(Object[] data) {
 		if (data != null) {
+			clearDataSource();
 			processData(data);
 			getTableView().setModelDirty();
 			updateView();
@@ -397,7 +427,53 @@ public class TableViewProxy extends TiViewProxy
 		return new Object[0];
 	}
 
-	private TableViewRowProxy rowProxyFor(Object row) {
+	/**
+	 * Has the table show rowCount rows, fetched on demand from JS as they come into view
+	 * by calling fetchRows({start, count}), which returns an array of rows. The table's data
+	 * is cleared, call setData to show data again. Pass null to drop the data source.
+	 */
+	@Kroll.method
+	public void setDataSource(@Kroll.argument(optional=true) KrollDict source) {
+		TiContext ctx = getTiContext();
+		if (ctx == null) {
+			Log.w(LCAT, "Context has been GC'd, not setting data source.");
+			return;
+		}
+		if (ctx.isUIThread()) {
+			handleSetDataSource(source);
+		} else {
+			sendBlockingUiMessage(MSG_SET_DATA_SOURCE, source);
+		}
+	}
+
+	private void handleSetDataSource(KrollDict source) {
+		clearDataSource();
+		if (source != null) {
+			// the data source replaces the table's data, so row edits don't land on stale sections
+			if (localSections != null) {
+				for (TableViewSectionProxy section : localSections) {
+					section.releaseViews();
+				}
+				localSections.clear();
+			}
+			dataSource = new TableViewDataSource(this, source);
+		}
+		getTableView().setModelDirty();
+		updateView();
+	}
+
+	private void clearDataSource() {
+		if (dataSource != null) {
+			dataSource.release();
+			dataSource = null;
+		}
+	}
+
+	public TableViewDataSource getDataSource() {
+		return dataSource;
+	}
+
+	TableViewRowProxy rowProxyFor(Object row) {
 		TableViewRowProxy rowProxy = null;
 		if (row instanceof KrollDict) {
 			KrollDict d = (KrollDict) row;
@@ -437,6 +513,36 @@ public class TableViewProxy extends TiViewProxy
 		return found;
 	}
 
+	/**
+	 * Row binding times and slow frames while scrolling, to check how smoothly the table scrolls.
+	 */
+	@Kroll.method
+	public KrollDict getRenderStats() {
+		TiUIView view = peekView();
+		if (view instanceof TiUITableView) {
+			return ((TiUITableView) view).getTableView().getRenderStats();
+		}
+		return new KrollDict();
+	}
+
+	@Kroll.method
+	public void resetRenderStats() {
+		TiUIView view = peekView();
+		if (view instanceof TiUITableView) {
+			((TiUITableView) view).getTableView().resetRenderStats();
+		}
+	}
+
+	/**
+	 * Called by our rows when one of their properties changed.
+	 */
+	public void rowPropertyChanged(TableViewRowProxy row, String name) {
+		TiUIView view = peekView();
+		if (view instanceof TiUITableView) {
+			((TiUITableView) view).rowPropertyChanged(name);
+		}
+	}
+
 	public void updateView() {
 		if (getTiContext().isUIThread()) {
 			getTableView().updateView();
@@ -483,6 +589,17 @@ public class TableViewProxy extends TiViewProxy
 			}
 			result.setResult(0);
 			return true;
+		} else if (msg.what == MSG_UPDATE_ROW) {
+			AsyncResult result = (AsyncResult) msg.obj;
+			Object[] args = (Object[]) result.getArg();
+			handleUpdateRow(args[0], args[1]);
+			result.setResult(0);
+			return true;
+		} else if (msg.what == MSG_SET_DATA_SOURCE) {
+			AsyncResult result = (AsyncResult) msg.obj;
+			handleSetDataSource((KrollDict) result.getArg());
+			result.setResult(0);
+			return true;
 		} else if (msg.what == MSG_APPEND_ROW) {
 			AsyncResult result = (AsyncResult) msg.obj;
 			handleAppendRow(result.getArg());
@@ -131,6 +131,10 @@ public class TableViewRowProxy extends TiViewProxy
 	@Override
 	public void setProperty(String name, Object value, boolean fireChange) {
 		super.setProperty(name, value, fireChange);
+		TableViewProxy table = getTable();
+		if (table != null) {
+			table.rowPropertyChanged(this, name);
+		}
 		if (tableViewItem != null) {
 			if (context.isUIThread()) {
 				tableViewItem.setRowData(this);
@@ -156,7 +160,7 @@ public class TableViewRowProxy extends TiViewProxy
 		data.put(TiC.PROPERTY_ROW_DATA, item.rowData);
 		data.put(TiC.PROPERTY_SECTION, model.getSection(item.sectionIndex));
 		data.put(TiC.EVENT_PROPERTY_ROW, item.proxy);
-		data.put(TiC.EVENT_PROPERTY_INDEX, item.index);
+		data.put(TiC.EVENT_PROPERTY_INDEX, item.getIndex());
 		data.put(TiC.EVENT_PROPERTY_DETAIL, false);
 	}
 
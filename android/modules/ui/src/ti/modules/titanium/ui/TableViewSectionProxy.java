@@ -19,6 +19,8 @@ import android.app.Activity;
 public class TableViewSectionProxy extends TiViewProxy
 {
 	protected ArrayList<TableViewRowProxy> rows;
+	// bumped on every change to rows, so the table's model can tell its copy is stale
+	private int modCount;
 
 	public TableViewSectionProxy(TiContext tiContext) {
 		super(tiContext);
@@ -46,6 +48,7 @@ public class TableViewSectionProxy extends TiViewProxy
 	{
 		if (rowProxy != null) {
 			rows.add(rowProxy);
+			modCount++;
 			if (rowProxy.getParent() == null) {
 				rowProxy.setParent(this);
 			}
@@ -55,7 +58,9 @@ public class TableViewSectionProxy extends TiViewProxy
 	@Kroll.method
 	public void remove(TableViewRowProxy rowProxy) {
 		if (rowProxy != null) {
-			rows.remove(rowProxy);
+			if (rows.remove(rowProxy)) {
+				modCount++;
+			}
 			if (rowProxy.getParent() == this) {
 				rowProxy.setParent(null);
 			}
@@ -76,17 +81,27 @@ public class TableViewSectionProxy extends TiViewProxy
 	@Kroll.method
 	public void insertRowAt(int index, TableViewRowProxy row) {
 		rows.add(index, row);
+		modCount++;
 	}
 
 	@Kroll.method
 	public void removeRowAt(int index) {
 		rows.remove(index);
+		modCount++;
 	}
 	@Kroll.method
 	public void updateRowAt(int index, TableViewRowProxy row) {
 		rows.set(index, row);
+		modCount++;
+	}
+
+	/**
+	 * @return the number of changes made to the rows of this section so far
+	 */
+	public int getModCount() {
+		return modCount;
 	}
-	
+
 	@Override
 	public String toString() {
 		return "[object TiUITableViewSection]";
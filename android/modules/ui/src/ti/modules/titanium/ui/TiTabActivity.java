@@ -164,6 +164,20 @@ public class TiTabActivity extends TabActivity
 		super.finish();
 	}
 
+	@Override
+	protected void onStart()
+	{
+		super.onStart();
+		getTiApp().activityStarted(this);
+	}
+
+	@Override
+	protected void onStop()
+	{
+		super.onStop();
+		getTiApp().activityStopped(this);
+	}
+
 	@Override
 	protected void onPause()
 	{
@@ -6,16 +6,23 @@
  */
 package ti.modules.titanium.ui.widget;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 
 import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.proxy.TiViewProxy;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiAnimationFactory;
 import org.appcelerator.titanium.util.TiAnimationPair;
 import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.util.TiDownloadListener;
+import org.appcelerator.titanium.util.TiDownloadManager;
 import org.appcelerator.titanium.util.TiEventHelper;
+import org.appcelerator.titanium.util.TiResponseCache;
 import org.appcelerator.titanium.view.TiCompositeLayout;
+import org.appcelerator.titanium.view.TiDrawableReference;
 
 import ti.modules.titanium.ui.ScrollableViewProxy;
 import android.content.Context;
@@ -42,6 +49,15 @@ public class TiScrollableView extends TiCompositeLayout
 	private static final int PAGE_LEFT = 200;
 	private static final int PAGE_RIGHT = 201;
 
+	// pages with native views, the current one and (cacheSize - 1) / 2 either side of it
+	public static final int DEFAULT_CACHE_SIZE = 3;
+
+	// held by the download manager while prefetching, it only keeps listeners softly
+	private static final TiDownloadListener prefetchListener = new TiDownloadListener() {
+		public void downloadFinished(URI uri) {
+		}
+	};
+
 	protected RelativeLayout pager;
 	//protected View glass;
 	protected GestureDetector detector;
@@ -55,6 +71,9 @@ public class TiScrollableView extends TiCompositeLayout
 	protected ArrayList<TiViewProxy> views;
 	protected ScrollableViewProxy proxy;
 	protected Handler handler;
+	protected int cacheSize = DEFAULT_CACHE_SIZE;
+	// wrappers that currently hold a page's native view
+	protected ArrayList<ViewWrapper> realized = new ArrayList<ViewWrapper>();
 
 	class ViewWrapper extends FrameLayout
 	{
@@ -70,6 +89,7 @@ public class TiScrollableView extends TiCompositeLayout
 			if (view == null) {
 				view = views.get(position).getView(null).getNativeView();
 				addView(view);
+				realized.add(this);
 				if (getChildCount() > 2) {
 					Log.e(LCAT, "----------------------- CHILD COUNT: " + getChildCount());
 				}
@@ -80,6 +100,7 @@ public class TiScrollableView extends TiCompositeLayout
 			if (view != null) {
 				removeView(view);
 				view = null;
+				realized.remove(this);
 				views.get(position).releaseViews();
 			}
 		}
@@ -258,13 +279,12 @@ public class TiScrollableView extends TiCompositeLayout
 				int from = pos;
 				int to = pos - 1;
 				TiEventHelper.fireFocused(views.get(from));
-				final ViewWrapper fromWrapper = (ViewWrapper) gallery.getChildAt(from);
 				ViewWrapper toWrapper = (ViewWrapper) gallery.getChildAt(to);
 				animPrev.apply(gallery);
 				animPrev.setAnimationListener(new AnimationListener(){
 					@Override
 					public void onAnimationEnd(Animation arg0) {
-						fromWrapper.doDetachView();
+						updateWindow();
 					}
 
 					@Override
@@ -292,14 +312,13 @@ public class TiScrollableView extends TiCompositeLayout
 				int from = pos;
 				int to = pos + 1;
 				TiEventHelper.fireFocused(views.get(from));
-				final ViewWrapper fromWrapper = (ViewWrapper) gallery.getChildAt(from);
 				ViewWrapper toWrapper = (ViewWrapper) gallery.getChildAt(to);
 				toWrapper.doAttachView();
 				animNext.apply(gallery);
 				animNext.setAnimationListener(new AnimationListener(){
 					@Override
 					public void onAnimationEnd(Animation arg0) {
-						fromWrapper.doDetachView();
+						updateWindow();
 					}
 
 					@Override
@@ -369,7 +388,7 @@ public class TiScrollableView extends TiCompositeLayout
 				}
 			}
 			if (views.length > 0) {
-				((ViewWrapper) gallery.getChildAt(0)).doAttachView();
+				updateWindow();
 				((TiViewProxy)views[0]).show(new KrollDict());
 			}
 		}
@@ -381,6 +400,7 @@ public class TiScrollableView extends TiCompositeLayout
 			this.views.add(proxy);
 			gallery.addView(new ViewWrapper(getContext(), gallery.getChildCount()));
 			//gallery.addView(proxy.getView(null).getNativeView());
+			updateWindow();
 		}
 	}
 	
@@ -388,12 +408,13 @@ public class TiScrollableView extends TiCompositeLayout
 	{
 		if (proxy != null) {
 			int index = this.views.indexOf(proxy);
-			this.views.remove(proxy);
 			if (index == -1) {
 				if (DBG) {
 					Log.d(LCAT, "removeView -- view not located.");
 				}
 			} else {
+				((ViewWrapper) gallery.getChildAt(index)).doDetachView();
+				this.views.remove(index);
 				gallery.removeViewAt(index);
 				
 				// really for safety sake, you could just loop through all view resetting the position
@@ -401,6 +422,7 @@ public class TiScrollableView extends TiCompositeLayout
 				for (int i = index; i < gallery.getChildCount(); i++) {
 					((ViewWrapper) gallery.getChildAt (i)).position = i;
 				}
+				updateWindow();
 			}
 		}
 	}
@@ -409,6 +431,86 @@ public class TiScrollableView extends TiCompositeLayout
 		this.showPagingControl = showPagingControl;
 	}
 
+	/**
+	 * Sets how many pages have native views, like iOS: the current page and
+	 * (cacheSize - 1) / 2 either side of it.
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = Math.max(1, cacheSize);
+		updateWindow();
+	}
+
+	/**
+	 * Realizes the pages around the current one and releases the native views of the
+	 * rest, so long galleries don't hold a view tree per page. Remote images of the
+	 * pages just past either end are downloaded into the response cache ahead of time.
+	 */
+	protected void updateWindow() {
+		int count = gallery.getChildCount();
+		if (count == 0) {
+			return;
+		}
+		int current = Math.min(getSelectedItemPosition(), count - 1);
+		int reach = (cacheSize - 1) / 2;
+		int first = Math.max(0, current - reach);
+		int last = Math.min(count - 1, current + reach);
+
+		for (int i = realized.size() - 1; i >= 0; i--) {
+			ViewWrapper wrapper = realized.get(i);
+			if (wrapper.position < first || wrapper.position > last) {
+				wrapper.doDetachView();
+			}
+		}
+
+		// the current page first, its neighbours are only needed once it's shown
+		((ViewWrapper) gallery.getChildAt(current)).doAttachView();
+		for (int i = 1; i <= reach; i++) {
+			if (current + i <= last) {
+				((ViewWrapper) gallery.getChildAt(current + i)).doAttachView();
+			}
+			if (current - i >= first) {
+				((ViewWrapper) gallery.getChildAt(current - i)).doAttachView();
+			}
+		}
+
+		if (last + 1 < count) {
+			prefetchImages(views.get(last + 1));
+		}
+		if (first - 1 >= 0) {
+			prefetchImages(views.get(first - 1));
+		}
+	}
+
+	/**
+	 * Starts downloading the remote images of a page and its children on the download
+	 * manager's threads, so they're cached by the time the page is realized.
+	 */
+	protected void prefetchImages(TiViewProxy page) {
+		prefetchImage(page, page.getProperty(TiC.PROPERTY_IMAGE));
+		prefetchImage(page, page.getProperty(TiC.PROPERTY_BACKGROUND_IMAGE));
+		for (TiViewProxy child : page.getChildren()) {
+			prefetchImages(child);
+		}
+	}
+
+	private void prefetchImage(TiViewProxy proxy, Object image) {
+		if (!(image instanceof String)) {
+			return;
+		}
+		TiDrawableReference ref = TiDrawableReference.fromObject(proxy.getTiContext(), image);
+		if (!ref.isNetworkUrl()) {
+			return;
+		}
+		try {
+			URI uri = new URI(ref.getUrl());
+			if (!TiResponseCache.peek(uri)) {
+				TiDownloadManager.getInstance().download(uri, prefetchListener);
+			}
+		} catch (URISyntaxException e) {
+			Log.e(LCAT, "URISyntaxException for url " + ref.getUrl(), e);
+		}
+	}
+
 	public void doScrollToView(int position) {
 		if(position < gallery.getChildCount()) {
 			int current = getSelectedItemPosition();
@@ -433,8 +535,6 @@ public class TiScrollableView extends TiCompositeLayout
 
 	public void doSetCurrentPage(int position) {
 		if(position < gallery.getChildCount()) {
-			int from = getSelectedItemPosition();
-			final ViewWrapper fromWrapper = (ViewWrapper) gallery.getChildAt(from);
 			ViewWrapper toWrapper = (ViewWrapper) gallery.getChildAt(position);
 			if (toWrapper != null) {
 				toWrapper.doAttachView();
@@ -444,9 +544,7 @@ public class TiScrollableView extends TiCompositeLayout
 				proxy.setProperty("currentPage", position);
 				proxy.fireScroll(position);
 
-				if (fromWrapper != null && (fromWrapper != toWrapper)) {
-					fromWrapper.doDetachView();
-				}
+				updateWindow();
 				if (showPagingControl) {
 					showPager();
 				}
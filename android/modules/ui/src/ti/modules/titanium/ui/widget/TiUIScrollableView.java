@@ -37,6 +37,10 @@ public class TiUIScrollableView extends TiUIView
 
 	@Override
 	public void processProperties(KrollDict d) {
+		// before the views, so only the pages it asks for get realized
+		if (d.containsKey("cacheSize")) {
+			getView().setCacheSize(TiConvert.toInt(d, "cacheSize"));
+		}
 		if (d.containsKey("views")) {
 			getView().setViews(d.get("views"));
 		} 
@@ -58,6 +62,8 @@ public class TiUIScrollableView extends TiUIView
 	public void propertyChanged(String key, Object oldValue, Object newValue, KrollProxy proxy) {
 		if("currentPage".equals(key)) {
 			setCurrentPage(TiConvert.toInt(newValue));
+		} else if ("cacheSize".equals(key)) {
+			getView().setCacheSize(TiConvert.toInt(newValue));
 		} else {
 			super.propertyChanged(key, oldValue, newValue, proxy);
 		}
@@ -70,6 +70,11 @@ public class TiUITableView extends TiUIView
 		tableView.dataSetChanged();
 	}
 
+	public void rowPropertyChanged(String name)
+	{
+		tableView.rowPropertyChanged(name);
+	}
+
 	public void scrollToIndex(final int index)
 	{
 		tableView.getListView().setSelection(index);
@@ -152,6 +157,9 @@ public class TiUITableView extends TiUIView
 			filterCaseInsensitive = TiConvert.toBoolean(d, TiC.PROPERTY_FILTER_CASE_INSENSITIVE);
 		}
 		tableView.setFilterCaseInsensitive(filterCaseInsensitive);
+		if (d.containsKey(TiC.PROPERTY_FILTER_ANCHORED)) {
+			tableView.setFilterAnchored(TiConvert.toBoolean(d, TiC.PROPERTY_FILTER_ANCHORED));
+		}
 		super.processProperties(d);
 	}
 
@@ -189,6 +197,12 @@ public class TiUITableView extends TiUIView
 		}
 		if (key.equals(TiC.PROPERTY_SEPARATOR_COLOR)) {
 			tableView.setSeparatorColor(TiConvert.toString(newValue));
+		} else if (key.equals(TiC.PROPERTY_FILTER_ATTRIBUTE)) {
+			tableView.setFilterAttribute(TiConvert.toString(newValue));
+		} else if (key.equals(TiC.PROPERTY_FILTER_CASE_INSENSITIVE)) {
+			tableView.setFilterCaseInsensitive(TiConvert.toBoolean(newValue));
+		} else if (key.equals(TiC.PROPERTY_FILTER_ANCHORED)) {
+			tableView.setFilterAnchored(TiConvert.toBoolean(newValue));
 		} else {
 			super.propertyChanged(key, oldValue, newValue, proxy);
 		}
@@ -1,23 +1,41 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2011 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package ti.modules.titanium.ui.widget.tableview;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
-import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.proxy.TiViewProxy;
 import org.appcelerator.titanium.util.TiConvert;
 
+import ti.modules.titanium.ui.TableViewDataSource;
 import ti.modules.titanium.ui.TableViewProxy;
 import ti.modules.titanium.ui.TableViewRowProxy;
 import ti.modules.titanium.ui.TableViewSectionProxy;
 
+/**
+ * The flat list of headers, rows and footers shown by the table's ListView.
+ *
+ * Items are kept per section, with the item and row count of each section in a
+ * Fenwick tree, so that looking up the item at a position, or the position of a row,
+ * costs O(log sections). Row edits the table makes within an existing section (append,
+ * insert, delete, update) are applied in place; anything that changes the sections
+ * themselves, or changes a section's rows behind the table's back, marks the model dirty,
+ * and it's rebuilt from the table's sections on next access.
+ *
+ * Inserting or removing a row still renumbers the rows after it in its section, so those
+ * edits are linear in the size of the section. That's a loop over ints rather than a rebuild
+ * of every item, but a table with one big section doesn't get O(log n) edits.
+ *
+ * A table with a data source instead has a single run of rows, with items handed
+ * out by the data source as rows are fetched.
+ */
 public class TableViewModel
 {
 	private static final String LCAT = "TableViewModel";
@@ -26,14 +44,24 @@ public class TableViewModel
 	// Flat view
 
 	public class Item {
-		public Item(int index) {
-			this.index = index;
+		public Item(int sectionIndex) {
+			this.sectionIndex = sectionIndex;
 		}
 		public boolean hasHeader() {
 			return headerText != null;
 		}
 
-		public int index;
+		/**
+		 * @return the index of this row among all rows of the table. For a header this
+		 * is the index of the section's first row, for a footer the index following its last row.
+		 */
+		public int getIndex() {
+			if (footerText != null) {
+				return rowOffsets.prefix(sectionIndex + 1);
+			}
+			return rowOffsets.prefix(sectionIndex) + indexInSection;
+		}
+
 		public int sectionIndex;
 		public int indexInSection;
 		public String headerText;
@@ -44,12 +72,89 @@ public class TableViewModel
 		public Object rowData;
 	}
 
+	private static class Section {
+		TableViewSectionProxy proxy;
+		// the proxy's mod count as of the last time this section matched it
+		int modCount;
+		Item header;
+		Item footer;
+		ArrayList<Item> rows;
+
+		int getItemCount() {
+			return rows.size() + (header != null ? 1 : 0) + (footer != null ? 1 : 0);
+		}
+	}
+
+	/**
+	 * A Fenwick (binary indexed) tree over the sizes of the sections, giving
+	 * the offset of a section and the section at an offset in O(log n).
+	 */
+	private static class OffsetTree {
+		private int[] tree;
+
+		OffsetTree(int[] counts) {
+			int size = counts.length;
+			tree = new int[size + 1];
+			for (int i = 1; i <= size; i++) {
+				tree[i] += counts[i - 1];
+				int parent = i + (i & -i);
+				if (parent <= size) {
+					tree[parent] += tree[i];
+				}
+			}
+		}
+
+		void add(int index, int delta) {
+			for (int i = index + 1; i < tree.length; i += i & -i) {
+				tree[i] += delta;
+			}
+		}
+
+		/**
+		 * @return the sum of the sizes of the first count sections
+		 */
+		int prefix(int count) {
+			int sum = 0;
+			for (int i = Math.min(count, tree.length - 1); i > 0; i -= i & -i) {
+				sum += tree[i];
+			}
+			return sum;
+		}
+
+		int total() {
+			return prefix(tree.length - 1);
+		}
+
+		/**
+		 * @return the section containing offset, which must be less than total()
+		 */
+		int find(int offset) {
+			int index = 0;
+			for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+				int next = index + step;
+				if (next < tree.length && tree[next] <= offset) {
+					index = next;
+					offset -= tree[next];
+				}
+			}
+			return index;
+		}
+	}
+
+	private static final OffsetTree EMPTY = new OffsetTree(new int[0]);
+
 	private TiContext tiContext;
 	private TableViewProxy proxy;
 
 	private boolean dirty;
+	// bumped on every change, so copies of the items can tell when they're out of date
+	private int version;
 
-	private ArrayList<Item> viewModel;
+	private ArrayList<Section> sections;
+	private OffsetTree itemOffsets = EMPTY;
+	private OffsetTree rowOffsets = EMPTY;
+	private IdentityHashMap<TableViewRowProxy, Item> itemsByRow;
+	private TableViewDataSource dataSource;
 
 	// The unstructured set of data. Modifier operations are treated as edits to this
 	// and the section structure.
@@ -58,15 +163,23 @@ public class TableViewModel
 		this.tiContext = tiContext;
 		this.proxy = proxy;
 
-		viewModel = new ArrayList<Item>();
+		sections = new ArrayList<Section>();
+		itemsByRow = new IdentityHashMap<TableViewRowProxy, Item>();
 		dirty = true;
 	}
 
 	public void release() {
-		if (viewModel != null) {
-			viewModel.clear();
-			viewModel = null;
+		if (sections != null) {
+			sections.clear();
+			sections = null;
+		}
+		if (itemsByRow != null) {
+			itemsByRow.clear();
+			itemsByRow = null;
 		}
+		dataSource = null;
+		itemOffsets = EMPTY;
+		rowOffsets = EMPTY;
 		tiContext = null;
 		proxy = null;
 	}
@@ -79,8 +192,8 @@ public class TableViewModel
 		return className;
 	}
 
-	private Item itemForHeader(int index, TableViewSectionProxy proxy, String headerText, String footerText) {
-		Item newItem = new Item(index);
+	private Item itemForHeader(int sectionIndex, TableViewSectionProxy proxy, String headerText, String footerText) {
+		Item newItem = new Item(sectionIndex);
 		newItem.className = TableViewProxy.CLASSNAME_HEADER;
 		if (headerText != null) {
 			newItem.headerText = headerText;
@@ -92,79 +205,228 @@ public class TableViewModel
 		return newItem;
 	}
 
+	private Item itemForRow(int sectionIndex, int indexInSection, TableViewRowProxy row, IdentityHashMap<TableViewRowProxy, Item> reuse) {
+		// hand back the same Item for a row that was already shown, so its view can be reused as is
+		Item item = reuse != null ? reuse.get(row) : null;
+		if (item == null) {
+			item = new Item(sectionIndex);
+			item.proxy = row;
+			item.rowData = row; // TODO capture dictionary?
+		}
+		item.sectionIndex = sectionIndex;
+		item.indexInSection = indexInSection;
+		item.className = classNameForRow(row);
+		return item;
+	}
+
+	/**
+	 * @return the number of items (headers, rows and footers) in the flat view
+	 */
 	public int getRowCount() {
-		if (viewModel == null) {
+		if (proxy == null) {
 			return 0;
 		}
-		return viewModel.size();
+		build();
+		return itemOffsets.total();
 	}
 
 	public TableViewSectionProxy getSection(int index)
 	{
-		return proxy.getSections().get(index);
+		ArrayList<TableViewSectionProxy> sections = proxy.getSections();
+		if (index < 0 || index >= sections.size()) {
+			// e.g. rows from a data source
+			return null;
+		}
+		return sections.get(index);
+	}
+
+	public boolean isVirtual()
+	{
+		if (proxy == null) {
+			return false;
+		}
+		build();
+		return dataSource != null;
 	}
 
-	public ArrayList<Item> getViewModel()
+	private void build()
 	{
-		if (dirty) {
-			viewModel = new ArrayList<Item>();
+		if (!dirty) {
+			return;
+		}
+		IdentityHashMap<TableViewRowProxy, Item> previous = itemsByRow;
+		sections = new ArrayList<Section>();
+		itemsByRow = new IdentityHashMap<TableViewRowProxy, Item>(previous.size());
+
+		dataSource = proxy.getDataSource();
+		if (dataSource != null) {
+			int[] counts = { dataSource.getRowCount() };
+			itemOffsets = new OffsetTree(counts);
+			rowOffsets = new OffsetTree(counts);
+			dirty = false;
+			version++;
+			return;
+		}
+
+		ArrayList<TableViewSectionProxy> sectionProxies = proxy.getSections();
+		if (sectionProxies != null) {
 			int sectionIndex = 0;
-			int indexInSection = 0;
-			int index = 0;
-			ArrayList<TableViewSectionProxy> sections = proxy.getSections();
-			if (sections != null) {
-				for (TableViewSectionProxy section : sections) {
-					String headerTitle = TiConvert.toString(section.getProperty(TiC.PROPERTY_HEADER_TITLE));
-					if (headerTitle != null) {
-						viewModel.add(itemForHeader(index, section, headerTitle, null));
-					}
-					for (TableViewRowProxy row : section.getRows()) {
-						Item item = new Item(index);
-						item.sectionIndex = sectionIndex;
-						item.indexInSection = indexInSection;
-						item.proxy = row;
-						item.rowData = row; // TODO capture dictionary?
-						item.className = classNameForRow(row);
-
-						viewModel.add(item);
-						index++;
-						indexInSection++;
-					}
-
-					String footerTitle = TiConvert.toString(section.getProperty(TiC.PROPERTY_FOOTER_TITLE));
-					if (footerTitle != null) {
-						viewModel.add(itemForHeader(index, section, null, footerTitle));
-					}
-
-					sectionIndex++;
-					indexInSection = 0;
+			for (TableViewSectionProxy sectionProxy : sectionProxies) {
+				Section section = new Section();
+				section.proxy = sectionProxy;
+				section.modCount = sectionProxy.getModCount();
+				String headerTitle = TiConvert.toString(sectionProxy.getProperty(TiC.PROPERTY_HEADER_TITLE));
+				if (headerTitle != null) {
+					section.header = itemForHeader(sectionIndex, sectionProxy, headerTitle, null);
+				}
+				TableViewRowProxy[] rows = sectionProxy.getRows();
+				section.rows = new ArrayList<Item>(rows.length);
+				for (int i = 0; i < rows.length; i++) {
+					Item item = itemForRow(sectionIndex, i, rows[i], previous);
+					section.rows.add(item);
+					itemsByRow.put(rows[i], item);
 				}
-				dirty = false;
+				String footerTitle = TiConvert.toString(sectionProxy.getProperty(TiC.PROPERTY_FOOTER_TITLE));
+				if (footerTitle != null) {
+					section.footer = itemForHeader(sectionIndex, sectionProxy, null, footerTitle);
+				}
+				sections.add(section);
+				sectionIndex++;
 			}
 		}
-		return viewModel;
+
+		int[] itemCounts = new int[sections.size()];
+		int[] rowCounts = new int[sections.size()];
+		for (int i = 0; i < itemCounts.length; i++) {
+			Section section = sections.get(i);
+			itemCounts[i] = section.getItemCount();
+			rowCounts[i] = section.rows.size();
+		}
+		itemOffsets = new OffsetTree(itemCounts);
+		rowOffsets = new OffsetTree(rowCounts);
+		dirty = false;
+		version++;
 	}
 
-	public int getViewIndex(int index) {
-		int position = -1;
-		// the View index can be larger than model index if there are headers.
-		if (viewModel != null && index <= viewModel.size()) {
-			for(int i = 0; i < viewModel.size(); i++) {
-				Item item = viewModel.get(i);
-				if (index == item.index) {
-					position = i;
-					break;
-				}
+	/**
+	 * @return the items of the flat view, in order
+	 */
+	public Item[] toArray()
+	{
+		if (proxy == null) {
+			return new Item[0];
+		}
+		build();
+		if (dataSource != null) {
+			// only fetched rows exist, and they come and go
+			return new Item[0];
+		}
+		Item[] items = new Item[itemOffsets.total()];
+		int position = 0;
+		for (Section section : sections) {
+			if (section.header != null) {
+				items[position++] = section.header;
+			}
+			for (Item item : section.rows) {
+				items[position++] = item;
+			}
+			if (section.footer != null) {
+				items[position++] = section.footer;
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * @return the item at position in the flat view, or null if out of range
+	 */
+	public Item getItem(int position)
+	{
+		if (proxy == null) {
+			return null;
+		}
+		build();
+		if (position < 0 || position >= itemOffsets.total()) {
+			return null;
+		}
+		if (dataSource != null) {
+			TableViewDataSource.Row row = dataSource.getRow(position);
+			if (row.item == null) {
+				row.item = itemForRow(0, position, row.proxy, null);
+			}
+			return (Item) row.item;
+		}
+		int sectionIndex = itemOffsets.find(position);
+		Section section = sections.get(sectionIndex);
+		int offset = position - itemOffsets.prefix(sectionIndex);
+		if (section.header != null) {
+			if (offset == 0) {
+				return section.header;
 			}
+			offset--;
+		}
+		if (offset < section.rows.size()) {
+			return section.rows.get(offset);
+		}
+		return section.footer;
+	}
+
+	/**
+	 * @return the item showing row, or null if the row isn't in the table
+	 */
+	public Item getItem(TableViewRowProxy row)
+	{
+		if (proxy == null) {
+			return null;
+		}
+		build();
+		return itemsByRow.get(row);
+	}
+
+	/**
+	 * @return the position in the flat view of the item
+	 */
+	public int getPosition(Item item)
+	{
+		build();
+		if (dataSource != null) {
+			return item.indexInSection;
+		}
+		Section section = sections.get(item.sectionIndex);
+		int position = itemOffsets.prefix(item.sectionIndex);
+		if (item == section.header) {
+			return position;
 		}
+		if (section.header != null) {
+			position++;
+		}
+		if (item == section.footer) {
+			return position + section.rows.size();
+		}
+		return position + item.indexInSection;
+	}
 
-		return position;
+	public int getViewIndex(int index) {
+		// the View index can be larger than model index if there are headers.
+		if (proxy == null) {
+			return -1;
+		}
+		build();
+		if (index < 0 || index >= rowOffsets.total()) {
+			return -1;
+		}
+		if (dataSource != null) {
+			return index;
+		}
+		int sectionIndex = rowOffsets.find(index);
+		Section section = sections.get(sectionIndex);
+		return getPosition(section.rows.get(index - rowOffsets.prefix(sectionIndex)));
 	}
 
 	public int getRowHeight(int position, int defaultHeight) {
 		int rowHeight = defaultHeight;
 
-		Item item = viewModel.get(position);
+		Item item = getItem(position);
 		Object rh = item.proxy.getProperty(TiC.PROPERTY_ROW_HEIGHT);
 		if (rh != null) {
 			rowHeight = TiConvert.toInt(rh);
@@ -173,7 +435,113 @@ public class TableViewModel
 		return rowHeight;
 	}
 
+	private Section getSectionForEdit(int sectionIndex)
+	{
+		// a model that isn't built yet picks up the edit when it is
+		if (dirty || proxy == null) {
+			return null;
+		}
+		if (sectionIndex < 0 || sectionIndex >= sections.size()) {
+			dirty = true;
+			return null;
+		}
+		Section section = sections.get(sectionIndex);
+		// the edit being applied is the only change the section proxy should have seen since
+		// we last matched it, anything else (e.g. section.add() from JS) means we're stale
+		ArrayList<TableViewSectionProxy> sectionProxies = proxy.getSections();
+		if (sectionIndex >= sectionProxies.size() || sectionProxies.get(sectionIndex) != section.proxy
+			|| section.proxy.getModCount() != section.modCount + 1) {
+			dirty = true;
+			return null;
+		}
+		section.modCount++;
+		return section;
+	}
+
+	/**
+	 * Adds an item for a row just inserted at indexInSection in an existing section.
+	 */
+	public void insertRow(int sectionIndex, int indexInSection, TableViewRowProxy row)
+	{
+		Section section = getSectionForEdit(sectionIndex);
+		if (section == null) {
+			return;
+		}
+		if (indexInSection < 0 || indexInSection > section.rows.size()) {
+			dirty = true;
+			return;
+		}
+		Item item = itemForRow(sectionIndex, indexInSection, row, null);
+		section.rows.add(indexInSection, item);
+		renumber(section, indexInSection + 1);
+		itemsByRow.put(row, item);
+		itemOffsets.add(sectionIndex, 1);
+		rowOffsets.add(sectionIndex, 1);
+		version++;
+	}
+
+	/**
+	 * Removes the item for a row just removed from indexInSection of its section.
+	 */
+	public void removeRow(int sectionIndex, int indexInSection)
+	{
+		Section section = getSectionForEdit(sectionIndex);
+		if (section == null) {
+			return;
+		}
+		if (indexInSection < 0 || indexInSection >= section.rows.size()) {
+			dirty = true;
+			return;
+		}
+		Item item = section.rows.remove(indexInSection);
+		renumber(section, indexInSection);
+		itemsByRow.remove(item.proxy);
+		itemOffsets.add(sectionIndex, -1);
+		rowOffsets.add(sectionIndex, -1);
+		version++;
+	}
+
+	/**
+	 * Replaces the item at indexInSection for a row that was just swapped in.
+	 */
+	public void updateRow(int sectionIndex, int indexInSection, TableViewRowProxy row)
+	{
+		Section section = getSectionForEdit(sectionIndex);
+		if (section == null) {
+			return;
+		}
+		if (indexInSection < 0 || indexInSection >= section.rows.size()) {
+			dirty = true;
+			return;
+		}
+		Item item = itemForRow(sectionIndex, indexInSection, row, null);
+		Item old = section.rows.set(indexInSection, item);
+		itemsByRow.remove(old.proxy);
+		itemsByRow.put(row, item);
+		version++;
+	}
+
+	private void renumber(Section section, int start)
+	{
+		ArrayList<Item> rows = section.rows;
+		int size = rows.size();
+		for (int i = start; i < size; i++) {
+			rows.get(i).indexInSection = i;
+		}
+	}
+
 	public void setDirty() {
 		dirty = true;
 	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public int getVersion() {
+		if (proxy != null) {
+			build();
+		}
+		return version;
+	}
 }
@@ -6,12 +6,10 @@
  */
 package ti.modules.titanium.ui.widget.tableview;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appcelerator.kroll.KrollDict;
-import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.proxy.TiViewProxy;
@@ -29,9 +27,11 @@ import ti.modules.titanium.ui.widget.tableview.TableViewModel.Item;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
@@ -50,6 +50,8 @@ public class TiTableView extends FrameLayout
 
 	//TODO make this configurable
 	protected static final int MAX_CLASS_NAMES = 32;
+	// frames taking longer than this while scrolling are counted as slow (in ms)
+	protected static final int SLOW_FRAME_TIME = 17;
 
 	private TableViewModel viewModel;
 	private ListView listView;
@@ -60,14 +62,19 @@ public class TiTableView extends FrameLayout
 	private HashMap<String, Integer> rowTypes;
 	private AtomicInteger rowTypeCounter;
 
-	private String filterAttribute;
-	private String filterText;
+	private TiTableViewFilter filter;
 
 	private TiContext tiContext;
 	private TableViewProxy proxy;
-	private boolean filterCaseInsensitive = true;
 	private TiTableViewSelector selector;
 
+	// render stats, see getRenderStats()
+	private int rowsBound;
+	private long bindTime, maxBindTime;
+	private int frames, slowFrames;
+	private long lastFrameTime;
+	private boolean scrolling;
+
 	public interface OnItemClickedListener {
 		public void onClick(KrollDict item);
 	}
@@ -76,15 +83,15 @@ public class TiTableView extends FrameLayout
 		public boolean onLongClick(KrollDict item);
 	}
 
-	class TTVListAdapter extends BaseAdapter {
+	class TTVListAdapter extends BaseAdapter
+		implements TiTableViewFilter.OnFilterListener
+	{
 		TableViewModel viewModel;
-		ArrayList<Integer> index;
-		private boolean filtered;
+		// the matching items while filtered, otherwise positions map straight onto the model
+		Item[] filteredItems;
 
 		TTVListAdapter(TableViewModel viewModel) {
 			this.viewModel = viewModel;
-			this.index = new ArrayList<Integer>(viewModel.getRowCount());
-			reIndexItems();
 		}
 
 		protected void registerClassName(String className) {
@@ -96,55 +103,26 @@ public class TiTableView extends FrameLayout
 			}
 		}
 
-		public void reIndexItems() {
-			ArrayList<Item> items = viewModel.getViewModel();
-			int count = items.size();
-			index.clear();
-
-			filtered = false;
-			if (filterAttribute != null && filterText != null && filterAttribute.length() > 0 && filterText.length() > 0) {
-				filtered = true;
-				String filter = filterText;
-				if (filterCaseInsensitive) {
-					filter = filterText.toLowerCase();
-				}
-				for(int i = 0; i < count; i++) {
-					boolean keep = true;
-					Item item = items.get(i);
-					registerClassName(item.className);
-					if (item.proxy.hasProperty(filterAttribute)) {
-						String t = TiConvert.toString(item.proxy.getProperty(filterAttribute));
-						if (filterCaseInsensitive) {
-							t = t.toLowerCase();
-						}
-						if(t.indexOf(filter) < 0) {
-							keep = false;
-						}
-					}
-					if (keep) {
-						index.add(i);
-					}
-				}
-			} else {
-				for(int i = 0; i < count; i++) {
-					Item item = items.get(i);
-					registerClassName(item.className);
-					index.add(i);
-				}
-			}
+		public void onFilter(Item[] items) {
+			filteredItems = items;
+			super.notifyDataSetChanged();
 		}
 
 		public int getCount() {
-			//return viewModel.getViewModel().length();
-			return index.size();
+			if (filteredItems != null) {
+				return filteredItems.length;
+			}
+			return viewModel.getRowCount();
 		}
 
 		public Object getItem(int position) {
-			if (position >= index.size()) {
-				return null;
+			if (filteredItems != null) {
+				if (position >= filteredItems.length) {
+					return null;
+				}
+				return filteredItems[position];
 			}
-
-			return viewModel.getViewModel().get(index.get(position));
+			return viewModel.getItem(position);
 		}
 
 		public long getItemId(int position) {
@@ -208,7 +186,12 @@ public class TiTableView extends FrameLayout
 				v.setLayoutParams(new AbsListView.LayoutParams(
 					AbsListView.LayoutParams.FILL_PARENT, AbsListView.LayoutParams.FILL_PARENT));
 			}
+			long start = System.nanoTime();
 			v.setRowData(item);
+			long elapsed = System.nanoTime() - start;
+			rowsBound++;
+			bindTime += elapsed;
+			maxBindTime = Math.max(maxBindTime, elapsed);
 			return v;
 		}
 
@@ -234,12 +217,19 @@ public class TiTableView extends FrameLayout
 
 		@Override
 		public void notifyDataSetChanged() {
-			reIndexItems();
+			// the filtered items are replaced once the filter has caught up with the change,
+			// or dropped if the change turned the filter off (e.g. the model went virtual)
+			if (filter != null) {
+				filter.refresh();
+			}
+			if (filter == null || !filter.isActive()) {
+				filteredItems = null;
+			}
 			super.notifyDataSetChanged();
 		}
 
 		public boolean isFiltered() {
-			return filtered;
+			return filteredItems != null;
 		}
 	}
 
@@ -263,12 +253,14 @@ public class TiTableView extends FrameLayout
 		listView.setFocusableInTouchMode(true);
 		listView.setBackgroundColor(Color.TRANSPARENT);
 		listView.setCacheColorHint(Color.TRANSPARENT);
-		final KrollProxy fProxy = proxy;
+		final TableViewProxy fProxy = proxy;
 		listView.setOnScrollListener(new OnScrollListener()
 		{
 			@Override
 			public void onScrollStateChanged(AbsListView view, int scrollState)
 			{
+				scrolling = scrollState != OnScrollListener.SCROLL_STATE_IDLE;
+				lastFrameTime = 0;
 				if (scrollState == OnScrollListener.SCROLL_STATE_IDLE){
 					KrollDict eventArgs = new KrollDict();
 					KrollDict size = new KrollDict();
@@ -282,6 +274,9 @@ public class TiTableView extends FrameLayout
 			@Override
 			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount)
 			{
+				if (!fProxy.hierarchyHasListener(TiC.EVENT_SCROLL)) {
+					return;
+				}
 				KrollDict eventArgs = new KrollDict();
 				eventArgs.put("firstVisibleItem", firstVisibleItem);
 				eventArgs.put("visibleItemCount", visibleItemCount);
@@ -290,7 +285,7 @@ public class TiTableView extends FrameLayout
 				size.put("width", TiTableView.this.getWidth());
 				size.put("height", TiTableView.this.getHeight());
 				eventArgs.put("size", size);
-				fProxy.fireEvent("scroll", eventArgs);
+				fProxy.fireEvent(TiC.EVENT_SCROLL, eventArgs);
 			}
 		});
 
@@ -298,6 +293,7 @@ public class TiTableView extends FrameLayout
 			setSeparatorColor(TiConvert.toString(proxy.getProperty(TiC.PROPERTY_SEPARATOR_COLOR)));
 		}
 		adapter = new TTVListAdapter(viewModel);
+		filter = new TiTableViewFilter(viewModel, adapter);
 		if (proxy.hasProperty(TiC.PROPERTY_HEADER_VIEW)) {
 			TiViewProxy view = (TiViewProxy) proxy.getProperty(TiC.PROPERTY_HEADER_VIEW);
 			listView.addHeaderView(layoutHeaderOrFooter(view), null, false);
@@ -341,9 +337,45 @@ public class TiTableView extends FrameLayout
 				return rowClicked(tvItem, position, true);
 			}
 		});
+		listView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+			public boolean onPreDraw() {
+				if (scrolling) {
+					long now = SystemClock.uptimeMillis();
+					if (lastFrameTime > 0) {
+						frames++;
+						if (now - lastFrameTime > SLOW_FRAME_TIME) {
+							slowFrames++;
+						}
+					}
+					lastFrameTime = now;
+				}
+				return true;
+			}
+		});
 		addView(listView);
 	}
 
+	/**
+	 * @return how long binding rows took, and how many frames drawn while scrolling were slow
+	 */
+	public KrollDict getRenderStats()
+	{
+		KrollDict stats = new KrollDict();
+		stats.put("rowsBound", rowsBound);
+		stats.put("averageBindTime", rowsBound > 0 ? bindTime / rowsBound / 1000000.0 : 0);
+		stats.put("maxBindTime", maxBindTime / 1000000.0);
+		stats.put("frames", frames);
+		stats.put("slowFrames", slowFrames);
+		return stats;
+	}
+
+	public void resetRenderStats()
+	{
+		rowsBound = 0;
+		bindTime = maxBindTime = 0;
+		frames = slowFrames = 0;
+	}
+
 	private TiBaseTableViewItem getParentTableViewItem(View view)
 	{
 		ViewParent parent = view.getParent();
@@ -365,7 +397,7 @@ public class TiTableView extends FrameLayout
 	}
 	
 	protected Item getItemAtPosition(int position) {
-		return viewModel.getViewModel().get(adapter.index.get(position));
+		return (Item) adapter.getItem(position);
 	}
 
 	protected boolean rowClicked(TiBaseTableViewItem rowView, int position, boolean longClick) {
@@ -452,26 +484,51 @@ public class TiTableView extends FrameLayout
 	}
 
 	@Override
-	public void filterBy(String text) {
-		filterText = text;
+	public void filterBy(final String text) {
 		if (adapter != null) {
 			tiContext.getActivity().runOnUiThread(new Runnable() {
 				public void run() {
-					dataSetChanged();
+					if (filter != null) {
+						filter.filterBy(text);
+					}
 				}
 			});
 		}
 	}
 
 	public void setFilterAttribute(String filterAttribute) {
-		this.filterAttribute = filterAttribute;
+		filter.setAttribute(filterAttribute);
 	}
 
 	public void setFilterCaseInsensitive(boolean filterCaseInsensitive) {
-		this.filterCaseInsensitive  = filterCaseInsensitive;
+		filter.setCaseInsensitive(filterCaseInsensitive);
+	}
+
+	public void setFilterAnchored(boolean filterAnchored) {
+		filter.setAnchored(filterAnchored);
+	}
+
+	/**
+	 * Drops the cached filter text when a row changes the property tables are filtered by.
+	 */
+	public void rowPropertyChanged(String name) {
+		if (filter == null || !name.equals(filter.getAttribute())) {
+			return;
+		}
+		tiContext.getActivity().runOnUiThread(new Runnable() {
+			public void run() {
+				if (filter != null) {
+					filter.invalidate();
+				}
+			}
+		});
 	}
 
 	public void release() {
+		if (filter != null) {
+			filter.release();
+			filter = null;
+		}
 		adapter = null;
 		if (listView != null) {
 			listView.setAdapter(null);
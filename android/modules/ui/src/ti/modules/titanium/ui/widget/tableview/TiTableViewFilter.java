@@ -0,0 +1,362 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.ui.widget.tableview;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiBackgroundTask;
+import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.util.TiConvert;
+
+import ti.modules.titanium.ui.widget.tableview.TableViewModel.Item;
+import android.os.Handler;
+
+/**
+ * Filters the items of a table by the text of one row property (the table's filterAttribute).
+ *
+ * The text of each row is read once on the UI thread, then normalized off it and cached
+ * until the model or a row's filter property changes. A query that extends the previous
+ * one only rescans the previous matches, and anchored (prefix) queries are answered from
+ * a sorted index of the texts. Filtering runs on a background thread once typing pauses,
+ * and the matches are handed back on the UI thread.
+ */
+public class TiTableViewFilter
+{
+	private static final String LCAT = "TiTableViewFilter";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	// how long typing has to pause before a query is run
+	private static final int DEBOUNCE_DELAY = 150;
+
+	public interface OnFilterListener {
+		/**
+		 * Called on the UI thread with the matching items, or null when there's no filter.
+		 */
+		public void onFilter(Item[] items);
+	}
+
+	/**
+	 * The filter text of each item for one version of the model. It's read from the rows
+	 * on the UI thread when this is created, after that only the filtering task touches it.
+	 */
+	private static class Keys
+	{
+		final int version;
+		final Item[] items;
+		final boolean caseInsensitive;
+		// the raw filter text of each item, null for items that don't have the attribute
+		String[] texts;
+		// null for items that don't have the attribute, those always match
+		String[] keys;
+		// positions of the items with a key, ordered by key
+		int[] sorted;
+		// positions of the items without a key
+		int[] unkeyed;
+
+		Keys(int version, Item[] items, String attribute, boolean caseInsensitive) {
+			this.version = version;
+			this.items = items;
+			this.caseInsensitive = caseInsensitive;
+			texts = new String[items.length];
+			for (int i = 0; i < items.length; i++) {
+				Item item = items[i];
+				if (item.proxy.hasProperty(attribute)) {
+					String text = TiConvert.toString(item.proxy.getProperty(attribute));
+					texts[i] = text != null ? text : "";
+				}
+			}
+		}
+
+		void buildKeys() {
+			if (keys != null) {
+				return;
+			}
+			keys = new String[texts.length];
+			for (int i = 0; i < texts.length; i++) {
+				String text = texts[i];
+				if (text != null) {
+					keys[i] = caseInsensitive ? text.toLowerCase() : text;
+				}
+			}
+			texts = null;
+		}
+
+		void buildIndex() {
+			if (sorted != null) {
+				return;
+			}
+			int count = 0;
+			for (String key : keys) {
+				if (key != null) {
+					count++;
+				}
+			}
+			Integer[] order = new Integer[count];
+			unkeyed = new int[keys.length - count];
+			int keyed = 0, other = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null) {
+					order[keyed++] = i;
+				} else {
+					unkeyed[other++] = i;
+				}
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return keys[a].compareTo(keys[b]);
+				}
+			});
+			sorted = new int[count];
+			for (int i = 0; i < count; i++) {
+				sorted[i] = order[i];
+			}
+		}
+	}
+
+	private static class Result
+	{
+		Keys keys;
+		String query;
+		boolean anchored;
+		int[] positions;
+	}
+
+	private Handler handler;
+	private TableViewModel model;
+	private OnFilterListener listener;
+
+	private String attribute;
+	private boolean caseInsensitive = true;
+	private boolean anchored;
+	private String text;
+
+	// state below is only touched on the UI thread
+	private Keys keys;
+	private int generation;
+	// whether the listener was last handed matches rather than null
+	private boolean filtered;
+
+	// the last query run, only touched by the filtering task
+	private Result lastResult;
+
+	private Runnable runFilter = new Runnable() {
+		public void run() {
+			startFilter();
+		}
+	};
+
+	public TiTableViewFilter(TableViewModel model, OnFilterListener listener)
+	{
+		// created on the UI thread
+		this.handler = new Handler();
+		this.model = model;
+		this.listener = listener;
+	}
+
+	public void setAttribute(String attribute)
+	{
+		this.attribute = attribute;
+		invalidate();
+	}
+
+	public void setCaseInsensitive(boolean caseInsensitive)
+	{
+		this.caseInsensitive = caseInsensitive;
+		invalidate();
+	}
+
+	public void setAnchored(boolean anchored)
+	{
+		this.anchored = anchored;
+		refresh();
+	}
+
+	public String getAttribute()
+	{
+		return attribute;
+	}
+
+	public boolean isActive()
+	{
+		// rows from a data source aren't all there to filter
+		return attribute != null && text != null && attribute.length() > 0 && text.length() > 0
+			&& model != null && !model.isVirtual();
+	}
+
+	/**
+	 * Filters by text once typing pauses, or clears the filter right away when text is empty.
+	 */
+	public void filterBy(String text)
+	{
+		this.text = text;
+		generation++;
+		handler.removeCallbacks(runFilter);
+		if (!isActive()) {
+			clearFilter();
+			return;
+		}
+		handler.postDelayed(runFilter, DEBOUNCE_DELAY);
+	}
+
+	/**
+	 * Drops the cached filter text, e.g. after a row's filter property changed.
+	 */
+	public void invalidate()
+	{
+		keys = null;
+		refresh();
+	}
+
+	/**
+	 * Runs the current query again, without waiting, if there is one.
+	 */
+	public void refresh()
+	{
+		generation++;
+		handler.removeCallbacks(runFilter);
+		if (!isActive()) {
+			// e.g. the attribute was cleared, the old matches may not even be rows anymore
+			clearFilter();
+			return;
+		}
+		handler.post(runFilter);
+	}
+
+	private void clearFilter()
+	{
+		if (filtered && listener != null) {
+			filtered = false;
+			listener.onFilter(null);
+		}
+	}
+
+	private void startFilter()
+	{
+		if (model == null || !isActive()) {
+			return;
+		}
+		int version = model.getVersion();
+		if (keys == null || keys.version != version) {
+			keys = new Keys(version, model.toArray(), attribute, caseInsensitive);
+		}
+
+		final Keys currentKeys = keys;
+		final String query = caseInsensitive ? text.toLowerCase() : text;
+		final boolean currentAnchored = anchored;
+		final int currentGeneration = generation;
+		new TiBackgroundTask<int[]>("filtering table") {
+			protected int[] doInBackground() {
+				return filter(currentKeys, query, currentAnchored);
+			}
+			protected void onResult(int[] positions) {
+				deliver(currentKeys, positions, currentGeneration);
+			}
+		}.execute(handler);
+	}
+
+	private void deliver(Keys keys, int[] positions, int generation)
+	{
+		// the text changed, the model was refreshed or the table released while this ran
+		if (generation != this.generation || listener == null) {
+			return;
+		}
+		Item[] items = new Item[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			items[i] = keys.items[positions[i]];
+		}
+		filtered = true;
+		listener.onFilter(items);
+	}
+
+	private int[] filter(Keys keys, String query, boolean anchored)
+	{
+		keys.buildKeys();
+
+		int[] candidates = null;
+		Result last = lastResult;
+		if (last != null && last.keys == keys && last.anchored == anchored
+			&& (anchored ? query.startsWith(last.query) : query.indexOf(last.query) >= 0)) {
+			// the query only got longer, so matches can only drop out
+			candidates = last.positions;
+			if (DBG) {
+				Log.d(LCAT, "Narrowing " + candidates.length + " previous matches for \"" + query + "\"");
+			}
+		} else if (anchored) {
+			candidates = prefixMatches(keys, query);
+		}
+
+		int[] matches;
+		if (candidates != null) {
+			matches = new int[candidates.length];
+		} else {
+			matches = new int[keys.items.length];
+		}
+		int count = 0;
+		int size = candidates != null ? candidates.length : keys.items.length;
+		for (int i = 0; i < size; i++) {
+			int position = candidates != null ? candidates[i] : i;
+			String key = keys.keys[position];
+			if (key == null || (anchored ? key.startsWith(query) : key.indexOf(query) >= 0)) {
+				matches[count++] = position;
+			}
+		}
+		if (count < matches.length) {
+			int[] trimmed = new int[count];
+			System.arraycopy(matches, 0, trimmed, 0, count);
+			matches = trimmed;
+		}
+
+		Result result = new Result();
+		result.keys = keys;
+		result.query = query;
+		result.anchored = anchored;
+		result.positions = matches;
+		lastResult = result;
+		return matches;
+	}
+
+	/**
+	 * @return the positions of the items whose key starts with query, plus those without a key, in order
+	 */
+	private int[] prefixMatches(Keys keys, String query)
+	{
+		keys.buildIndex();
+		int[] sorted = keys.sorted;
+
+		// find the first key not less than query, the matches follow it
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keys.keys[sorted[middle]].compareTo(query) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		int end = low;
+		while (end < sorted.length && keys.keys[sorted[end]].startsWith(query)) {
+			end++;
+		}
+
+		int[] matches = new int[end - low + keys.unkeyed.length];
+		System.arraycopy(sorted, low, matches, 0, end - low);
+		System.arraycopy(keys.unkeyed, 0, matches, end - low, keys.unkeyed.length);
+		Arrays.sort(matches);
+		return matches;
+	}
+
+	public void release()
+	{
+		generation++;
+		handler.removeCallbacks(runFilter);
+		listener = null;
+		model = null;
+		keys = null;
+	}
+}
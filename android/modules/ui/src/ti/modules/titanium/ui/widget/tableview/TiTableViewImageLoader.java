@@ -0,0 +1,178 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.ui.widget.tableview;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.appcelerator.titanium.TiContext;
+import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.util.TiFileHelper;
+
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Message;
+
+/**
+ * Loads the left and right images of table rows off the UI thread, and keeps the
+ * most recently used ones so rows scrolling back into view get theirs right away.
+ *
+ * Images are cached by their Drawable.ConstantState, so each row gets its own
+ * Drawable sharing the same bitmap.
+ */
+public class TiTableViewImageLoader implements Handler.Callback
+{
+	private static final String LCAT = "TiTableViewImageLoader";
+	private static final boolean DBG = TiConfig.LOGD;
+	private static final int MSG_FIRE_IMAGE_LOADED = 1000;
+	private static final int MAX_CACHED_IMAGES = 64;
+	public static final int THREAD_POOL_SIZE = 2;
+
+	protected static TiTableViewImageLoader _instance;
+
+	public interface OnImageLoadedListener {
+		/**
+		 * Called on the UI thread, drawable is null if the image couldn't be loaded.
+		 */
+		public void onImageLoaded(String url, Drawable drawable);
+	}
+
+	@SuppressWarnings("serial")
+	protected LinkedHashMap<String, SoftReference<Drawable.ConstantState>> cache =
+		new LinkedHashMap<String, SoftReference<Drawable.ConstantState>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SoftReference<Drawable.ConstantState>> eldest) {
+				return size() > MAX_CACHED_IMAGES;
+			}
+		};
+	protected HashMap<String, ArrayList<OnImageLoadedListener>> listeners =
+		new HashMap<String, ArrayList<OnImageLoadedListener>>();
+	protected ExecutorService threadPool;
+	protected Handler handler;
+
+	/**
+	 * Must first be called on the UI thread.
+	 */
+	public static TiTableViewImageLoader getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiTableViewImageLoader();
+		}
+		return _instance;
+	}
+
+	protected TiTableViewImageLoader()
+	{
+		handler = new Handler(this);
+		threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+	}
+
+	/**
+	 * @return a new drawable for url if it's cached, otherwise null
+	 */
+	public synchronized Drawable getCached(String url)
+	{
+		SoftReference<Drawable.ConstantState> ref = cache.get(url);
+		if (ref == null) {
+			return null;
+		}
+		Drawable.ConstantState state = ref.get();
+		if (state == null) {
+			cache.remove(url);
+			return null;
+		}
+		return state.newDrawable();
+	}
+
+	/**
+	 * Loads the image at url in the background. Requests for an image that is
+	 * already being loaded wait for that load.
+	 */
+	public void load(TiContext context, String url, OnImageLoadedListener listener)
+	{
+		synchronized (this) {
+			ArrayList<OnImageLoadedListener> list = listeners.get(url);
+			if (list != null) {
+				list.add(listener);
+				return;
+			}
+			list = new ArrayList<OnImageLoadedListener>();
+			list.add(listener);
+			listeners.put(url, list);
+		}
+		threadPool.execute(new LoadJob(context, url));
+	}
+
+	protected class LoadJob implements Runnable
+	{
+		protected TiContext context;
+		protected String url;
+
+		public LoadJob(TiContext context, String url)
+		{
+			this.context = context;
+			this.url = url;
+		}
+
+		public void run()
+		{
+			Drawable drawable = null;
+			try {
+				if (context.getActivity() != null) {
+					drawable = new TiFileHelper(context.getActivity()).loadDrawable(context, url, false);
+				}
+			} catch (Throwable t) {
+				Log.e(LCAT, "Error loading row image " + url + ": " + t.getMessage(), t);
+			}
+
+			Drawable.ConstantState state = drawable != null ? drawable.getConstantState() : null;
+			if (state != null) {
+				synchronized (TiTableViewImageLoader.this) {
+					cache.put(url, new SoftReference<Drawable.ConstantState>(state));
+				}
+			} else if (DBG && drawable == null) {
+				Log.d(LCAT, "No image loaded for " + url);
+			}
+			Message msg = handler.obtainMessage(MSG_FIRE_IMAGE_LOADED);
+			msg.obj = new Object[] { url, state != null ? state : drawable };
+			msg.sendToTarget();
+		}
+	}
+
+	public boolean handleMessage(Message msg)
+	{
+		if (msg.what == MSG_FIRE_IMAGE_LOADED) {
+			Object[] args = (Object[]) msg.obj;
+			String url = (String) args[0];
+			ArrayList<OnImageLoadedListener> list;
+			synchronized (this) {
+				list = listeners.remove(url);
+			}
+			if (list == null) {
+				return true;
+			}
+			for (OnImageLoadedListener listener : list) {
+				Drawable drawable = null;
+				if (args[1] instanceof Drawable.ConstantState) {
+					drawable = ((Drawable.ConstantState) args[1]).newDrawable();
+				} else if (args[1] instanceof Drawable) {
+					// no constant state to share, hand the one drawable out
+					drawable = (Drawable) args[1];
+				}
+				listener.onImageLoaded(url, drawable);
+			}
+			return true;
+		}
+		return false;
+	}
+}
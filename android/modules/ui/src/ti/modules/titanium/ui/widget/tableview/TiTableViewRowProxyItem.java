@@ -7,6 +7,8 @@
 package ti.modules.titanium.ui.widget.tableview;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.titanium.TiC;
@@ -48,6 +50,66 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 	private Item item;
 	private Object selectorSource;
 	private Drawable selectorDrawable;
+	// what each view was last bound to, so rebinding only applies the properties that changed
+	private IdentityHashMap<TiUIView, ViewBinding> bindings;
+	private String leftImageUrl, rightImageUrl;
+
+	/**
+	 * The properties last applied to a view, and the proxy they came from.
+	 */
+	private static class ViewBinding
+	{
+		TiViewProxy proxy;
+		KrollDict applied;
+
+		ViewBinding(TiViewProxy proxy, KrollDict applied) {
+			this.proxy = proxy;
+			this.applied = applied;
+		}
+
+		/**
+		 * @return the properties that differ from the ones last applied
+		 */
+		KrollDict diff(TiViewProxy newProxy, KrollDict properties) {
+			// the old proxy may have changed since, its changes went straight to the view
+			KrollDict current = proxy != newProxy ? proxy.getProperties() : null;
+			KrollDict changed = new KrollDict();
+			boolean backgroundChanged = false, textChanged = false;
+			for (Map.Entry<String, Object> entry : properties.entrySet()) {
+				String key = entry.getKey();
+				Object value = entry.getValue();
+				Object appliedValue = applied.get(key);
+				if (!applied.containsKey(key) || !equal(value, appliedValue)
+					|| (current != null && !equal(current.get(key), appliedValue))) {
+					changed.put(key, value);
+					backgroundChanged |= isBackgroundProperty(key);
+					textChanged |= isTextProperty(key);
+				}
+			}
+			// these are processed together, so they have to be applied together
+			if (backgroundChanged || textChanged) {
+				for (Map.Entry<String, Object> entry : properties.entrySet()) {
+					String key = entry.getKey();
+					if ((backgroundChanged && isBackgroundProperty(key)) || (textChanged && isTextProperty(key))) {
+						changed.put(key, entry.getValue());
+					}
+				}
+			}
+			return changed;
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == b || (a != null && a.equals(b));
+		}
+
+		private static boolean isBackgroundProperty(String key) {
+			return key.startsWith("background") || key.startsWith("border");
+		}
+
+		private static boolean isTextProperty(String key) {
+			return key.equals(TiC.PROPERTY_TEXT) || key.equals(TiC.PROPERTY_TITLE) || key.equals(TiC.PROPERTY_HTML);
+		}
+	}
 
 	public TiTableViewRowProxyItem(TiContext tiContext) {
 		super(tiContext);
@@ -111,6 +173,7 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 				}
 			}
 			views = new ArrayList<TiUIView>(len);
+			bindings = null;
 		}
 
 		for (int i = 0; i < len; i++) {
@@ -133,8 +196,7 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 			}
 
 			View v = view.getNativeView();
-			view.setProxy(proxy);
-			view.processProperties(proxy.getProperties());
+			bindView(view, proxy, proxy.getProperties());
 			applyChildProxies(proxy, view);
 			if (v.getParent() == null) {
 				content.addView(v, view.getLayoutParams());
@@ -156,13 +218,34 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 		TiViewProxy childProxies[] = viewProxy.getChildren();
 		for (TiUIView childView : view.getChildren()) {
 			TiViewProxy childProxy = childProxies[i];
-			childView.setProxy(childProxy);
-			childView.processProperties(childProxy.getProperties());
+			bindView(childView, childProxy, childProxy.getProperties());
 			applyChildProxies(childProxy, childView);
 			i++;
 		}
 	}
 
+	/**
+	 * Points view at proxy and applies its properties. A view that was bound before, to
+	 * this row or another row of the same className, only gets the properties that changed.
+	 */
+	protected void bindView(TiUIView view, TiViewProxy proxy, KrollDict properties)
+	{
+		view.setProxy(proxy);
+		if (bindings == null) {
+			bindings = new IdentityHashMap<TiUIView, ViewBinding>();
+		}
+		ViewBinding binding = bindings.get(view);
+		if (binding == null) {
+			view.processProperties(properties);
+		} else {
+			KrollDict changed = binding.diff(proxy, properties);
+			if (changed.size() > 0) {
+				view.processProperties(changed);
+			}
+		}
+		bindings.put(view, new ViewBinding(proxy, new KrollDict(properties)));
+	}
+
 	protected void refreshOldStyleRow()
 	{
 		TableViewRowProxy rp = getRowProxy();
@@ -174,8 +257,7 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 			views.add(new TiUILabel(rp));
 		}
 		TiUILabel t = (TiUILabel) views.get(0);
-		t.setProxy(rp);
-		t.processProperties(filterProperties(rp.getProperties()));
+		bindView(t, rp, filterProperties(rp.getProperties()));
 		View v = t.getNativeView();
 		if (v.getParent() == null) {
 			TiCompositeLayout.LayoutParams params = (TiCompositeLayout.LayoutParams) t.getLayoutParams();
@@ -206,16 +288,14 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 
 		setBackgroundFromProperties(props);
 		// Handle right image
-		boolean clearRightImage = true;
+		Drawable rightDrawable = null;
 		// It's one or the other, check or child.  If you set them both, child's gonna win.
 		if (props.containsKey(TiC.PROPERTY_HAS_CHECK)) {
 			if (TiConvert.toBoolean(props, TiC.PROPERTY_HAS_CHECK)) {
 				if (hasCheckDrawable == null) {
 					hasCheckDrawable = createHasCheckDrawable();
 				}
-				rightImage.setImageDrawable(hasCheckDrawable);
-				rightImage.setVisibility(VISIBLE);
-				clearRightImage = false;
+				rightDrawable = hasCheckDrawable;
 			}
 		}
 		if (props.containsKey(TiC.PROPERTY_HAS_CHILD)) {
@@ -223,40 +303,37 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 				if (hasChildDrawable == null) {
 					hasChildDrawable = createHasChildDrawable();
 				}
-				rightImage.setImageDrawable(hasChildDrawable);
-				rightImage.setVisibility(VISIBLE);
-				clearRightImage = false;
+				rightDrawable = hasChildDrawable;
 			}
 		}
+		String url = null;
 		if (props.containsKey(TiC.PROPERTY_RIGHT_IMAGE)) {
 			String path = TiConvert.toString(props, TiC.PROPERTY_RIGHT_IMAGE);
-			String url = tiContext.resolveUrl(null, path);
-			Drawable d = loadDrawable(url);
-			if (d != null) {
-				rightImage.setImageDrawable(d);
-				rightImage.setVisibility(VISIBLE);
-				clearRightImage = false;
-			}
+			url = tiContext.resolveUrl(null, path);
 		}
-
-		if (clearRightImage) {
-			rightImage.setImageDrawable(null);
-			rightImage.setVisibility(GONE);
+		if (url == null || !url.equals(rightImage.getTag())) {
+			// the image replaces the check or child indicator once it's loaded
+			setImage(rightImage, rightDrawable);
+			rightImage.setTag(null);
+		}
+		rightImageUrl = url;
+		if (url != null) {
+			loadImage(rightImage, url);
 		}
 
 		// Handle left image
+		url = null;
 		if (props.containsKey(TiC.PROPERTY_LEFT_IMAGE)) {
 			String path = TiConvert.toString(props, TiC.PROPERTY_LEFT_IMAGE);
-			String url = tiContext.resolveUrl(null, path);
-
-			Drawable d = loadDrawable(url);
-			if (d != null) {
-				leftImage.setImageDrawable(d);
-				leftImage.setVisibility(VISIBLE);
-			}
-		} else {
-			leftImage.setImageDrawable(null);
-			leftImage.setVisibility(GONE);
+			url = tiContext.resolveUrl(null, path);
+		}
+		if (url == null || !url.equals(leftImage.getTag())) {
+			setImage(leftImage, null);
+			leftImage.setTag(null);
+		}
+		leftImageUrl = url;
+		if (url != null) {
+			loadImage(leftImage, url);
 		}
 
 		if (props.containsKey(TiC.PROPERTY_HEIGHT)) {
@@ -276,6 +353,42 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 		}
 	}
 
+	private void setImage(ImageView imageView, Drawable drawable)
+	{
+		if (imageView.getDrawable() != drawable) {
+			imageView.setImageDrawable(drawable);
+		}
+		imageView.setVisibility(drawable != null ? VISIBLE : GONE);
+	}
+
+	/**
+	 * Shows the image at url in imageView, straight away if it's cached,
+	 * otherwise once it has loaded and if the row still wants it then.
+	 */
+	private void loadImage(final ImageView imageView, String url)
+	{
+		// the tag holds the url of the image being shown
+		if (url.equals(imageView.getTag())) {
+			return;
+		}
+		TiTableViewImageLoader loader = TiTableViewImageLoader.getInstance();
+		Drawable d = loader.getCached(url);
+		if (d != null) {
+			setImage(imageView, d);
+			imageView.setTag(url);
+			return;
+		}
+		loader.load(tiContext, url, new TiTableViewImageLoader.OnImageLoadedListener() {
+			public void onImageLoaded(String url, Drawable drawable) {
+				String wanted = imageView == leftImage ? leftImageUrl : rightImageUrl;
+				if (drawable != null && url.equals(wanted)) {
+					setImage(imageView, drawable);
+					imageView.setTag(url);
+				}
+			}
+		});
+	}
+
 	protected boolean hasView(TiUIView view) {
 		if (views == null) return false;
 		for (TiUIView v : views) {
@@ -424,6 +537,7 @@ public class TiTableViewRowProxyItem extends TiBaseTableViewItem
 	@Override
 	public void release() {
 		super.release();
+		bindings = null;
 		if (views != null) {
 			for (TiUIView view : views) {
 				view.release();
@@ -0,0 +1,182 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollProxy;
+import org.appcelerator.kroll.annotations.Kroll;
+import org.appcelerator.titanium.TiContext;
+import org.appcelerator.titanium.util.Log;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+/**
+ * Streams a document as XmlPullParser events, without building a DOM or any node proxies.
+ * Events are handed to JS in batches through {@link #next(int)} to keep the number of
+ * calls across the bridge low.
+ */
+@Kroll.proxy
+public class PullParserProxy extends KrollProxy
+{
+	private static final String LCAT = "PullParserProxy";
+	private static final int DEFAULT_BATCH_SIZE = 64;
+
+	@Kroll.constant public static final int START_DOCUMENT = XmlPullParser.START_DOCUMENT;
+	@Kroll.constant public static final int END_DOCUMENT = XmlPullParser.END_DOCUMENT;
+	@Kroll.constant public static final int START_TAG = XmlPullParser.START_TAG;
+	@Kroll.constant public static final int END_TAG = XmlPullParser.END_TAG;
+	@Kroll.constant public static final int TEXT = XmlPullParser.TEXT;
+
+	private XmlPullParser parser;
+	private InputStream stream;
+	private Reader reader;
+	private boolean ignoreWhitespace = true;
+	private boolean done;
+
+	public PullParserProxy(TiContext context, InputStream stream)
+		throws XmlPullParserException
+	{
+		super(context);
+		this.stream = stream;
+		parser = newParser();
+		// let the parser pick the encoding from the declaration
+		parser.setInput(stream, null);
+	}
+
+	public PullParserProxy(TiContext context, Reader reader)
+		throws XmlPullParserException
+	{
+		super(context);
+		this.reader = reader;
+		parser = newParser();
+		parser.setInput(reader);
+	}
+
+	private static XmlPullParser newParser()
+		throws XmlPullParserException
+	{
+		XmlPullParser parser = Xml.newPullParser();
+		parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+		return parser;
+	}
+
+	@Kroll.getProperty @Kroll.method
+	public boolean getIgnoreWhitespace()
+	{
+		return ignoreWhitespace;
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setIgnoreWhitespace(boolean ignoreWhitespace)
+	{
+		this.ignoreWhitespace = ignoreWhitespace;
+	}
+
+	/**
+	 * @return up to count events (64 by default), each a dictionary with the event type, depth and
+	 * the tag's name, namespace and attributes or the text. An empty array once the document ended.
+	 */
+	@Kroll.method
+	public Object[] next(@Kroll.argument(optional=true) Object count)
+		throws XmlPullParserException, IOException
+	{
+		int max = count instanceof Number ? ((Number) count).intValue() : DEFAULT_BATCH_SIZE;
+		ArrayList<KrollDict> events = new ArrayList<KrollDict>(Math.min(max, DEFAULT_BATCH_SIZE));
+		while (!done && events.size() < max) {
+			int type = parser.next();
+			if (type == XmlPullParser.END_DOCUMENT) {
+				done = true;
+				close();
+				break;
+			}
+			if (type == XmlPullParser.TEXT && ignoreWhitespace && parser.isWhitespace()) {
+				continue;
+			}
+			events.add(createEvent(type));
+		}
+		return events.toArray();
+	}
+
+	/**
+	 * Skips the rest of the element whose start tag was the last event returned, including its end tag.
+	 */
+	@Kroll.method
+	public void skip()
+		throws XmlPullParserException, IOException
+	{
+		if (done || parser.getEventType() != XmlPullParser.START_TAG) {
+			return;
+		}
+		int depth = 1;
+		while (depth > 0) {
+			switch (parser.next()) {
+				case XmlPullParser.START_TAG:
+					depth++;
+					break;
+				case XmlPullParser.END_TAG:
+					depth--;
+					break;
+				case XmlPullParser.END_DOCUMENT:
+					done = true;
+					close();
+					return;
+			}
+		}
+	}
+
+	@Kroll.method
+	public void close()
+	{
+		done = true;
+		try {
+			if (stream != null) {
+				stream.close();
+			}
+			if (reader != null) {
+				reader.close();
+			}
+		} catch (IOException e) {
+			Log.w(LCAT, "Error closing XML input: " + e.getMessage());
+		}
+		stream = null;
+		reader = null;
+	}
+
+	private KrollDict createEvent(int type)
+	{
+		KrollDict event = new KrollDict();
+		event.put("type", type);
+		event.put("depth", parser.getDepth());
+		switch (type) {
+			case XmlPullParser.START_TAG:
+				event.put("name", parser.getName());
+				event.put("namespace", parser.getNamespace());
+				int count = parser.getAttributeCount();
+				KrollDict attributes = new KrollDict(count);
+				for (int i = 0; i < count; i++) {
+					attributes.put(parser.getAttributeName(i), parser.getAttributeValue(i));
+				}
+				event.put("attributes", attributes);
+				break;
+			case XmlPullParser.END_TAG:
+				event.put("name", parser.getName());
+				event.put("namespace", parser.getNamespace());
+				break;
+			case XmlPullParser.TEXT:
+				event.put("text", parser.getText());
+				break;
+		}
+		return event;
+	}
+}
@@ -6,8 +6,8 @@
  */
 package ti.modules.titanium.xml;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -16,13 +16,17 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.appcelerator.kroll.KrollModule;
 import org.appcelerator.kroll.annotations.Kroll;
+import org.appcelerator.titanium.TiBlob;
 import org.appcelerator.titanium.TiContext;
+import org.appcelerator.titanium.TiFileProxy;
 import org.appcelerator.titanium.util.Log;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
 import android.util.Xml;
@@ -30,18 +34,24 @@ import android.util.Xml;
 @Kroll.module
 public class XMLModule extends KrollModule {
 
-	private static DocumentBuilder builder;
 	private static final String LCAT = "XMLModule";
-	
-	static {
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setNamespaceAware(true);
-			builder = factory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			Log.e(LCAT, "Error finding DOM implementation", e);
+
+	// DocumentBuilder isn't thread safe, so each thread (every context's Kroll thread,
+	// HTTP client threads...) gets its own
+	private static final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue()
+		{
+			try {
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				factory.setNamespaceAware(true);
+				return factory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				Log.e(LCAT, "Error finding DOM implementation", e);
+				return null;
+			}
 		}
-	}
+	};
 	
 	public XMLModule(TiContext context) {
 		super(context);
@@ -60,12 +70,22 @@ public class XMLModule extends KrollModule {
 		return parse(context, xml, System.getProperty("file.encoding", "UTF-8"));
 	}
 	
+	/**
+	 * Parses XML text into a document.
+	 *
+	 * @param encoding the encoding the text was decoded from (e.g. an HTTP response's charset).
+	 * The text is parsed as is rather than encoded back to bytes, so it's only passed on to the
+	 * parser as the source's encoding and never used to decode anything.
+	 */
 	public static DocumentProxy parse(TiContext context, String xml, String encoding)
 		throws SAXException, IOException
 	{
+		DocumentBuilder builder = builders.get();
 		if (builder != null) {
 			try {
-				return new DocumentProxy(context, builder.parse(new ByteArrayInputStream(xml.getBytes(encoding))));
+				InputSource source = new InputSource(new StringReader(xml));
+				source.setEncoding(encoding);
+				return new DocumentProxy(context, builder.parse(source));
 			} catch (SAXException e) {
 				Log.e(LCAT, "Error parsing XML", e);
 				throw e;
@@ -77,6 +97,24 @@ public class XMLModule extends KrollModule {
 		return null;
 	}
 	
+	/**
+	 * Creates a pull parser over a string, a blob (e.g. an HTTPClient's responseData) or a file.
+	 * Blobs and files are streamed rather than read in memory first.
+	 */
+	@Kroll.method
+	public PullParserProxy createPullParser(Object source)
+		throws XmlPullParserException, IOException
+	{
+		if (source instanceof TiBlob) {
+			return new PullParserProxy(getTiContext(), ((TiBlob) source).getInputStream());
+		} else if (source instanceof TiFileProxy) {
+			return new PullParserProxy(getTiContext(), ((TiFileProxy) source).getInputStream());
+		} else if (source != null) {
+			return new PullParserProxy(getTiContext(), new StringReader(source.toString()));
+		}
+		throw new IllegalArgumentException("createPullParser expects a string, blob or file");
+	}
+
 	@Kroll.method
 	public String serializeToString(NodeProxy node)
 	{
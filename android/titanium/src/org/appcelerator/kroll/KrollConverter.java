@@ -8,6 +8,7 @@ package org.appcelerator.kroll;
 
 import java.lang.reflect.Array;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -22,7 +23,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.NativeJavaObject;
+import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
@@ -44,6 +47,26 @@ public class KrollConverter implements KrollNativeConverter,
 	public static final String JS_PROPERTY_MESSAGE = "message";
 	public static final String JS_UNDEFINED = "undefined";
 	
+	// the exact classes most arguments come in as, dispatched with one lookup
+	// instead of walking the instanceof chain
+	private static final int JS_TYPE_STRING = 1;
+	private static final int JS_TYPE_DOUBLE = 2;
+	private static final int JS_TYPE_INTEGER = 3;
+	private static final int JS_TYPE_BOOLEAN = 4;
+	private static final int JS_TYPE_NATIVE_ARRAY = 5;
+	private static final int JS_TYPE_NATIVE_OBJECT = 6;
+	private static final int JS_TYPE_KROLL_OBJECT = 7;
+	private static final HashMap<Class<?>, Integer> javascriptTypes = new HashMap<Class<?>, Integer>();
+	static {
+		javascriptTypes.put(String.class, JS_TYPE_STRING);
+		javascriptTypes.put(Double.class, JS_TYPE_DOUBLE);
+		javascriptTypes.put(Integer.class, JS_TYPE_INTEGER);
+		javascriptTypes.put(Boolean.class, JS_TYPE_BOOLEAN);
+		javascriptTypes.put(NativeArray.class, JS_TYPE_NATIVE_ARRAY);
+		javascriptTypes.put(NativeObject.class, JS_TYPE_NATIVE_OBJECT);
+		javascriptTypes.put(KrollObject.class, JS_TYPE_KROLL_OBJECT);
+	}
+
 	protected static KrollConverter _instance = new KrollConverter();
 	
 	public static KrollConverter getInstance() {
@@ -217,10 +240,31 @@ public class KrollConverter implements KrollNativeConverter,
 			return Context.getCurrentContext().newObject(tiContext.getKrollBridge().getScope(), JS_CLASS_DATE, new Object[] { date.getTime() });
 		}
 		else if (value.getClass().isArray()) {
-			int length = Array.getLength(value);
-			Object[] jsArray = new Object[length];
-			for (int i = 0; i < length; i++) {
-				jsArray[i] = convertNative(invocation, Array.get(value, i));
+			Object[] jsArray;
+			if (value instanceof Object[]) {
+				Object[] array = (Object[]) value;
+				jsArray = new Object[array.length];
+				for (int i = 0; i < array.length; i++) {
+					jsArray[i] = convertNative(invocation, array[i]);
+				}
+			} else if (value instanceof int[]) {
+				int[] array = (int[]) value;
+				jsArray = new Object[array.length];
+				for (int i = 0; i < array.length; i++) {
+					jsArray[i] = Integer.valueOf(array[i]);
+				}
+			} else if (value instanceof double[]) {
+				double[] array = (double[]) value;
+				jsArray = new Object[array.length];
+				for (int i = 0; i < array.length; i++) {
+					jsArray[i] = Double.valueOf(array[i]);
+				}
+			} else {
+				int length = Array.getLength(value);
+				jsArray = new Object[length];
+				for (int i = 0; i < length; i++) {
+					jsArray[i] = convertNative(invocation, Array.get(value, i));
+				}
 			}
 			return Context.getCurrentContext().newArray(invocation.getScope(), jsArray);
 		}
@@ -237,16 +281,46 @@ public class KrollConverter implements KrollNativeConverter,
 	}
 	
 	public boolean isArrayLike(Scriptable scriptable) {
+		if (scriptable instanceof NativeArray) {
+			return true;
+		}
 		// some objects have length() methods, so just check the value?
-		return scriptable.has(JS_PROPERTY_LENGTH, scriptable) &&
-			scriptable.get(JS_PROPERTY_LENGTH, scriptable) instanceof Number &&
-			!(scriptable instanceof KrollObject) &&
+		return !(scriptable instanceof KrollObject) &&
 			!(scriptable instanceof Function) &&
-			scriptable.getClassName().equals("Array");
+			scriptable.getClassName().equals("Array") &&
+			scriptable.has(JS_PROPERTY_LENGTH, scriptable) &&
+			scriptable.get(JS_PROPERTY_LENGTH, scriptable) instanceof Number;
+	}
+
+	// the unconverted elements of a JS array, read through its dense storage when it has one
+	protected Object[] getElements(NativeArray array)
+	{
+		int length = (int) array.getLength();
+		Object[] elements = new Object[length];
+		for (int i = 0; i < length; i++) {
+			elements[i] = array.get(i, array);
+		}
+		return elements;
+	}
+
+	protected Object convertNativeArray(KrollInvocation invocation, NativeArray array, Class<?> target)
+	{
+		Object[] elements = getElements(array);
+		if (target.isArray()) {
+			// converts straight to the component type, e.g. int[] or String[]
+			return convertArray(invocation, elements, target);
+		}
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = convertJavascript(invocation, elements[i], Object.class);
+		}
+		return elements;
 	}
 
 	public Object[] toArray(KrollInvocation invocation, Scriptable scriptable)
 	{
+		if (scriptable instanceof NativeArray) {
+			return (Object[]) convertNativeArray(invocation, (NativeArray) scriptable, Object.class);
+		}
 		int len = (Integer) Context.jsToJava(scriptable.get(JS_PROPERTY_LENGTH, scriptable), Integer.class);
 		Object[] a = new Object[len];
 		for(int i = 0; i < len; i++) {
@@ -292,26 +366,41 @@ public class KrollConverter implements KrollNativeConverter,
 	public Object convertArray(KrollInvocation invocation, Object[] array, Class<?> target) {
 		if (target.isArray()) {
 			// Handle casting native / box type arrays
-			Object converted = null;
 			Class<?> componentType = target.getComponentType();
-			if (!componentType.equals(Object.class)) {
-				if (componentType.equals(int.class)) {
-					converted = new int[array.length];
-				} else if (componentType.equals(Integer.class)) {
-					converted = new Integer[array.length];
-				} else if (componentType.equals(double.class)) {
-					converted = new double[array.length];
-				} else if (componentType.equals(Double.class)) {
-					converted = new Double[array.length];
-				} else if (componentType.equals(String.class)) {
-					converted = new String[array.length];
+			if (componentType == int.class) {
+				int[] converted = new int[array.length];
+				for (int i = 0; i < array.length; i++) {
+					Object value = array[i];
+					converted[i] = value instanceof Number ? ((Number) value).intValue()
+						: (Integer) convertJavascript(invocation, value, int.class);
 				}
-				if (converted != null) {
-					for (int i = 0; i < array.length; i++) {
-						Array.set(converted, i, convertJavascript(invocation, array[i], componentType));
-					}
-					return converted;
+				return converted;
+			} else if (componentType == double.class) {
+				double[] converted = new double[array.length];
+				for (int i = 0; i < array.length; i++) {
+					Object value = array[i];
+					converted[i] = value instanceof Number ? ((Number) value).doubleValue()
+						: (Double) convertJavascript(invocation, value, double.class);
+				}
+				return converted;
+			} else if (componentType == Integer.class) {
+				Integer[] converted = new Integer[array.length];
+				for (int i = 0; i < array.length; i++) {
+					converted[i] = (Integer) convertJavascript(invocation, array[i], Integer.class);
+				}
+				return converted;
+			} else if (componentType == Double.class) {
+				Double[] converted = new Double[array.length];
+				for (int i = 0; i < array.length; i++) {
+					converted[i] = (Double) convertJavascript(invocation, array[i], Double.class);
 				}
+				return converted;
+			} else if (componentType == String.class) {
+				String[] converted = new String[array.length];
+				for (int i = 0; i < array.length; i++) {
+					converted[i] = (String) convertJavascript(invocation, array[i], String.class);
+				}
+				return converted;
 			}
 		}
 		
@@ -323,12 +412,47 @@ public class KrollConverter implements KrollNativeConverter,
 	}
 
 	public Object convertJavascript(KrollInvocation invocation, Object value, Class<?> target) {
+		if (value == null) {
+			return null;
+		}
+
+		Integer type = javascriptTypes.get(value.getClass());
+		if (type != null) {
+			switch (type) {
+				case JS_TYPE_STRING:
+					if (target == Object.class || target == String.class) {
+						return value;
+					}
+					break;
+				case JS_TYPE_DOUBLE:
+					if (target == Object.class || target == Double.class || target == double.class) {
+						return value;
+					}
+					break;
+				case JS_TYPE_INTEGER:
+					if (target == Integer.class || target == int.class) {
+						return value;
+					}
+					break;
+				case JS_TYPE_BOOLEAN:
+					if (target == Object.class || target == Boolean.class || target == boolean.class) {
+						return value;
+					}
+					break;
+				case JS_TYPE_NATIVE_ARRAY:
+					return convertNativeArray(invocation, (NativeArray) value, target);
+				case JS_TYPE_NATIVE_OBJECT:
+					// plain object literals, never an array, date, error or function
+					return new KrollScriptableDict((Scriptable) value);
+				case JS_TYPE_KROLL_OBJECT:
+					return ((KrollObject) value).getProxy().getNativeValue();
+			}
+		}
+
 		if (value instanceof Scriptable) {
 			return convertScriptable(invocation, (Scriptable)value);
 		} else if (value instanceof String || value instanceof Number || value instanceof Boolean) {
 			return Context.jsToJava(value, target);
-		} else if (value == null) {
-			return null;
 		} else if (value instanceof Undefined) {
 			return KrollProxy.UNDEFINED;
 		} else {
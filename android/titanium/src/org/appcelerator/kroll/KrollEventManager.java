@@ -9,12 +9,13 @@ package org.appcelerator.kroll;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
@@ -35,8 +36,14 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 
 	protected KrollProxy proxy;
 	protected ArrayList<WeakReference<OnEventListenerChange>> eventChangeListeners;
-	protected Map<String, HashMap<Integer, KrollListener>> eventListeners;
+	// copy-on-write listener arrays per event name, replaced (never mutated) while holding listenerLock
+	protected Map<String, KrollListener[]> eventListeners;
+	// reverse index from listener object to id per event name, guarded by listenerLock
+	protected HashMap<String, HashMap<Object, Integer>> listenerIds;
+	protected final Object listenerLock = new Object();
 	protected AtomicInteger listenerIdGenerator;
+	// high frequency events of this proxy where only the latest value matters, guarded by listenerLock
+	protected Set<String> coalescedEvents;
 	
 	public KrollEventManager(KrollProxy proxy) {
 		this.proxy = proxy;
@@ -50,7 +57,8 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 		
 		this.eventChangeListeners = new ArrayList<WeakReference<OnEventListenerChange>>();
 		this.listenerIdGenerator = new AtomicInteger(0);
-		this.eventListeners = Collections.synchronizedMap(new HashMap<String, HashMap<Integer, KrollListener>>());
+		this.eventListeners = new ConcurrentHashMap<String, KrollListener[]>();
+		this.listenerIds = new HashMap<String, HashMap<Object, Integer>>();
 	}
 	
 	public void addOnEventChangeListener(OnEventListenerChange listener) {
@@ -88,7 +96,49 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 		}
 	}
 
+	/**
+	 * Marks an event of this proxy as coalesced: while a delivery to a listener is still
+	 * queued on the Kroll thread, newer events replace its data instead of queuing another call.
+	 * Event sources opt in for high frequency events where only the latest value matters.
+	 */
+	public void setCoalesced(String eventName, boolean coalesced)
+	{
+		synchronized (listenerLock) {
+			if (coalesced) {
+				if (coalescedEvents == null) {
+					coalescedEvents = new HashSet<String>();
+				}
+				coalescedEvents.add(eventName);
+			} else if (coalescedEvents != null) {
+				coalescedEvents.remove(eventName);
+			}
+
+			KrollListener[] listeners = eventListeners.get(eventName);
+			if (listeners != null) {
+				for (KrollListener listener : listeners) {
+					listener.coalesce = coalesced;
+				}
+			}
+		}
+	}
+
+	public boolean isCoalesced(String eventName)
+	{
+		synchronized (listenerLock) {
+			return coalescedEvents != null && coalescedEvents.contains(eventName);
+		}
+	}
+
 	public int addEventListener(String eventName, Object listener)
+	{
+		return addEventListener(eventName, listener, 0);
+	}
+
+	/**
+	 * Adds a listener that receives at most one event every <code>throttle</code> milliseconds,
+	 * always with the latest data. A throttle of 0 delivers every event, unless the event is coalesced.
+	 */
+	public int addEventListener(String eventName, Object listener, long throttle)
 	{
 		int listenerId = -1;
 		int listenerCount = 0;
@@ -96,20 +146,38 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 		if (eventName != null) {
 			if (proxy != null) {
 				if (listener != null) {
-					synchronized (eventListeners) {
-						HashMap<Integer, KrollListener> listeners = eventListeners.get(eventName);
+					synchronized (listenerLock) {
+						listenerId = listenerIdGenerator.incrementAndGet();
+						KrollListener krollListener = new KrollListener(proxy, listener);
+						krollListener.id = listenerId;
+						krollListener.throttle = throttle;
+						krollListener.coalesce = isCoalesced(eventName);
+
+						KrollListener[] listeners = eventListeners.get(eventName);
+						KrollListener[] newListeners;
 						if (listeners == null) {
-							listeners = new HashMap<Integer, KrollListener>();
-							eventListeners.put(eventName, listeners);
+							newListeners = new KrollListener[] { krollListener };
+						} else {
+							newListeners = new KrollListener[listeners.length + 1];
+							System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+							newListeners[listeners.length] = krollListener;
 						}
+						eventListeners.put(eventName, newListeners);
 
-						listenerId = listenerIdGenerator.incrementAndGet();
-						listeners.put(listenerId, new KrollListener(proxy, listener));
+						HashMap<Object, Integer> ids = listenerIds.get(eventName);
+						if (ids == null) {
+							ids = new HashMap<Object, Integer>();
+							listenerIds.put(eventName, ids);
+						}
+						// the first registration of a listener object is the one removed by reference
+						if (!ids.containsKey(listener)) {
+							ids.put(listener, listenerId);
+						}
 						if (DBG) {
 							Log.d(TAG, "Added for eventName '" + eventName + "' with id " + listenerId);
 						}
 
-						listenerCount = listeners.size();
+						listenerCount = newListeners.length;
 					}
 					dispatchOnEventChange(true, eventName, listenerCount, proxy);
 				} else {
@@ -129,6 +197,12 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 	{
 		protected SoftReference<KrollProxy> weakProxy;
 		protected Object listener;
+		protected int id;
+		protected volatile long throttle;
+		protected volatile boolean coalesce;
+		// data of the delivery queued on the Kroll thread, replaced by newer events until it runs
+		protected AtomicReference<KrollDict> pendingData = new AtomicReference<KrollDict>();
+		protected volatile long lastDelivery;
 		protected static final String TAG = "KrollListener";
 
 		public KrollListener(KrollProxy proxy, Object listener) {
@@ -140,7 +214,11 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 			boolean invoked = false;
 			KrollProxy p = weakProxy.get();
 			if (p != null && listener != null) {
-				p.fireSingleEvent(eventName, listener, data, asyncCallback);
+				if (asyncCallback && (coalesce || throttle > 0) && listener instanceof KrollCallback) {
+					invokeCoalesced(p, eventName, data);
+				} else {
+					p.fireSingleEvent(eventName, listener, data, asyncCallback);
+				}
 				invoked = true;
 			} else {
 				if (DBG) {
@@ -155,25 +233,80 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 			KrollProxy localProxy = weakProxy.get();
 			return (p != null && localProxy != null && localProxy.equals(p));
 		}
+
+		protected void invokeCoalesced(final KrollProxy p, final String eventName, KrollDict data) {
+			if (pendingData.getAndSet(data) != null) {
+				// a delivery is already queued and will pick up this data instead
+				return;
+			}
+
+			long delay = 0;
+			if (throttle > 0) {
+				delay = Math.max(0, lastDelivery + throttle - System.currentTimeMillis());
+			}
+			((KrollCallback) listener).post(new Runnable() {
+				public void run() {
+					KrollDict latest = pendingData.getAndSet(null);
+					lastDelivery = System.currentTimeMillis();
+					if (latest != null) {
+						// we're already on the Kroll thread
+						p.fireSingleEvent(eventName, listener, latest, false);
+					}
+				}
+			}, delay);
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public long getThrottle() {
+			return throttle;
+		}
 	}
 
-	public void removeEventListener(String eventName, int listenerId)
+	public void setThrottle(String eventName, int listenerId, long throttle)
 	{
 		if (eventName != null) {
-			HashMap<Integer, KrollListener> listeners = eventListeners.get(eventName);
+			KrollListener[] listeners = eventListeners.get(eventName);
 			if (listeners != null) {
-				KrollListener listener = listeners.get(listenerId);
-				if (listeners.remove(listenerId) == null) {
-					if (DBG) {
-						Log.w(TAG, "listenerId " + listenerId + " not for eventName '" + eventName + "'");
-					}
-				} else {
-					dispatchOnEventChange(false, eventName, listeners.size(), listener.weakProxy.get());
-					if (DBG) {
-						Log.i(TAG, "listener with id " + listenerId + " with eventName '" + eventName + "' was removed.");
+				for (KrollListener listener : listeners) {
+					if (listener.id == listenerId) {
+						listener.throttle = throttle;
+						return;
 					}
 				}
 			}
+			if (DBG) {
+				Log.w(TAG, "listenerId " + listenerId + " not for eventName '" + eventName + "'");
+			}
+		} else {
+			throw new IllegalStateException("setThrottle expects a non-null eventName");
+		}
+	}
+
+	public void removeEventListener(String eventName, int listenerId)
+	{
+		if (eventName != null) {
+			KrollListener removed = null;
+			int newCount = 0;
+			synchronized (listenerLock) {
+				removed = removeListener(eventName, listenerId);
+				if (removed != null) {
+					KrollListener[] listeners = eventListeners.get(eventName);
+					newCount = listeners == null ? 0 : listeners.length;
+				}
+			}
+			if (removed == null) {
+				if (DBG) {
+					Log.w(TAG, "listenerId " + listenerId + " not for eventName '" + eventName + "'");
+				}
+			} else {
+				dispatchOnEventChange(false, eventName, newCount, removed.weakProxy.get());
+				if (DBG) {
+					Log.i(TAG, "listener with id " + listenerId + " with eventName '" + eventName + "' was removed.");
+				}
+			}
 		} else {
 			throw new IllegalStateException("removeEventListener expects a non-null eventName");
 		}
@@ -186,37 +319,74 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 			return;
 		}
 
-		boolean removed = false;
-		int newCount = 0;
-		SoftReference<KrollProxy> proxyOfListener = null;
-		
 		if (eventName != null) {
-			synchronized(eventListeners) {
-				HashMap<Integer, KrollListener> listeners = eventListeners.get(eventName);
-				if (listeners != null) {
-					for (Entry<Integer, KrollListener> entry : listeners.entrySet())
-					{
-						Object l = entry.getValue().listener;
-						if (l.equals(listener))
-						{
-							listeners.remove(entry.getKey());
-							removed = true;
-							newCount = listeners.size();
-							proxyOfListener = entry.getValue().weakProxy;
+			Integer listenerId = null;
+			synchronized (listenerLock) {
+				HashMap<Object, Integer> ids = listenerIds.get(eventName);
+				if (ids != null) {
+					listenerId = ids.get(listener);
+				}
+			}
+			if (listenerId != null) {
+				removeEventListener(eventName, listenerId);
+			} else if (eventListeners.containsKey(eventName)) {
+				Log.w(TAG, "listener not found for eventName '" + eventName + "'");
+			}
+		} else {
+			throw new IllegalStateException("removeEventListener expects a non-null eventName");
+		}
+	}
+
+	// must be called while holding listenerLock
+	protected KrollListener removeListener(String eventName, int listenerId)
+	{
+		KrollListener[] listeners = eventListeners.get(eventName);
+		if (listeners == null) {
+			return null;
+		}
+
+		int index = -1;
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i].id == listenerId) {
+				index = i;
+				break;
+			}
+		}
+		if (index < 0) {
+			return null;
+		}
+
+		KrollListener removed = listeners[index];
+		if (listeners.length == 1) {
+			eventListeners.remove(eventName);
+		} else {
+			KrollListener[] newListeners = new KrollListener[listeners.length - 1];
+			System.arraycopy(listeners, 0, newListeners, 0, index);
+			System.arraycopy(listeners, index + 1, newListeners, index, listeners.length - index - 1);
+			eventListeners.put(eventName, newListeners);
+		}
+
+		HashMap<Object, Integer> ids = listenerIds.get(eventName);
+		if (ids != null) {
+			Integer indexedId = ids.get(removed.listener);
+			if (indexedId != null && indexedId == listenerId) {
+				ids.remove(removed.listener);
+				// keep later registrations of the same listener object removable by reference
+				KrollListener[] remaining = eventListeners.get(eventName);
+				if (remaining != null) {
+					for (KrollListener l : remaining) {
+						if (l.listener.equals(removed.listener)) {
+							ids.put(l.listener, l.id);
 							break;
 						}
 					}
-					if (!removed) {
-						Log.w(TAG, "listener not found for eventName '" + eventName + "'");
-					}
 				}
 			}
-			if (removed) {
-				dispatchOnEventChange(false, eventName, newCount, proxyOfListener.get());
+			if (ids.isEmpty()) {
+				listenerIds.remove(eventName);
 			}
-		} else {
-			throw new IllegalStateException("removeEventListener expects a non-null eventName");
 		}
+		return removed;
 	}
 
 	public boolean hasAnyEventListener(String eventName)
@@ -224,9 +394,9 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 		boolean result = false;
 
 		if (eventName != null) {
-			HashMap<Integer, KrollListener> listeners = eventListeners.get(eventName);
+			KrollListener[] listeners = eventListeners.get(eventName);
 			if (listeners != null) {
-				result = !listeners.isEmpty();
+				result = listeners.length > 0;
 			}
 		} else {
 			throw new IllegalStateException("removeEventListener expects a non-null eventName");
@@ -244,7 +414,8 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 	{
 		boolean dispatched = false;
 		if (eventName != null) {
-			Map<Integer, KrollListener> listeners = eventListeners.get(eventName);
+			// listener arrays are never mutated once published, so no lock is needed to iterate
+			KrollListener[] listeners = eventListeners.get(eventName);
 			if (listeners == null) {
 				if(TRACE) {
 					Log.w(TAG, "No listeners for eventName: " + eventName);
@@ -259,24 +430,21 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 				data.put(TiC.EVENT_PROPERTY_TYPE, eventName);
 			}
 
-			Set<Entry<Integer, KrollListener>> listenerSet = listeners.entrySet();
-			synchronized (eventListeners) {
-				for(Entry<Integer, KrollListener> entry : listenerSet) {
-					KrollListener listener = entry.getValue();
-					if (proxy == null || (proxy != null && listener.isSameProxy(proxy))) {
-						boolean invoked = false;
-						try {
-							if (listener.weakProxy.get() != null) {
-								if (!data.containsKey(TiC.EVENT_PROPERTY_SOURCE)) {
-									data.put(TiC.EVENT_PROPERTY_SOURCE, listener.weakProxy.get());
-								}
-								invoked = listener.invoke(eventName, data, asyncCallback);
+			for (KrollListener listener : listeners) {
+				if (proxy == null || (proxy != null && listener.isSameProxy(proxy))) {
+					boolean invoked = false;
+					try {
+						KrollProxy source = listener.weakProxy.get();
+						if (source != null) {
+							if (!data.containsKey(TiC.EVENT_PROPERTY_SOURCE)) {
+								data.put(TiC.EVENT_PROPERTY_SOURCE, source);
 							}
-						} catch (Exception e) {
-							Log.e(TAG, "Error invoking listener with id " + entry.getKey() + " on eventName '" + eventName + "'", e);
+							invoked = listener.invoke(eventName, data, asyncCallback);
 						}
-						dispatched = dispatched || invoked;
+					} catch (Exception e) {
+						Log.e(TAG, "Error invoking listener with id " + listener.id + " on eventName '" + eventName + "'", e);
 					}
+					dispatched = dispatched || invoked;
 				}
 			}
 		} else {
@@ -298,8 +466,13 @@ public class KrollEventManager implements OnLifecycleEvent, OnServiceLifecycleEv
 		if (eventChangeListeners != null) {
 			eventChangeListeners.clear();
 		}
-		if (eventListeners != null) {
-			eventListeners.clear();
+		synchronized (listenerLock) {
+			if (eventListeners != null) {
+				eventListeners.clear();
+			}
+			if (listenerIds != null) {
+				listenerIds.clear();
+			}
 		}
 	}
 
@@ -0,0 +1,268 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A KrollDict layered over a snapshot of a {@link KrollScriptableDict}, used by proxies to
+ * adopt their creation dict without converting it. The snapshot holds the JS object's
+ * properties as they were at creation, unconverted, so later changes to the object don't
+ * show up here, just like a copy. Reads convert (and cache) a snapshot value on first access,
+ * while writes and removals only touch this map.
+ *
+ * Operations that need every key (iteration, size, equality...) convert the remaining values
+ * once and drop the snapshot, after which this behaves like a plain KrollDict.
+ */
+@SuppressWarnings("serial")
+public class KrollLazyDict extends KrollDict
+{
+	// marks a converted null, ConcurrentHashMap can't hold nulls
+	private static final Object NULL_VALUE = new Object();
+
+	// converts the snapshot's values
+	private KrollScriptableDict source;
+	// never modified, so copies share it
+	private Map<String, Object> snapshot;
+	// snapshot values converted so far, kept apart from this map so reads never write to it
+	private final ConcurrentHashMap<String, Object> converted = new ConcurrentHashMap<String, Object>();
+	// snapshot keys removed from this map
+	private HashSet<String> removed;
+
+	/**
+	 * Takes the snapshot, so it must be called on the thread that owns the JS object.
+	 *
+	 * @param defaults values already set on the proxy, kept for keys the JS object doesn't have
+	 * @param source the creation dict
+	 */
+	public KrollLazyDict(Map<String, Object> defaults, KrollScriptableDict source)
+	{
+		this(defaults, source, source.snapshotValues());
+	}
+
+	protected KrollLazyDict(Map<String, Object> defaults, KrollScriptableDict source, Map<String, Object> snapshot)
+	{
+		this.source = source;
+		this.snapshot = snapshot;
+		if (defaults != null) {
+			for (Map.Entry<String, Object> entry : defaults.entrySet()) {
+				if (snapshot == null || !snapshot.containsKey(entry.getKey())) {
+					super.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a dict with only the values of the creation dict, without the defaults or any
+	 * later writes. It shares the snapshot, so nothing is converted twice up front.
+	 */
+	public synchronized KrollLazyDict copyCreationValues()
+	{
+		return new KrollLazyDict(null, source, snapshot);
+	}
+
+	public synchronized boolean isMaterialized()
+	{
+		return snapshot == null;
+	}
+
+	protected synchronized void materialize()
+	{
+		if (snapshot == null) {
+			return;
+		}
+		for (String key : snapshot.keySet()) {
+			if (!super.containsKey(key) && (removed == null || !removed.contains(key))) {
+				super.put(key, getSnapshotValue(key));
+			}
+		}
+		snapshot = null;
+		source = null;
+		removed = null;
+		converted.clear();
+	}
+
+	private synchronized boolean inSnapshot(Object key)
+	{
+		return snapshot != null && snapshot.containsKey(key) && (removed == null || !removed.contains(key));
+	}
+
+	private Object getSnapshotValue(Object key)
+	{
+		String name = key.toString();
+		Object value = converted.get(name);
+		if (value != null) {
+			return value == NULL_VALUE ? null : value;
+		}
+		KrollScriptableDict source;
+		Object raw;
+		synchronized (this) {
+			if (snapshot == null) {
+				return super.get(key);
+			}
+			source = this.source;
+			raw = snapshot.get(name);
+		}
+		value = source.convertValue(name, raw);
+		converted.put(name, value == null ? NULL_VALUE : value);
+		return value;
+	}
+
+	@Override
+	public Object get(Object key)
+	{
+		if (super.containsKey(key)) {
+			return super.get(key);
+		}
+		return inSnapshot(key) ? getSnapshotValue(key) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return super.containsKey(key) || inSnapshot(key);
+	}
+
+	@Override
+	public Object put(String key, Object value)
+	{
+		Object oldValue = get(key);
+		synchronized (this) {
+			if (removed != null) {
+				removed.remove(key);
+			}
+		}
+		super.put(key, value);
+		return oldValue;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends Object> map)
+	{
+		for (Map.Entry<? extends String, ? extends Object> entry : map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public Object remove(Object key)
+	{
+		Object oldValue = get(key);
+		synchronized (this) {
+			if (snapshot != null && key != null) {
+				if (removed == null) {
+					removed = new HashSet<String>();
+				}
+				removed.add(key.toString());
+			}
+		}
+		super.remove(key);
+		return oldValue;
+	}
+
+	@Override
+	public void clear()
+	{
+		synchronized (this) {
+			snapshot = null;
+			source = null;
+			removed = null;
+			converted.clear();
+		}
+		super.clear();
+	}
+
+	@Override
+	public int size()
+	{
+		materialize();
+		return super.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		materialize();
+		return super.isEmpty();
+	}
+
+	@Override
+	public boolean containsValue(Object value)
+	{
+		materialize();
+		return super.containsValue(value);
+	}
+
+	@Override
+	public Set<String> keySet()
+	{
+		materialize();
+		return super.keySet();
+	}
+
+	@Override
+	public Collection<Object> values()
+	{
+		materialize();
+		return super.values();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet()
+	{
+		materialize();
+		return super.entrySet();
+	}
+
+	@Override
+	public boolean equals(Object object)
+	{
+		materialize();
+		return super.equals(object);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		materialize();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		materialize();
+		return super.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public synchronized Object clone()
+	{
+		// HashMap.clone() iterates entrySet(), which would materialize us, so copy by hand.
+		// The clone shares the snapshot, so it stays lazy as well
+		KrollLazyDict clone = new KrollLazyDict(null, source, snapshot);
+		for (Map.Entry<String, Object> entry : super.entrySet()) {
+			clone.putLocal(entry.getKey(), entry.getValue());
+		}
+		if (removed != null) {
+			clone.removed = (HashSet<String>) removed.clone();
+		}
+		clone.converted.putAll(converted);
+		return clone;
+	}
+
+	private void putLocal(String key, Object value)
+	{
+		super.put(key, value);
+	}
+}
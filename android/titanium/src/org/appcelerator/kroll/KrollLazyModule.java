@@ -0,0 +1,107 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll;
+
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiContext;
+import org.appcelerator.titanium.kroll.KrollBridge;
+
+/**
+ * A placeholder bound to a module's parent in place of the module itself. The module is
+ * only instantiated, and then bound to the parent for real, the first time it is looked
+ * up through {@link KrollProxy#getBinding(String)} (i.e. on first property access from JS)
+ * or through {@link TiApplication#getModuleById(String)} and friends.
+ *
+ * Modules that bind anything to the top level of a context can't be deferred, since
+ * those bindings have to exist before any script runs, see {@link #canDefer(KrollModuleBinding)}.
+ */
+public class KrollLazyModule
+{
+	private KrollModuleBinding binding;
+	private TiContext context;
+	private KrollProxy parent;
+	private volatile KrollModule module;
+
+	public KrollLazyModule(KrollModuleBinding binding, TiContext context)
+	{
+		this.binding = binding;
+		this.context = context;
+	}
+
+	/**
+	 * @return whether the module can be booted on first use. It can't when its generated
+	 * binding has context specific bindings, or when the module class overrides
+	 * {@link KrollProxy#bindContextSpecific(KrollBridge)} (e.g. to evaluate a script in
+	 * each context), since that has to run in every context as it's created.
+	 */
+	public static boolean canDefer(KrollModuleBinding binding)
+	{
+		if (binding.hasContextSpecificBindings()) {
+			return false;
+		}
+		for (Class<?> c = binding.getProxyClass(); c != null && c != KrollModule.class && c != KrollProxy.class;
+			c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("bindContextSpecific", KrollBridge.class);
+				return false;
+			} catch (NoSuchMethodException e) {
+				// not overridden here, keep looking up the hierarchy
+			}
+		}
+		return true;
+	}
+
+	public String getId()
+	{
+		return binding.getId();
+	}
+
+	public String getShortAPIName()
+	{
+		return binding.getShortAPIName();
+	}
+
+	public Class<? extends KrollProxy> getModuleClass()
+	{
+		return binding.getProxyClass();
+	}
+
+	public boolean isBooted()
+	{
+		return module != null;
+	}
+
+	public void bindToParent(KrollProxy parent)
+	{
+		this.parent = parent;
+		parent.getBinding().bindings.put(getShortAPIName(), this);
+	}
+
+	/**
+	 * @return the module, instantiating and binding it on the first call.
+	 */
+	public KrollModule getModule()
+	{
+		if (module != null) {
+			return module;
+		}
+		synchronized (this) {
+			if (module == null) {
+				long start = System.currentTimeMillis();
+				KrollModule newModule = binding.newInstance(context);
+				if (parent != null) {
+					newModule.bindToParent(parent);
+				}
+				module = newModule;
+				// the module now holds on to the context itself
+				context = null;
+				TiApplication.getInstance().onLazyModuleBooted(this, System.currentTimeMillis() - start);
+			}
+		}
+		return module;
+	}
+}
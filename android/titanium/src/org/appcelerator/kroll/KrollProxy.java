@@ -22,6 +22,7 @@ import org.appcelerator.titanium.kroll.KrollCoverage;
 import org.appcelerator.titanium.util.AsyncResult;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.util.TiConvert;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
 
@@ -130,7 +131,11 @@ public class KrollProxy
 
 	public Object getBinding(String name)
 	{
-		return getBinding().getBinding(name);
+		Object value = getBinding().getBinding(name);
+		if (value instanceof KrollLazyModule) {
+			return ((KrollLazyModule) value).getModule();
+		}
+		return value;
 	}
 
 	public void bindContextSpecific(KrollBridge bridge)
@@ -465,10 +470,19 @@ public class KrollProxy
 	public void handleCreationDict(KrollDict dict)
 	{
 		if (dict != null) {
-			for (String key : dict.keySet()) {
-				setProperty(key, dict.get(key), true);
+			if (dict instanceof KrollScriptableDict && modelListener == null) {
+				// nobody listens for changes yet, so adopt a snapshot of the JS object instead
+				// of converting every key up front
+				KrollLazyDict lazyProperties = new KrollLazyDict(properties, (KrollScriptableDict) dict);
+				properties = lazyProperties;
+				creationDict = lazyProperties.copyCreationValues();
+			} else {
+				for (String key : dict.keySet()) {
+					setProperty(key, dict.get(key), true);
+				}
+				// a copy, so later changes to the JS object don't show up in it
+				creationDict = new KrollDict(dict);
 			}
-			creationDict = (KrollDict)dict.clone();
 			if (modelListener != null) {
 				modelListener.processProperties(creationDict);
 			}
@@ -598,7 +612,17 @@ public class KrollProxy
 
 	// Events
 
-	@Kroll.method
+	@Kroll.method(name="addEventListener")
+	public int addEventListenerWithOptions(KrollInvocation invocation, String eventName, Object listener,
+		@Kroll.argument(optional=true) KrollDict options)
+	{
+		int listenerId = addEventListener(invocation, eventName, listener);
+		if (options != null && options.containsKey(TiC.PROPERTY_THROTTLE)) {
+			eventManager.setThrottle(eventName, listenerId, TiConvert.toInt(options, TiC.PROPERTY_THROTTLE));
+		}
+		return listenerId;
+	}
+
 	public int addEventListener(KrollInvocation invocation, String eventName, Object listener)
 	{
 		int listenerId = -1;
@@ -26,6 +26,14 @@ public abstract class KrollProxyBinding {
 	
 	public abstract void bindContextSpecific(KrollBridge bridge, KrollProxy proxy);
 	
+	/**
+	 * @return whether {@link #bindContextSpecific(KrollBridge, KrollProxy)} binds anything
+	 * to the top level of a context. Generated bindings override this.
+	 */
+	public boolean hasContextSpecificBindings() {
+		return true;
+	}
+	
 	public abstract String getAPIName();
 	public abstract String getShortAPIName();
 }
@@ -1,38 +1,57 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2010 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2010-2011 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
 package org.appcelerator.kroll;
 
-import java.util.ArrayList;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.appcelerator.titanium.TiContext;
 import org.mozilla.javascript.Scriptable;
 
-// An implementation of KrollDict backed by a Rhino Scriptable
+// An implementation of KrollDict backed by a Rhino Scriptable.
+// Nothing is copied up front: values are converted on first access and cached,
+// and the key, entry and value collections are views over the object's ids.
 @SuppressWarnings("serial")
 public class KrollScriptableDict extends KrollDict implements KrollConvertable {
+	// marks a cached null, ConcurrentHashMap can't hold nulls
+	private static final Object NULL_VALUE = new Object();
+
 	protected Scriptable scriptable;
-	
+	// the context that created us, so values read from other threads (e.g. in processProperties)
+	// still convert callbacks against the right context
+	protected TiContext tiContext;
+	private ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+	private volatile String[] keys;
+
 	public KrollScriptableDict(Scriptable scriptable) {
 		this.scriptable = scriptable;
+		this.tiContext = TiContext.getCurrentTiContext();
 	}
 
 	public Scriptable getScriptable() {
 		return scriptable;
 	}
-	
+
 	@Override
 	public boolean containsKey(Object key) {
 		if (key == null) return false;
 		if (key instanceof Integer) {
 			return scriptable.has((Integer)key, scriptable);
 		}
+		if (values.containsKey(key.toString())) {
+			return true;
+		}
 		if (!scriptable.has(key.toString(), scriptable)) {
 			try {
 				Integer i = Integer.valueOf(key.toString());
@@ -42,10 +61,10 @@ public class KrollScriptableDict extends KrollDict implements KrollConvertable {
 		}
 		return true;
 	}
-	
+
 	@Override
 	public boolean containsValue(Object value) {
-		for (Object key : scriptable.getIds()) {
+		for (String key : getKeys()) {
 			Object v = get(key);
 			if (v != null && v.equals(value)) {
 				return true;
@@ -55,7 +74,7 @@ public class KrollScriptableDict extends KrollDict implements KrollConvertable {
 		}
 		return false;
 	}
-	
+
 	@Override
 	public void clear() {
 		for (Object key : scriptable.getIds()) {
@@ -65,120 +84,255 @@ public class KrollScriptableDict extends KrollDict implements KrollConvertable {
 				scriptable.delete(key.toString());
 			}
 		}
+		values.clear();
+		keys = null;
+	}
+
+	protected String[] getKeys() {
+		String[] keys = this.keys;
+		if (keys == null) {
+			Object[] ids = scriptable.getIds();
+			keys = new String[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				keys[i] = ids[i].toString();
+			}
+			this.keys = keys;
+		}
+		return keys;
+	}
+
+	protected class KeyIterator implements Iterator<String> {
+		protected String[] keys = getKeys();
+		protected int index = 0;
+
+		@Override
+		public boolean hasNext() {
+			return index < keys.length;
+		}
+
+		@Override
+		public String next() {
+			if (index >= keys.length) {
+				throw new NoSuchElementException();
+			}
+			return keys[index++];
+		}
+
+		@Override
+		public void remove() {
+			if (index == 0) {
+				throw new IllegalStateException();
+			}
+			KrollScriptableDict.this.remove(keys[index - 1]);
+		}
 	}
-	
-	protected class Entry implements Map.Entry<String, Object>, Comparable<Entry> {
+
+	// the value is only read (and converted) when asked for
+	protected class Entry implements Map.Entry<String, Object> {
 		protected String key;
-		protected Object value;
-		public Entry(String key, Object value) {
+		public Entry(String key) {
 			this.key = key;
-			this.value = value;
 		}
-		
+
 		@Override
 		public String getKey() {
 			return key;
 		}
-		
+
 		@Override
 		public Object getValue() {
-			return value;
+			return get(key);
 		}
-		
+
 		@Override
 		public Object setValue(Object value) {
 			return put(key, value);
 		}
-		
-		@Override
-		public int compareTo(Entry other) {
-			return other.key.compareTo(key);
-		}
 	}
-	
+
 	@Override
 	public Set<Map.Entry<String, Object>> entrySet() {
-		TreeSet<Map.Entry<String, Object>> entries = new TreeSet<Map.Entry<String, Object>>();
-		for (Object key : scriptable.getIds()) {
-			entries.add(new Entry(key.toString(), get(key)));
-		}
-		return entries;
+		return new AbstractSet<Map.Entry<String, Object>>() {
+			@Override
+			public Iterator<Map.Entry<String, Object>> iterator() {
+				final KeyIterator keys = new KeyIterator();
+				return new Iterator<Map.Entry<String, Object>>() {
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					public Map.Entry<String, Object> next() {
+						return new Entry(keys.next());
+					}
+
+					public void remove() {
+						keys.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return KrollScriptableDict.this.size();
+			}
+		};
 	}
-	
+
 	@Override
 	public Object get(Object key) {
 		if (key == null) return null;
-		
+
+		String name = key.toString();
+		Object value = values.get(name);
+		if (value != null) {
+			return value == NULL_VALUE ? null : value;
+		}
+
 		// Treat NOT_FOUND as null
-		Object value = scriptable.get(key.toString(), scriptable);
+		value = scriptable.get(name, scriptable);
 		if (value == Scriptable.NOT_FOUND) {
 			try {
-				Integer i = Integer.valueOf(key.toString());
+				Integer i = Integer.valueOf(name);
 				value = scriptable.get(i, scriptable);
 			} catch (NumberFormatException e) {}
 			if (value == Scriptable.NOT_FOUND) {
 				return null;
 			}
 		}
-		
-		KrollInvocation invocation = KrollInvocation.createPropertyGetInvocation(scriptable, scriptable, key.toString(), null, null);
+
+		Object result = convertValue(name, value);
+		values.put(name, result == null ? NULL_VALUE : result);
+		return result;
+	}
+
+	/**
+	 * Converts a value read from one of the object's properties, like {@link #get(Object)} does.
+	 */
+	public Object convertValue(String name, Object value) {
+		TiContext context = tiContext != null ? tiContext : TiContext.getCurrentTiContext();
+		KrollInvocation invocation = KrollInvocation.createPropertyGetInvocation(context, scriptable, scriptable, name, null, null);
 		Object result = KrollConverter.getInstance().convertJavascript(invocation, value, Object.class);
 		invocation.recycle();
 		return result;
 	}
-	
+
+	/**
+	 * Reads the object's properties as they are now, without converting them. Later changes
+	 * to the object don't show up in the result. Call it on the thread that owns the object.
+	 */
+	public LinkedHashMap<String, Object> snapshotValues() {
+		Object[] ids = scriptable.getIds();
+		LinkedHashMap<String, Object> snapshot = new LinkedHashMap<String, Object>(ids.length * 2);
+		for (Object id : ids) {
+			Object value;
+			if (id instanceof Number) {
+				value = scriptable.get(((Number) id).intValue(), scriptable);
+			} else {
+				value = scriptable.get(id.toString(), scriptable);
+			}
+			if (value != Scriptable.NOT_FOUND) {
+				snapshot.put(id.toString(), value);
+			}
+		}
+		return snapshot;
+	}
+
 	@Override
 	public boolean isEmpty() {
-		return scriptable.getIds().length == 0;
+		return getKeys().length == 0;
 	}
-	
+
 	@Override
 	public Set<String> keySet() {
-		TreeSet<String> keys = new TreeSet<String>();
-		for (Object key : scriptable.getIds()) {
-			keys.add(key.toString());
-		}
-		return keys;
+		return new AbstractSet<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return new KeyIterator();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public int size() {
+				return KrollScriptableDict.this.size();
+			}
+		};
 	}
-	
+
 	@Override
 	public Object put(String key, Object value) {
 		if (key == null) return null;
-		
-		KrollInvocation invocation = KrollInvocation.createPropertySetInvocation(scriptable, scriptable, key, null, null);
+
+		TiContext context = tiContext != null ? tiContext : TiContext.getCurrentTiContext();
+		KrollInvocation invocation = KrollInvocation.createPropertySetInvocation(context, scriptable, scriptable, key, null, null);
 		value = KrollConverter.getInstance().convertNative(invocation, value);
 		scriptable.put(key.toString(), scriptable, value);
 		invocation.recycle();
+
+		values.remove(key);
+		keys = null;
 		return value;
 	}
-	
+
 	@Override
 	public Object remove(Object key) {
 		if (key == null) return null;
-		
+
 		Object value = get(key.toString());
 		scriptable.delete(key.toString());
+		values.remove(key.toString());
+		keys = null;
 		return value;
 	}
-	
+
 	@Override
 	public int size() {
-		return scriptable.getIds().length;
+		return getKeys().length;
 	}
-	
+
 	@Override
 	public Collection<Object> values() {
-		ArrayList<Object> values = new ArrayList<Object>();
-		for (Object key : scriptable.getIds()) {
-			values.add(get(key));
-		}
-		return values;
+		return new AbstractCollection<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				final KeyIterator keys = new KeyIterator();
+				return new Iterator<Object>() {
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					public Object next() {
+						return get(keys.next());
+					}
+
+					public void remove() {
+						keys.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return KrollScriptableDict.this.size();
+			}
+		};
 	}
-	
+
+	@Override
+	public Object clone() {
+		KrollScriptableDict clone = (KrollScriptableDict) super.clone();
+		// share the scriptable, but not the caches
+		clone.values = new ConcurrentHashMap<String, Object>(values);
+		return clone;
+	}
+
 	public Object getJavascriptValue() {
 		return getScriptable();
 	}
-	
+
 	public Object getNativeValue() {
 		return this;
 	}
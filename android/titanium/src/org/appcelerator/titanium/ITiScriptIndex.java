@@ -0,0 +1,20 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium;
+
+import org.mozilla.javascript.Script;
+
+/**
+ * Maps the Resources relative path of each pre-compiled script to its class.
+ * The build generates an implementation named <code>&lt;app id&gt;.AppScriptIndex</code>.
+ */
+public interface ITiScriptIndex {
+	/**
+	 * @return a new instance of the compiled script, or null if the path wasn't compiled.
+	 */
+	public Script createScript(String relativePath);
+}
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,12 +19,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollInvocation;
+import org.appcelerator.kroll.KrollLazyModule;
 import org.appcelerator.kroll.KrollModule;
+import org.appcelerator.kroll.KrollModuleBinding;
 import org.appcelerator.kroll.KrollModuleInfo;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.titanium.analytics.TiAnalyticsEvent;
@@ -31,12 +36,14 @@ import org.appcelerator.titanium.analytics.TiAnalyticsEventFactory;
 import org.appcelerator.titanium.analytics.TiAnalyticsModel;
 import org.appcelerator.titanium.analytics.TiAnalyticsService;
 import org.appcelerator.titanium.kroll.KrollBridge;
+import org.appcelerator.titanium.kroll.KrollScriptCache;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
 import org.appcelerator.titanium.util.TiFileHelper;
 import org.appcelerator.titanium.util.TiPlatformHelper;
 import org.appcelerator.titanium.util.TiResponseCache;
 import org.appcelerator.titanium.util.TiTempFileHelper;
+import org.appcelerator.titanium.util.TiWeakList;
 import org.appcelerator.titanium.view.ITiWindowHandler;
 
 import android.app.Activity;
@@ -62,6 +69,8 @@ public abstract class TiApplication extends Application implements Callback
 	private static final String PROPERTY_COMPILE_JS = "ti.android.compilejs";
 	public static final String PROPERTY_FASTDEV = "ti.android.fastdev";
 	private static final String PROPERTY_ENABLE_COVERAGE = "ti.android.enablecoverage";
+	private static final String PROPERTY_PROPERTIES_WRITE_BEHIND = "ti.android.properties.writebehind";
+	private static final String PROPERTY_LAZY_MODULES = "ti.android.modules.lazy";
 	
 	private static final String LCAT = "TiApplication";
 	private static final boolean DBG = TiConfig.LOGD;
@@ -78,8 +87,12 @@ public abstract class TiApplication extends Application implements Callback
 	private TiRootActivity rootActivity;
 	private TiProperties appProperties;
 	private TiProperties systemProperties;
+	private TiContextPool contextPool;
 	private ITiWindowHandler windowHandler;
 	private Activity currentActivity;
+	// activities between onStart and onStop, the app is in the foreground while there are any
+	private int startedActivities = 0;
+	private TiWeakList<OnForegroundChangeListener> foregroundListeners = new TiWeakList<OnForegroundChangeListener>(true);
 	protected ITiAppInfo appInfo;
 	protected TiStylesheet stylesheet;
 	private String density;
@@ -91,10 +104,19 @@ public abstract class TiApplication extends Application implements Callback
 	protected Handler analyticsHandler;
 	private static long lastAnalyticsTriggered = 0;
 	private String buildVersion = "", buildTimestamp = "", buildHash = "";
-	protected ArrayList<KrollModule> modules = new ArrayList<KrollModule>();
+	// lazily booted modules are added from whichever Kroll thread touches them first
+	protected List<KrollModule> modules = new CopyOnWriteArrayList<KrollModule>();
+	protected ArrayList<KrollLazyModule> lazyModules = new ArrayList<KrollLazyModule>();
+	private boolean modulesBooted = false;
+	private long modulesBootTime;
+	private LinkedHashMap<String, Long> touchedModules = new LinkedHashMap<String, Long>();
 	protected TiDeployData deployData;
 	protected TiTempFileHelper tempFileHelper;
 
+	public static interface OnForegroundChangeListener {
+		void onForegroundChanged(boolean foreground);
+	}
+
 	public TiApplication() {
 		Log.checkpoint(LCAT, "checkpoint, app created.");
 		_instance = this;
@@ -107,11 +129,20 @@ public abstract class TiApplication extends Application implements Callback
 	}
 
 	public void bindModules(KrollBridge bridge, KrollProxy parent) {
-		if (modules.isEmpty()) {
+		if (!modulesBooted) {
+			modulesBootTime = System.currentTimeMillis();
 			bootModules(bridge.getKrollContext().getTiContext());
 			for (KrollModule module : modules) {
 				module.bindToParent(parent);
 			}
+			for (KrollLazyModule lazyModule : lazyModules) {
+				lazyModule.bindToParent(parent);
+			}
+			modulesBooted = true;
+			if (DBG) {
+				Log.d(LCAT, "Booted " + modules.size() + " modules in " + (System.currentTimeMillis() - modulesBootTime)
+					+ "ms, deferred " + lazyModules.size());
+			}
 		}
 		for (KrollModule module : modules) {
 			module.bindContextSpecific(bridge);
@@ -120,6 +151,49 @@ public abstract class TiApplication extends Application implements Callback
 
 	protected abstract void bootModules(TiContext context);
 
+	/**
+	 * Called from {@link #bootModules(TiContext)} for each module compiled into the app.
+	 * Unless the <code>ti.android.modules.lazy</code> property is false, the module is only
+	 * instantiated the first time it's used, see {@link KrollLazyModule}.
+	 */
+	protected void addModule(TiContext context, Class<? extends KrollModule> moduleClass) {
+		KrollModuleBinding binding = (KrollModuleBinding) KrollProxy.getBinding(moduleClass);
+		if (binding == null) {
+			return;
+		}
+		if (!KrollLazyModule.canDefer(binding) || !getSystemProperties().getBool(PROPERTY_LAZY_MODULES, true)) {
+			modules.add(binding.newInstance(context));
+		} else {
+			lazyModules.add(new KrollLazyModule(binding, context));
+		}
+	}
+
+	public void onLazyModuleBooted(KrollLazyModule lazyModule, long elapsed) {
+		modules.add(lazyModule.getModule());
+		long sinceBoot = System.currentTimeMillis() - modulesBootTime;
+		synchronized (touchedModules) {
+			touchedModules.put(lazyModule.getShortAPIName(), sinceBoot);
+		}
+		if (DBG) {
+			Log.d(LCAT, "Booted module " + lazyModule.getShortAPIName() + " on first use in " + elapsed
+				+ "ms, " + sinceBoot + "ms after launch");
+		}
+	}
+
+	/**
+	 * @return the deferred modules that were booted so far, in order, mapped to the
+	 * number of milliseconds between launch and their first use.
+	 */
+	public LinkedHashMap<String, Long> getTouchedModules() {
+		synchronized (touchedModules) {
+			return new LinkedHashMap<String, Long>(touchedModules);
+		}
+	}
+
+	public boolean hasBootedModules() {
+		return modulesBooted;
+	}
+
 	// Apps with custom modules will override this with their own creation logic
 	public KrollModule requireModule(TiContext context, KrollModuleInfo info) {
 		return getModuleById(info.getId());
@@ -135,6 +209,11 @@ public abstract class TiApplication extends Application implements Callback
 				return module;
 			}
 		}
+		for (KrollLazyModule lazyModule : lazyModules) {
+			if (lazyModule.getId().equals(id)) {
+				return lazyModule.getModule();
+			}
+		}
 		
 		return null;
 	}
@@ -146,12 +225,22 @@ public abstract class TiApplication extends Application implements Callback
 				return (T)module;
 			}
 		}
+		for (KrollLazyModule lazyModule : lazyModules) {
+			if (lazyModule.getModuleClass().equals(moduleClass)) {
+				return (T)lazyModule.getModule();
+			}
+		}
 		
 		return null;
 	}
 
 	public void releaseModules() {
 		modules.clear();
+		lazyModules.clear();
+		synchronized (touchedModules) {
+			touchedModules.clear();
+		}
+		modulesBooted = false;
 	}
 
 	public String[] getFilteredBindings(String moduleName) {
@@ -215,6 +304,8 @@ public abstract class TiApplication extends Application implements Callback
 
 		appProperties = new TiProperties(getApplicationContext(), APPLICATION_PREFERENCES_NAME, false);
 		systemProperties = new TiProperties(getApplicationContext(), "system", true);
+		// the generated AppInfo writes every tiapp.xml property at startup, coalesce them into one commit
+		systemProperties.setWriteBehind(true);
 
 		if (getDeployType().equals(DEPLOY_TYPE_DEVELOPMENT)) {
 			deployData = new TiDeployData();
@@ -228,6 +319,13 @@ public abstract class TiApplication extends Application implements Callback
 
 	public void postOnCreate() {
 		TiConfig.LOGD = systemProperties.getBool("ti.android.debug", false);
+		appProperties.setWriteBehind(systemProperties.getBool(PROPERTY_PROPERTIES_WRITE_BEHIND, false));
+		contextPool = new TiContextPool(this);
+		if (contextPool.isEnabled()) {
+			contextPool.scheduleRefill();
+		} else {
+			contextPool = null;
+		}
 
 		// Register the default cache handler
 		File cacheDir = new File(new TiFileHelper(this).getDataDirectory(false), "remote-image-cache");
@@ -307,6 +405,59 @@ public abstract class TiApplication extends Application implements Callback
 		}
 	}
 
+	/**
+	 * Called from the UI thread when one of the app's activities starts. An activity that's
+	 * opened starts before the one it covers stops, so moving between windows, heavyweight
+	 * or not, never takes the app out of the foreground.
+	 */
+	public void activityStarted(Activity activity)
+	{
+		if (startedActivities++ == 0) {
+			fireForegroundChanged(true);
+		}
+	}
+
+	/**
+	 * Called from the UI thread when one of the app's activities stops.
+	 */
+	public void activityStopped(Activity activity)
+	{
+		if (startedActivities > 0 && --startedActivities == 0) {
+			fireForegroundChanged(false);
+		}
+	}
+
+	public boolean isInForeground()
+	{
+		return startedActivities > 0;
+	}
+
+	public void addOnForegroundChangeListener(OnForegroundChangeListener listener)
+	{
+		foregroundListeners.add(new WeakReference<OnForegroundChangeListener>(listener));
+	}
+
+	public void removeOnForegroundChangeListener(OnForegroundChangeListener listener)
+	{
+		foregroundListeners.remove(listener);
+	}
+
+	protected void fireForegroundChanged(boolean foreground)
+	{
+		if (DBG) {
+			Log.d(LCAT, "App moved to the " + (foreground ? "foreground" : "background"));
+		}
+		synchronized (foregroundListeners.synchronizedList()) {
+			for (OnForegroundChangeListener listener : foregroundListeners.nonNull()) {
+				try {
+					listener.onForegroundChanged(foreground);
+				} catch (Throwable t) {
+					Log.e(LCAT, "Error dispatching foreground change: " + t.getMessage(), t);
+				}
+			}
+		}
+	}
+
 	public void setWindowHandler(ITiWindowHandler windowHandler) {
 		if (windowHandler == null) {
 			this.windowHandler = rootActivity;
@@ -412,6 +563,11 @@ public abstract class TiApplication extends Application implements Callback
 		return systemProperties;
 	}
 
+	public TiContextPool getContextPool()
+	{
+		return contextPool;
+	}
+
 	public ITiAppInfo getAppInfo() {
 		return appInfo;
 	}
@@ -444,6 +600,10 @@ public abstract class TiApplication extends Application implements Callback
 	@Override
 	public void onLowMemory()
 	{
+		if (contextPool != null) {
+			contextPool.release();
+		}
+		KrollScriptCache.getInstance().clear();
 		super.onLowMemory();
 	}
 
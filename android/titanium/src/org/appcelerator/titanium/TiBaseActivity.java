@@ -528,6 +528,9 @@ public abstract class TiBaseActivity extends Activity
 		if (activityProxy != null) {
 			activityProxy.fireSyncEvent(TiC.EVENT_PAUSE, null);
 		}
+		// the process may be killed once we're in the background, commit write-behind properties now
+		getTiApp().getAppProperties().flush();
+		getTiApp().getSystemProperties().flush();
 	}
 
 	@Override
@@ -551,6 +554,7 @@ public abstract class TiBaseActivity extends Activity
 		if (DBG) {
 			Log.d(TAG, "Activity " + this + " onStart");
 		}
+		getTiApp().activityStarted(this);
 		updateTitle();
 		
 		if (window != null) {
@@ -580,6 +584,7 @@ public abstract class TiBaseActivity extends Activity
 		if (DBG) {
 			Log.d(TAG, "Activity " + this + " onStop");
 		}
+		getTiApp().activityStopped(this);
 		if (window != null) {
 			window.fireEvent(TiC.EVENT_BLUR, null);
 		}
@@ -62,6 +62,7 @@ public class TiC
 	public static final String EVENT_REGION_CHANGED = "regionChanged";
 	public static final String EVENT_RESTART = "restart";
 	public static final String EVENT_RESUME = "resume";
+	public static final String EVENT_SCROLL = "scroll";
 	public static final String EVENT_SINGLE_TAP = "singletap";
 	public static final String EVENT_START = "start";
 	public static final String EVENT_STOP = "stop";
@@ -70,6 +71,7 @@ public class TiC
 	public static final String EVENT_TOUCH_MOVE = "touchmove";
 	public static final String EVENT_TOUCH_START = "touchstart";
 	public static final String EVENT_UNFOCUSED = "unfocused";
+	public static final String EVENT_UPDATE = "update";
 	public static final String INTENT_PROPERTY_FINISH_ROOT = "finishRoot";
 	public static final String INTENT_PROPERTY_LAYOUT = "layout";
 	public static final String INTENT_PROPERTY_MESSENGER = "messenger";
@@ -127,6 +129,7 @@ public class TiC
 	public static final String PROPERTY_CITY = "city";
 	public static final String PROPERTY_CLASS_NAME = "className";
 	public static final String PROPERTY_CLASS_NAMES = "classNames";
+	public static final String PROPERTY_CLUSTER_ANNOTATIONS = "clusterAnnotations";
 	public static final String PROPERTY_CODE = "code";
 	public static final String PROPERTY_COLOR = "color";
 	public static final String PROPERTY_COORDS = "coords";
@@ -153,6 +156,7 @@ public class TiC
 	public static final String PROPERTY_ENABLED = "enabled";
 	public static final String PROPERTY_EXIT_ON_CLOSE = "exitOnClose";
 	public static final String PROPERTY_FILE = "file";
+	public static final String PROPERTY_FILTER_ANCHORED = "filterAnchored";
 	public static final String PROPERTY_FILTER_ATTRIBUTE = "filterAttribute";
 	public static final String PROPERTY_FILTER_CASE_INSENSITIVE = "filterCaseInsensitive";
 	public static final String PROPERTY_FLAGS = "flags";
@@ -277,6 +281,7 @@ public class TiC
 	public static final String PROPERTY_TEXTID = "textid";
 	public static final String PROPERTY_TEXT_ALIGN = "textAlign";
 	public static final String PROPERTY_TICKER_TEXT = "tickerText";
+	public static final String PROPERTY_THROTTLE = "throttle";
 	public static final String PROPERTY_TIME = "time";
 	public static final String PROPERTY_TIMESTAMP = "timestamp";
 	public static final String PROPERTY_TITLE = "title";
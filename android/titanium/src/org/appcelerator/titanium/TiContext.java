@@ -8,7 +8,10 @@ package org.appcelerator.titanium;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.titanium.kroll.KrollBridge;
 import org.appcelerator.titanium.kroll.KrollContext;
 import org.appcelerator.titanium.util.Log;
@@ -57,6 +60,7 @@ public class TiContext implements ErrorReporter
 
 	private TiWeakList<OnLifecycleEvent> lifecycleListeners;
 	private TiWeakList<OnServiceLifecycleEvent> serviceLifecycleListeners;
+	private ConcurrentHashMap<String, KrollProxy> commonJsModules;
 
 	public static interface OnLifecycleEvent {
 		void onStart(Activity activity);
@@ -131,6 +135,17 @@ public class TiContext implements ErrorReporter
 		return tiApp;
 	}
 
+	/**
+	 * @return the CommonJS modules required from this context, unless modules are shared.
+	 */
+	public synchronized ConcurrentMap<String, KrollProxy> getCommonJsModules()
+	{
+		if (commonJsModules == null) {
+			commonJsModules = new ConcurrentHashMap<String, KrollProxy>();
+		}
+		return commonJsModules;
+	}
+
 	public TiRootActivity getRootActivity()
 	{
 		return getTiApp().getRootActivity();
@@ -313,6 +328,14 @@ public class TiContext implements ErrorReporter
 
 	public static TiContext createTiContext(Activity activity, String baseUrl, String loadFile)
 	{
+		TiContextPool pool = TiApplication.getInstance().getContextPool();
+		if (pool != null) {
+			TiContext pooled = pool.claim(activity, baseUrl, loadFile);
+			if (pooled != null) {
+				return pooled;
+			}
+		}
+
 		TiContext tic = new TiContext(activity, baseUrl);
 		KrollContext kroll = KrollContext.createContext(tic, loadFile);
 		tic.setKrollContext(kroll);
@@ -352,6 +375,9 @@ public class TiContext implements ErrorReporter
 		if (serviceLifecycleListeners != null) {
 			serviceLifecycleListeners.clear();
 		}
+		synchronized (this) {
+			commonJsModules = null;
+		}
 	}
 
 	public boolean isServiceContext() 
@@ -385,6 +411,23 @@ public class TiContext implements ErrorReporter
 		return weakActivity.get();
 	}
 
+	/**
+	 * Binds a pre-warmed context from the {@link TiContextPool} to its activity and urls.
+	 */
+	protected void attach(Activity activity, String baseUrl, String loadFile)
+	{
+		setActivity(activity);
+		if (baseUrl == null) {
+			baseUrl = TiC.URL_APP_PREFIX;
+		} else if (!baseUrl.endsWith("/")) {
+			baseUrl += "/";
+		}
+		setBaseUrl(baseUrl);
+		if (krollContext != null) {
+			krollContext.setSourceUrl(loadFile);
+		}
+	}
+
 	public void setBaseUrl(String baseUrl)
 	{
 		this.baseUrl.baseUrl = baseUrl;
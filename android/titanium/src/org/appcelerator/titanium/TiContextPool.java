@@ -0,0 +1,214 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium;
+
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.appcelerator.titanium.kroll.KrollBridge;
+import org.appcelerator.titanium.kroll.KrollContext;
+import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiConfig;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+/**
+ * A small pool of pre-warmed contexts: their Kroll thread is running and the standard
+ * objects are initialized. Opening a url window claims one of them instead of paying for
+ * that on the UI thread. The Titanium bindings are only added once the context is bound
+ * to its activity and base url, since binding modules can evaluate scripts.
+ *
+ * Contexts are built one at a time on a background thread, each time the UI thread
+ * goes idle, until the pool is full. The pool size is read from the
+ * <code>ti.android.contextpool.size</code> property and defaults to 0 (disabled).
+ */
+public class TiContextPool
+{
+	private static final String LCAT = "TiContextPool";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	public static final String PROPERTY_POOL_SIZE = "ti.android.contextpool.size";
+
+	// how long to wait for the launch context to boot the modules before trying again
+	private static final long BOOT_RETRY_DELAY = 250;
+
+	private TiApplication tiApp;
+	private int size;
+	private LinkedList<TiContext> contexts = new LinkedList<TiContext>();
+	private boolean refilling = false;
+	private Handler mainHandler;
+	private ExecutorService worker;
+
+	private final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+		public boolean queueIdle()
+		{
+			warmNext();
+			// warmNext re-registers us after each context is ready
+			return false;
+		}
+	};
+
+	public TiContextPool(TiApplication tiApp)
+	{
+		this.tiApp = tiApp;
+		this.size = tiApp.getSystemProperties().getInt(PROPERTY_POOL_SIZE, 0);
+		this.mainHandler = new Handler(Looper.getMainLooper());
+	}
+
+	public boolean isEnabled()
+	{
+		return size > 0;
+	}
+
+	/**
+	 * Hands out a warm context bound to the given activity and urls, or null when none is ready.
+	 */
+	public TiContext claim(Activity activity, String baseUrl, String loadFile)
+	{
+		if (!isEnabled()) {
+			return null;
+		}
+
+		TiContext tiContext;
+		synchronized (contexts) {
+			tiContext = contexts.poll();
+		}
+		scheduleRefill();
+		if (tiContext == null) {
+			if (DBG) {
+				Log.d(LCAT, "No warm context available for " + loadFile);
+			}
+			return null;
+		}
+
+		if (DBG) {
+			Log.d(LCAT, "Claimed warm context for " + loadFile);
+		}
+		// bind the activity and urls first, the bindings can evaluate scripts that depend on them
+		tiContext.attach(activity, baseUrl, loadFile);
+		new KrollBridge(tiContext.getKrollContext());
+		return tiContext;
+	}
+
+	/**
+	 * Starts refilling the pool the next time the UI thread is idle. Called when the app
+	 * starts and after each claim.
+	 */
+	public void scheduleRefill()
+	{
+		if (!isEnabled()) {
+			return;
+		}
+		synchronized (contexts) {
+			if (refilling || contexts.size() >= size) {
+				return;
+			}
+			refilling = true;
+		}
+		addIdleHandler();
+	}
+
+	/**
+	 * Releases every warm context, e.g. when memory is low. The pool refills on the next claim.
+	 */
+	public void release()
+	{
+		LinkedList<TiContext> released;
+		synchronized (contexts) {
+			released = new LinkedList<TiContext>(contexts);
+			contexts.clear();
+		}
+		for (TiContext tiContext : released) {
+			KrollContext kroll = tiContext.getKrollContext();
+			tiContext.release();
+			if (kroll != null) {
+				kroll.release();
+			}
+		}
+	}
+
+	private void addIdleHandler()
+	{
+		addIdleHandler(0);
+	}
+
+	private void addIdleHandler(long delay)
+	{
+		mainHandler.postDelayed(new Runnable() {
+			public void run()
+			{
+				Looper.myQueue().addIdleHandler(idleHandler);
+			}
+		}, delay);
+	}
+
+	private void warmNext()
+	{
+		synchronized (contexts) {
+			if (contexts.size() >= size) {
+				refilling = false;
+				return;
+			}
+		}
+		if (!tiApp.hasBootedModules()) {
+			// modules are booted by the first (launch) context, don't race it but come back later
+			addIdleHandler(BOOT_RETRY_DELAY);
+			return;
+		}
+
+		getWorker().execute(new Runnable() {
+			public void run()
+			{
+				TiContext tiContext = null;
+				try {
+					long start = System.currentTimeMillis();
+					tiContext = new TiContext(null, null);
+					KrollContext kroll = KrollContext.createContext(tiContext, null);
+					tiContext.setKrollContext(kroll);
+					if (DBG) {
+						Log.d(LCAT, "Warmed context in " + (System.currentTimeMillis() - start) + "ms");
+					}
+				} catch (Throwable t) {
+					Log.e(LCAT, "Error warming context: " + t.getMessage(), t);
+					tiContext = null;
+				}
+
+				boolean more;
+				synchronized (contexts) {
+					if (tiContext != null) {
+						contexts.add(tiContext);
+					}
+					more = tiContext != null && contexts.size() < size;
+					refilling = more;
+				}
+				if (more) {
+					addIdleHandler();
+				}
+			}
+		});
+	}
+
+	private synchronized ExecutorService getWorker()
+	{
+		if (worker == null) {
+			worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "TiContextPool");
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return worker;
+	}
+}
@@ -6,11 +6,11 @@
  */
 package org.appcelerator.titanium;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.util.TiLruCache;
 
 import android.content.Context;
 import android.util.DisplayMetrics;
@@ -40,12 +40,36 @@ public class TiDimension
 	public static final double POINT_DPI = 72.0;
 	public static final double MM_INCH = 25.4;
 
+	// The syntax accepted by parse(), which doesn't use it
 	public static Pattern DIMENSION_PATTERN = Pattern.compile("(-?[0-9]*\\.?[0-9]+)\\s*(px|dp|dip|sp|sip|mm|pt|in|%)?");
 	protected static DisplayMetrics metrics = null;
 
+	private static final int MAX_CACHED_VALUES = 256;
+
+	/**
+	 * The value and units of a parsed dimension string.
+	 */
+	private static class Parsed
+	{
+		final double value;
+		final int units;
+
+		Parsed(double value, int units) {
+			this.value = value;
+			this.units = units;
+		}
+	}
+
+	// by the string they were parsed from, a layout repeats the same "10dp" or "50%" a lot
+	private static TiLruCache<String, Parsed> parsedValues = new TiLruCache<String, Parsed>(MAX_CACHED_VALUES);
+
 	protected double value;
 	protected int units, valueType;
 
+	// getAsPixels for units that don't depend on the parent, NOT_RESOLVED until it's asked for
+	private static final int NOT_RESOLVED = Integer.MIN_VALUE;
+	private int pixels = NOT_RESOLVED;
+
 	public TiDimension(double value, int valueType)
 	{
 		this.value = value;
@@ -58,41 +82,126 @@ public class TiDimension
 		this.valueType = valueType;
 		this.units = TypedValue.COMPLEX_UNIT_PX;
 		if (svalue != null) {
-			Matcher m = DIMENSION_PATTERN.matcher(svalue.trim());
-			if (m.matches()) {
-				value = Float.parseFloat(m.group(1));
-
-				if (m.groupCount() == 2) {
-					String unit = m.group(2);
-					if ("px".equals(unit)) {
-						this.units = TypedValue.COMPLEX_UNIT_PX;
-					} else if ("pt".equals(unit)) {
-						this.units = TypedValue.COMPLEX_UNIT_PT;
-					} else if ("dp".equals(unit) || "dip".equals(unit)) {
-						this.units = TypedValue.COMPLEX_UNIT_DIP;
-					} else if ("sp".equals(unit) || "sip".equals(unit)) {
-						this.units = TypedValue.COMPLEX_UNIT_SP;
-					} else if ("%".equals(unit)) {
-						this.units = COMPLEX_UNIT_PERCENT;
-					} else if ("mm".equals(unit)) {
-						this.units = TypedValue.COMPLEX_UNIT_MM;
-					} else if ("in".equals(unit)) {
-						this.units = TypedValue.COMPLEX_UNIT_IN;
-					} else {
-						if (DBG) {
-							if (unit != null) {
-								Log.w(LCAT, "Unknown unit: " + unit);
-							}
-						}
-					}
-				}
-			} else if (svalue.trim().equals("auto")) {
-				this.value = Integer.MIN_VALUE;
-				this.units = COMPLEX_UNIT_AUTO;
+			Parsed parsed = parsedValues.get(svalue);
+			if (parsed == null) {
+				parsed = parse(svalue);
+				parsedValues.put(svalue, parsed);
 			}
+			this.value = parsed.value;
+			this.units = parsed.units;
 		}
 	}
 
+	/**
+	 * Parses a number with optional units as described by DIMENSION_PATTERN, or "auto".
+	 * Anything else is 0px.
+	 */
+	private static Parsed parse(String svalue)
+	{
+		int length = svalue.length();
+		int start = 0;
+		while (start < length && svalue.charAt(start) <= ' ') {
+			start++;
+		}
+		while (length > start && svalue.charAt(length - 1) <= ' ') {
+			length--;
+		}
+
+		// -?[0-9]*\.?[0-9]+
+		int i = start;
+		if (i < length && svalue.charAt(i) == '-') {
+			i++;
+		}
+		int intDigits = 0, fractionDigits = 0;
+		long number = 0;
+		while (i < length && isDigit(svalue.charAt(i))) {
+			number = number * 10 + (svalue.charAt(i++) - '0');
+			intDigits++;
+		}
+		boolean point = false;
+		if (i < length && svalue.charAt(i) == '.') {
+			point = true;
+			i++;
+			while (i < length && isDigit(svalue.charAt(i))) {
+				i++;
+				fractionDigits++;
+			}
+		}
+		int numberEnd = i;
+		if ((point ? fractionDigits : intDigits) == 0) {
+			if (svalue.regionMatches(start, "auto", 0, 4) && length - start == 4) {
+				return new Parsed(Integer.MIN_VALUE, COMPLEX_UNIT_AUTO);
+			}
+			return new Parsed(0, TypedValue.COMPLEX_UNIT_PX);
+		}
+
+		// \s*(px|dp|dip|sp|sip|mm|pt|in|%)?
+		while (i < length && Character.isWhitespace(svalue.charAt(i))) {
+			i++;
+		}
+		int units = unitsOf(svalue, i, length);
+		if (units == -1) {
+			if (DBG) {
+				Log.w(LCAT, "Unknown unit: " + svalue.substring(i, length));
+			}
+			return new Parsed(0, TypedValue.COMPLEX_UNIT_PX);
+		}
+
+		double value;
+		if (!point && intDigits <= 9) {
+			// exact as a float, the way it was always stored
+			float f = number;
+			value = svalue.charAt(start) == '-' ? -f : f;
+		} else {
+			value = Float.parseFloat(svalue.substring(start, numberEnd));
+		}
+		return new Parsed(value, units);
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * @return the units named by svalue from start to end, px if there are none, or -1 if they're unknown
+	 */
+	private static int unitsOf(String svalue, int start, int end)
+	{
+		int length = end - start;
+		if (length == 0) {
+			return TypedValue.COMPLEX_UNIT_PX;
+		}
+		if (length == 1) {
+			return svalue.charAt(start) == '%' ? COMPLEX_UNIT_PERCENT : -1;
+		}
+		if (length == 2) {
+			char c0 = svalue.charAt(start), c1 = svalue.charAt(start + 1);
+			if (c0 == 'p' && c1 == 'x') {
+				return TypedValue.COMPLEX_UNIT_PX;
+			} else if (c0 == 'd' && c1 == 'p') {
+				return TypedValue.COMPLEX_UNIT_DIP;
+			} else if (c0 == 's' && c1 == 'p') {
+				return TypedValue.COMPLEX_UNIT_SP;
+			} else if (c0 == 'p' && c1 == 't') {
+				return TypedValue.COMPLEX_UNIT_PT;
+			} else if (c0 == 'm' && c1 == 'm') {
+				return TypedValue.COMPLEX_UNIT_MM;
+			} else if (c0 == 'i' && c1 == 'n') {
+				return TypedValue.COMPLEX_UNIT_IN;
+			}
+			return -1;
+		}
+		if (length == 3) {
+			if (svalue.regionMatches(start, "dip", 0, 3)) {
+				return TypedValue.COMPLEX_UNIT_DIP;
+			} else if (svalue.regionMatches(start, "sip", 0, 3)) {
+				return TypedValue.COMPLEX_UNIT_SP;
+			}
+		}
+		return -1;
+	}
+
 	public double getValue()
 	{
 		return value;
@@ -106,6 +215,7 @@ public class TiDimension
 	public void setValue(double value)
 	{
 		this.value = value;
+		this.pixels = NOT_RESOLVED;
 	}
 
 	public int getUnits()
@@ -116,6 +226,7 @@ public class TiDimension
 	public void setUnits(int units)
 	{
 		this.units = units;
+		this.pixels = NOT_RESOLVED;
 	}
 
 	public int getAsPixels(View parent)
@@ -128,11 +239,18 @@ public class TiDimension
 				return getPercentPixels(parent);
 			case TypedValue.COMPLEX_UNIT_DIP:
 			case TypedValue.COMPLEX_UNIT_SP:
-				return getScaledPixels(parent);
+				// the display metrics are only read once, so neither of these change
+				if (pixels == NOT_RESOLVED) {
+					pixels = getScaledPixels(parent);
+				}
+				return pixels;
 			case TypedValue.COMPLEX_UNIT_PT:
 			case TypedValue.COMPLEX_UNIT_MM:
 			case TypedValue.COMPLEX_UNIT_IN:
-				return getSizePixels(parent);
+				if (pixels == NOT_RESOLVED) {
+					pixels = getSizePixels(parent);
+				}
+				return pixels;
 		}
 		return -1;
 	}
@@ -7,6 +7,15 @@
 package org.appcelerator.titanium;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
@@ -14,13 +23,34 @@ import org.appcelerator.titanium.util.TiConfig;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+/**
+ * Typed access to a SharedPreferences file.
+ *
+ * By default every setter commits synchronously. In write-behind mode (see
+ * {@link #setWriteBehind(boolean)}) reads are served from an in-memory snapshot and
+ * writes are coalesced and committed in a single editor on a background thread
+ * shortly afterwards, or immediately on {@link #flush()}.
+ */
 public class TiProperties
 {
 	private static final String LCAT = "TiProperties";
 	public static boolean DBG = TiConfig.LOGD && false;
 
+	public static final long FLUSH_DELAY = 500;
+
+	// marks a pending removal, since the snapshot never holds null values
+	private static final Object REMOVED = new Object();
+
+	private static ScheduledExecutorService flushExecutor;
+
 	SharedPreferences preferences;
 
+	private volatile boolean writeBehind = false;
+	private HashMap<String, Object> snapshot;
+	private HashMap<String, Object> pending;
+	private ScheduledFuture<?> scheduledFlush;
+	private final Object flushLock = new Object();
+
 	public TiProperties(Context context, String name, boolean clear) {
 		preferences = context.getSharedPreferences(name,Context.MODE_PRIVATE);
 		if (clear) {
@@ -28,12 +58,54 @@ public class TiProperties
 		}
 	}
 
+	/**
+	 * Enables or disables write-behind mode. Disabling it flushes any pending writes.
+	 */
+	public void setWriteBehind(boolean writeBehind)
+	{
+		synchronized (flushLock) {
+			HashMap<String, Object> changes;
+			synchronized (this) {
+				if (writeBehind == this.writeBehind) {
+					return;
+				}
+				if (writeBehind) {
+					snapshot = new HashMap<String, Object>(preferences.getAll());
+					pending = new HashMap<String, Object>();
+					this.writeBehind = true;
+					return;
+				}
+				// take the pending writes and leave write-behind mode in one step, so a write
+				// made in between goes straight to the preferences instead of being dropped
+				changes = pending;
+				this.writeBehind = false;
+				snapshot = null;
+				pending = null;
+				if (scheduledFlush != null) {
+					scheduledFlush.cancel(false);
+					scheduledFlush = null;
+				}
+			}
+			commit(changes);
+		}
+	}
+
+	public boolean isWriteBehind()
+	{
+		return writeBehind;
+	}
+
 	public String getString(String key, String def)
 	{
 		if (DBG) {
 			Log.d(LCAT,"getString called with key:"+key+", def:"+def);
 		}
 
+		if (writeBehind) {
+			Object value = getCached(key);
+			return value == null ? def : value.toString();
+		}
+
 		if (!preferences.contains(key))
 			return def;
 
@@ -45,16 +117,7 @@ public class TiProperties
 		if (DBG) {
 			Log.d(LCAT,"setString called with key:"+key+", value:"+value);
 		}
-		SharedPreferences.Editor editor = preferences.edit();
-		if (value==null)
-		{
-			editor.remove(key);
-		}
-		else
-		{
-			editor.putString(key,value);
-		}
-		editor.commit();
+		put(key, value);
 	}
 
 	public int getInt(String key, int def)
@@ -62,30 +125,47 @@ public class TiProperties
 		if (DBG) {
 			Log.d(LCAT,"getInt called with key:"+key+", def:"+def);
 		}
-		return preferences.getInt(key,def);
+		if (writeBehind) {
+			return toInt(getCached(key), def);
+		}
+		try {
+			return preferences.getInt(key,def);
+		} catch (ClassCastException e) {
+			// stored as a double
+			return toInt(preferences.getAll().get(key), def);
+		}
 	}
 	public void setInt(String key, int value)
 	{
 		if (DBG) {
 			Log.d(LCAT,"setInt called with key:"+key+", value:"+value);
 		}
-
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putInt(key,value);
-		editor.commit();
+		put(key, value);
 	}
 	public double getDouble(String key, double def)
 	{
 		if (DBG) {
 			Log.d(LCAT,"getDouble called with key:"+key+", def:"+def);
 		}
-		if (!hasProperty(key)) {
+		Object value;
+		if (writeBehind) {
+			value = getCached(key);
+		} else {
+			try {
+				value = preferences.contains(key) ? preferences.getString(key, "") : null;
+			} catch (ClassCastException e) {
+				// stored as an int
+				value = preferences.getAll().get(key);
+			}
+		}
+		if (value == null) {
 			return def;
 		}
-
-		String stringValue = preferences.getString(key, "");
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
 		try {
-			return Double.parseDouble(stringValue);
+			return Double.parseDouble(value.toString());
 		} catch (NumberFormatException e) {
 			return def;
 		}
@@ -95,27 +175,28 @@ public class TiProperties
 		if (DBG) {
 			Log.d(LCAT,"setDouble called with key:"+key+", value:"+value);
 		}
-		
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putString(key,value + "");
-		editor.commit();
+		put(key, value + "");
 	}
 	public boolean getBool(String key, boolean def)
 	{
 		if (DBG) {
 			Log.d(LCAT,"getBool called with key:"+key+", def:"+def);
 		}
-		return preferences.getBoolean(key,def);
+		if (writeBehind) {
+			return toBool(getCached(key), def);
+		}
+		try {
+			return preferences.getBoolean(key,def);
+		} catch (ClassCastException e) {
+			return toBool(preferences.getAll().get(key), def);
+		}
 	}
 	public void setBool(String key, boolean value)
 	{
 		if (DBG) {
 			Log.d(LCAT,"setBool called with key:"+key+", value:"+value);
 		}
-
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putBoolean(key,value);
-		editor.commit();
+		put(key, value);
 	}
 
 	public String[] getList(String key, String def[])
@@ -124,14 +205,14 @@ public class TiProperties
 			Log.d(LCAT,"getList called with key:"+key+", def:"+def);
 		}
 
-		int length = preferences.getInt(key+".length", -1);
+		int length = getInt(key+".length", -1);
 		if (length == -1) {
 			return def;
 		}
 
 		String list[] = new String[length];
 		for (int i = 0; i < length; i++) {
-			list[i] = preferences.getString(key+"."+i, "");
+			list[i] = getString(key+"."+i, "");
 		}
 		return list;
 	}
@@ -142,30 +223,64 @@ public class TiProperties
 			Log.d(LCAT,"setList called with key:"+key+", value:"+value);
 		}
 
-		SharedPreferences.Editor editor = preferences.edit();
-		for (int i = 0; i < value.length; i++)
-		{
-			editor.putString(key+"."+i, value[i]);
-		}
-		editor.putInt(key+".length", value.length);
+		LinkedHashMap<String, Object> values = new LinkedHashMap<String, Object>(value.length + 1);
+		putList(values, key, value);
+		putAll(values);
+	}
 
-		editor.commit();
+	/**
+	 * Sets many properties with a single write. Values may be Strings, Integers,
+	 * Booleans, Doubles (stored like {@link #setDouble(String, double)}), String arrays
+	 * (stored like {@link #setList(String, String[])}) or null to remove the property.
+	 */
+	public void setProperties(Map<String, Object> properties)
+	{
+		if (DBG) {
+			Log.d(LCAT,"setProperties called with " + properties.size() + " properties");
+		}
 
+		LinkedHashMap<String, Object> values = new LinkedHashMap<String, Object>(properties.size());
+		for (Map.Entry<String, Object> entry : properties.entrySet()) {
+			String key = entry.getKey();
+			Object value = entry.getValue();
+			if (value instanceof String[]) {
+				putList(values, key, (String[]) value);
+			} else if (value instanceof Double || value instanceof Float) {
+				values.put(key, ((Number) value).doubleValue() + "");
+			} else if (value == null || value instanceof String || value instanceof Integer || value instanceof Boolean) {
+				values.put(key, value);
+			} else {
+				Log.w(LCAT, "Unsupported value type for property " + key + ": " + value.getClass().getName() + ", storing as string");
+				values.put(key, value.toString());
+			}
+		}
+		putAll(values);
 	}
 
 	public boolean hasListProperty(String key) {
 		return hasProperty(key+".0");
 	}
-	
+
 	public boolean hasProperty(String key)
 	{
+		if (writeBehind) {
+			return getCached(key) != null;
+		}
 		return preferences.contains(key);
 	}
 
 	public String[] listProperties()
 	{
 		ArrayList<String> properties = new ArrayList<String>();
-		for (String key : preferences.getAll().keySet())
+		Iterable<String> keys;
+		if (writeBehind) {
+			synchronized (this) {
+				keys = new ArrayList<String>(snapshot.keySet());
+			}
+		} else {
+			keys = preferences.getAll().keySet();
+		}
+		for (String key : keys)
 		{
 			if (key.endsWith(".length")) {
 				properties.add(key.substring(0, key.length()-7));
@@ -182,10 +297,179 @@ public class TiProperties
 
 	public void removeProperty(String key)
 	{
-		if (preferences.contains(key)) {
-			SharedPreferences.Editor editor = preferences.edit();
+		if (hasProperty(key)) {
+			put(key, null);
+		}
+	}
+
+	/**
+	 * Synchronously commits any writes still pending in write-behind mode.
+	 */
+	public void flush()
+	{
+		synchronized (flushLock) {
+			HashMap<String, Object> changes;
+			synchronized (this) {
+				if (!writeBehind || pending.isEmpty()) {
+					return;
+				}
+				changes = pending;
+				pending = new HashMap<String, Object>();
+				if (scheduledFlush != null) {
+					scheduledFlush.cancel(false);
+					scheduledFlush = null;
+				}
+			}
+			commit(changes);
+		}
+	}
+
+	// must be called while holding flushLock, so commits land in the order they were taken
+	private void commit(Map<String, Object> changes)
+	{
+		if (changes.isEmpty()) {
+			return;
+		}
+		if (DBG) {
+			Log.d(LCAT, "Flushing " + changes.size() + " properties");
+		}
+		SharedPreferences.Editor editor = preferences.edit();
+		for (Map.Entry<String, Object> entry : changes.entrySet()) {
+			apply(editor, entry.getKey(), entry.getValue());
+		}
+		if (!editor.commit()) {
+			Log.e(LCAT, "Error committing " + changes.size() + " properties");
+		}
+	}
+
+	private static void putList(Map<String, Object> values, String key, String[] value)
+	{
+		for (int i = 0; i < value.length; i++)
+		{
+			values.put(key+"."+i, value[i]);
+		}
+		values.put(key+".length", value.length);
+	}
+
+	private static int toInt(Object value, int def)
+	{
+		if (value == null) {
+			return def;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+		try {
+			return (int) Double.parseDouble(value.toString());
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	private static boolean toBool(Object value, boolean def)
+	{
+		if (value == null) {
+			return def;
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue() != 0;
+		}
+		return Boolean.parseBoolean(value.toString());
+	}
+
+	private synchronized Object getCached(String key)
+	{
+		if (snapshot == null) {
+			// write-behind was switched off concurrently
+			return preferences.getAll().get(key);
+		}
+		return snapshot.get(key);
+	}
+
+	private void put(String key, Object value)
+	{
+		putAll(Collections.singletonMap(key, value));
+	}
+
+	private void putAll(Map<String, Object> values)
+	{
+		synchronized (this) {
+			if (writeBehind) {
+				for (Map.Entry<String, Object> entry : values.entrySet()) {
+					cache(entry.getKey(), entry.getValue());
+				}
+				scheduleFlush();
+				return;
+			}
+		}
+
+		// a direct write waits for a flush in progress, so it can't be overwritten by older values
+		synchronized (flushLock) {
+			commit(values);
+		}
+	}
+
+	// must be called while holding the lock on this
+	private void cache(String key, Object value)
+	{
+		if (value == null) {
+			snapshot.remove(key);
+			pending.put(key, REMOVED);
+		} else {
+			snapshot.put(key, value);
+			pending.put(key, value);
+		}
+	}
+
+	// must be called while holding the lock on this
+	private void scheduleFlush()
+	{
+		if (scheduledFlush != null) {
+			return;
+		}
+		scheduledFlush = getFlushExecutor().schedule(new Runnable() {
+			public void run()
+			{
+				synchronized (TiProperties.this) {
+					scheduledFlush = null;
+				}
+				flush();
+			}
+		}, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	private static void apply(SharedPreferences.Editor editor, String key, Object value)
+	{
+		if (value == null || value == REMOVED) {
 			editor.remove(key);
-			editor.commit();
+		} else if (value instanceof Integer) {
+			editor.putInt(key, (Integer) value);
+		} else if (value instanceof Boolean) {
+			editor.putBoolean(key, (Boolean) value);
+		} else if (value instanceof Long) {
+			editor.putLong(key, (Long) value);
+		} else if (value instanceof Float) {
+			editor.putFloat(key, (Float) value);
+		} else {
+			editor.putString(key, value.toString());
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getFlushExecutor()
+	{
+		if (flushExecutor == null) {
+			flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "TiPropertiesFlush");
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
 		}
+		return flushExecutor;
 	}
 }
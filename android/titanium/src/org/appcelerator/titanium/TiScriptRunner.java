@@ -6,24 +6,35 @@
  */
 package org.appcelerator.titanium;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiConfig;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.RhinoException;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
-// This class provides an API for running pre-compiled javascript from Rhino
+/**
+ * This class provides an API for running pre-compiled javascript from Rhino.
+ *
+ * Scripts are looked up in the build generated {@link ITiScriptIndex} and instantiated
+ * directly. Builds without an index fall back to loading the script class by name.
+ * Nothing is shared between runs, so any number of Kroll threads can run scripts at once.
+ */
 public class TiScriptRunner
 {
 	private static final String TAG = "TiScriptRunner";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	private static final String SCRIPT_INDEX_CLASS = "AppScriptIndex";
+
 	private static TiScriptRunner _instance;
 
-	public static TiScriptRunner getInstance()
+	public static synchronized TiScriptRunner getInstance()
 	{
 		if (_instance == null) {
 			_instance = new TiScriptRunner();
@@ -31,109 +42,158 @@ public class TiScriptRunner
 		return _instance;
 	}
 
-	// Called by the compiled JS class, we pass it 1 argument: the script class name
+	// Called by the main method of compiled JS classes run outside of the runner
 	public static void main(Script script, String[] args)
 	{
-		TiScriptRunner runner = getInstance();
-		String scriptClassName = args[0];
-		
-		TiScript tiScript = runner.scripts.get(scriptClassName);
-		tiScript.script = script;
-		tiScript.returnValue = runner.executeScript(tiScript);
+		Context context = Context.enter();
+		try {
+			Scriptable scope = context.initStandardObjects();
+			getInstance().executeScript(context, scope, script, args.length > 0 ? args[0] : script.getClass().getName());
+		} finally {
+			Context.exit();
+		}
 	}
 
-	protected class TiScript
+	/**
+	 * Run statistics for a single script.
+	 */
+	public static class ScriptStatistics
 	{
-		public Context context;
-		public Scriptable scope;
-		public String name;
-		public Script script;
-		public Object returnValue;
+		private int runs;
+		private long totalTime;
+		private long maxTime;
+
+		private synchronized void add(long time)
+		{
+			runs++;
+			totalTime += time;
+			maxTime = Math.max(maxTime, time);
+		}
+
+		public synchronized int getRuns()
+		{
+			return runs;
+		}
+
+		public synchronized long getTotalTime()
+		{
+			return totalTime;
+		}
+
+		public synchronized long getMaxTime()
+		{
+			return maxTime;
+		}
 	}
 
 	protected String appPackageName;
-	protected HashMap<String, TiScript> scripts = new HashMap<String, TiScript>();
+	protected ITiScriptIndex scriptIndex;
+	// only used when the build didn't generate an index
+	protected ConcurrentHashMap<String, Class<?>> scriptClasses = new ConcurrentHashMap<String, Class<?>>();
+	protected ConcurrentHashMap<String, ScriptStatistics> statistics = new ConcurrentHashMap<String, ScriptStatistics>();
+
 	private TiScriptRunner() {}
 
-	protected Object executeScript(TiScript script)
+	protected Object executeScript(Context context, Scriptable scope, Script script, String name)
 	{
-		Log.d(TAG, "Executing script: " + script.name);
+		Log.d(TAG, "Executing script: " + name);
 		Object returnValue = Scriptable.NOT_FOUND;
+		long start = System.currentTimeMillis();
 		try {
-			returnValue = script.script.exec(script.context, script.scope);
+			returnValue = script.exec(context, scope);
 		} catch (RhinoException e) {
 			Log.e(TAG, "Javascript Exception: " + e.getMessage(), e);
 			Context.reportRuntimeError(e.getMessage(), e.sourceName(), e.lineNumber(), e.lineSource(), e.columnNumber());
 		}
-		
-		script.context = null;
-		script.scope = null;
-		
+
+		long elapsed = System.currentTimeMillis() - start;
+		ScriptStatistics stats = statistics.get(name);
+		if (stats == null) {
+			ScriptStatistics newStats = new ScriptStatistics();
+			stats = statistics.putIfAbsent(name, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+		stats.add(elapsed);
+		if (DBG) {
+			Log.d(TAG, "Executed script " + name + " in " + elapsed + "ms");
+		}
+
 		return returnValue;
 	}
 
 	protected String getScriptClassName(String relativePath)
 	{
-		String scriptClassName = new String(relativePath);
-		scriptClassName = scriptClassName.replace(".js","").
-			replace("/","_").replace("\\", "_").replace(" ","_").replace(".","_").replace("-","_");
-		
-		return appPackageName + ".js." + scriptClassName;
+		// same mangling as the build: drop ".js", then map path separators, spaces, dots and dashes to '_'
+		int length = relativePath.endsWith(".js") ? relativePath.length() - 3 : relativePath.length();
+		StringBuilder className = new StringBuilder(appPackageName.length() + 4 + length);
+		className.append(appPackageName).append(".js.");
+		for (int i = 0; i < length; i++) {
+			char c = relativePath.charAt(i);
+			switch (c) {
+				case '/': case '\\': case ' ': case '.': case '-':
+					className.append('_');
+					break;
+				default:
+					className.append(c);
+			}
+		}
+		return className.toString();
 	}
 
 	public void setAppPackageName(String packageName)
 	{
 		appPackageName = packageName;
+		try {
+			scriptIndex = (ITiScriptIndex) Class.forName(packageName + "." + SCRIPT_INDEX_CLASS).newInstance();
+		} catch (ClassNotFoundException e) {
+			// JS isn't compiled, or the app was built without an index
+			scriptIndex = null;
+		} catch (Exception e) {
+			Log.e(TAG, "Couldn't load script index: " + e.getMessage(), e);
+			scriptIndex = null;
+		}
 	}
 
+	/**
+	 * @return a copy of the run statistics of every script that ran so far, keyed by name.
+	 */
+	public Map<String, ScriptStatistics> getStatistics()
+	{
+		return new HashMap<String, ScriptStatistics>(statistics);
+	}
 
 	public Object runScript(Context context, Scriptable scope, String relativePath)
 		throws ClassNotFoundException
 	{
-		String scriptClassName = getScriptClassName(relativePath);
-		if (scripts.containsKey(scriptClassName)) {
-			TiScript script = scripts.get(scriptClassName);
-			script.context = context;
-			script.scope = scope;
-			return executeScript(script);
+		if (scriptIndex != null) {
+			Script script = scriptIndex.createScript(relativePath);
+			if (script != null) {
+				return executeScript(context, scope, script, relativePath);
+			}
 		}
 
-		Class<?> scriptClass = Class.forName(scriptClassName);
+		String scriptClassName = getScriptClassName(relativePath);
+		Class<?> scriptClass = scriptClasses.get(scriptClassName);
+		if (scriptClass == null) {
+			scriptClass = Class.forName(scriptClassName);
+			scriptClasses.put(scriptClassName, scriptClass);
+		}
 		return runScript(context, scope, scriptClass);
 	}
 
 	public Object runScript(Context context, Scriptable scope, Class<?> scriptClass)
 	{
-		TiScript script = new TiScript();
-		script.context = context;
-		script.scope = scope;
-		script.name = scriptClass.getName();
-
 		try {
-			Method mainMethod = scriptClass.getMethod("main", String[].class);
-			if (mainMethod != null) {
-				// The generated class will delegate back to us in our static "main"
-				scripts.put(script.name, script);
-				mainMethod.invoke(null, new Object[] { new String[] { script.name } });
-				Object returnValue = script.returnValue;
-				script.returnValue = null;
-				return returnValue;
-			}
-		} catch (SecurityException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IllegalArgumentException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (NoSuchMethodException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Script script = (Script) scriptClass.newInstance();
+			return executeScript(context, scope, script, scriptClass.getName());
+		} catch (ClassCastException e) {
+			Log.e(TAG, "Class " + scriptClass.getName() + " isn't a compiled script", e);
 		} catch (IllegalAccessException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (InvocationTargetException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Log.e(TAG, "Couldn't access constructor of script " + scriptClass.getName(), e);
+		} catch (InstantiationException e) {
+			Log.e(TAG, "Couldn't instantiate script " + scriptClass.getName(), e);
 		}
 		return ScriptableObject.NOT_FOUND;
 	}
@@ -6,15 +6,22 @@ import java.util.HashMap;
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
+import org.appcelerator.titanium.util.TiLruCache;
 
 public abstract class TiStylesheet {
 	private static final String TAG = "TiStylesheet";
 	private static final boolean DBG = TiConfig.DEBUG;
+	private static final int MAX_CACHED_STYLES = 256;
 	
 	protected final HashMap<String,HashMap<String,KrollDict>> classesMap;
 	protected final HashMap<String,HashMap<String,KrollDict>> idsMap;
 	protected final HashMap<String,HashMap<String,HashMap<String,KrollDict>>> classesDensityMap;
 	protected final HashMap<String,HashMap<String,HashMap<String,KrollDict>>> idsDensityMap;
+
+	// Merged styles by basename, density, id and classes, so a combination is merged once
+	// however many views use it. The maps above must not change once the concrete
+	// implementation has filled them.
+	private final TiLruCache<String, KrollDict> mergedStyles = new TiLruCache<String, KrollDict>(MAX_CACHED_STYLES);
 	
 	// The concrete implementation fills these
 	public TiStylesheet() {
@@ -33,12 +40,37 @@ public abstract class TiStylesheet {
 		}
 	}
 	
+	/**
+	 * @return a new dictionary with the style for a view, which the caller is free to change
+	 */
 	public final KrollDict getStylesheet(String objectId, Collection<String> classes, String density, String basename)
 	{
 		if (DBG) {
 			Log.d(TAG, "getStylesheet id: "+objectId+", classes: "+classes+", density: " + density + ", basename: " + basename);
 		}
-		
+
+		// class order matters, later classes win
+		StringBuilder key = new StringBuilder(64);
+		key.append(basename).append('\n').append(density).append('\n').append(objectId);
+		for (String clazz : classes) {
+			key.append('\n').append(clazz);
+		}
+		String styleKey = key.toString();
+
+		KrollDict style;
+		style = mergedStyles.get(styleKey);
+		if (style == null) {
+			style = mergeStylesheet(objectId, classes, density, basename);
+			mergedStyles.put(styleKey, style);
+		}
+		if (style.isEmpty()) {
+			return new KrollDict();
+		}
+		return new KrollDict(style);
+	}
+
+	private KrollDict mergeStylesheet(String objectId, Collection<String> classes, String density, String basename)
+	{
 		KrollDict result = new KrollDict();
 		if (classesMap != null)
 		{
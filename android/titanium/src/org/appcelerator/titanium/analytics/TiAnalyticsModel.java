@@ -6,6 +6,8 @@
  */
 package org.appcelerator.titanium.analytics;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 
 import org.appcelerator.titanium.util.Log;
@@ -280,6 +282,89 @@ public class TiAnalyticsModel extends SQLiteOpenHelper{
 		return result;
 	}
 
+	/**
+	 * Streams up to <code>limit</code> events straight from the database cursor into
+	 * <code>out</code> as a JSON array, without materializing intermediate JSON objects.
+	 * @return the ids of the events written, so they can be deleted once delivered
+	 */
+	public int[] writeEventsAsJSON(int limit, Writer out) throws IOException
+	{
+		int[] ids = new int[limit];
+		int count = 0;
+
+		SQLiteDatabase db = null;
+		Cursor c = null;
+		try {
+			db = getReadableDatabase();
+
+			String sql =
+				"select _id, EventId, Type, Event, Timestamp, MID, SID, AppGUID, isJSON, Payload from Events " +
+				" order by 1 limit " +
+				limit
+				;
+
+			c = db.rawQuery(sql, null);
+
+			out.write('[');
+			while(c.moveToNext()) {
+				int seq = c.getInt(0);
+				if (count > 0) {
+					out.write(',');
+				}
+				out.write("{\"seq\":");
+				out.write(Integer.toString(seq));
+				out.write(",\"ver\":\"2\"");
+				writeField(out, "id", c.getString(1));
+				writeField(out, "type", c.getString(2));
+				writeField(out, "event", c.getString(3));
+				writeField(out, "ts", c.getString(4));
+				writeField(out, "mid", c.getString(5));
+				writeField(out, "sid", c.getString(6));
+				writeField(out, "aguid", c.getString(7));
+				out.write(",\"data\":");
+				String payload = c.getString(9);
+				// JSON payloads were produced by JSONObject.toString() when queued, so they can be copied verbatim
+				if (c.getInt(8) == 1 && payload != null && payload.length() > 0) {
+					out.write(payload);
+				} else {
+					out.write(payload == null ? "null" : JSONObject.quote(payload));
+				}
+				out.write('}');
+
+				// ids are kept even on bad records to prevent unrestrained growth
+				// and a queue blocked by bad records.
+				ids[count++] = seq;
+			}
+			out.write(']');
+			out.write('\n');
+		} catch (SQLException e) {
+			// a partially written array can't be sent, let the caller treat it as a failed batch
+			throw new IOException("Error streaming events to send as JSON: " + e.getMessage());
+		} finally {
+			if (c != null) {
+				c.close();
+			}
+			if (db != null) {
+				db.close();
+			}
+		}
+
+		if (count == ids.length) {
+			return ids;
+		}
+		int[] result = new int[count];
+		System.arraycopy(ids, 0, result, 0, count);
+		return result;
+	}
+
+	private static void writeField(Writer out, String name, String value) throws IOException
+	{
+		out.write(",\"");
+		out.write(name);
+		out.write("\":");
+		out.write(value == null ? "null" : JSONObject.quote(value));
+	}
+
 	public boolean needsEnrollEvent() {
 		boolean result = false;
 
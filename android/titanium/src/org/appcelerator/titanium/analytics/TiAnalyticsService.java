@@ -6,22 +6,13 @@
  */
 package org.appcelerator.titanium.analytics;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
+import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.util.Log;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import android.app.Service;
 import android.content.Context;
@@ -29,25 +20,28 @@ import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.IBinder;
+import android.telephony.TelephonyManager;
 
 public class TiAnalyticsService extends Service
 {
 	private final static String LCAT = "TiAnalyticsSvc";
 
-	private final static int BUCKET_SIZE_FAST_NETWORK = 10;
-	@SuppressWarnings("unused")
-	private final static int BUCKET_SIZE_SLOW_NETWORK = 5;
-
 	private final static String ANALYTICS_URL = "https://api.appcelerator.net/p/v2/mobile-track";
+	private final static String PROPERTY_ANALYTICS_URL = "ti.android.analytics.url";
+
+	// give up on a run after this many consecutive failures, the next trigger starts over
+	private final static int MAX_ATTEMPTS = 5;
+
+	private static AtomicBoolean sending = new AtomicBoolean(false);
+	private static final Object sendingLock = new Object();
+	// the newest start the service has been sent, stopped once the send in progress is done
+	private int lastStartId;
 
-	private static AtomicBoolean sending;
+	// a single long lived worker serves every trigger instead of a thread per send
+	private static ExecutorService worker;
+	private static TiAnalyticsUploader uploader;
 
 	private ConnectivityManager connectivityManager;
-	public TiAnalyticsService() {
-		if (sending == null) {
-			this.sending = new AtomicBoolean(false);
-		}
-	}
 
 	@Override
 	public void onCreate()
@@ -65,129 +59,130 @@ public class TiAnalyticsService extends Service
 	}
 
 	@Override
-	public void onStart(Intent intent, final int startId) {
+	public void onStart(Intent intent, int startId) {
 		super.onStart(intent, startId);
 
-		if (!sending.compareAndSet(false, true)) {
-			Log.i(LCAT, "Send already in progress, skipping intent");
+		synchronized (sendingLock) {
+			lastStartId = startId;
+			if (!sending.compareAndSet(false, true)) {
+				// the send in progress stops the service for this start too
+				Log.i(LCAT, "Send already in progress, skipping intent");
+				return;
+			}
 		}
 
-		final TiAnalyticsService self = this;
-
-		Thread t = new Thread(new Runnable(){
+		final Context context = getApplicationContext();
+		final ConnectivityManager cm = connectivityManager;
+		getWorker().execute(new Runnable(){
 
 			public void run() {
 				Log.w(LCAT, "Analytics Service Started");
 				try {
-
-					if (connectivityManager == null) {
+					if (cm == null) {
 						Log.w(LCAT, "Connectivity manager not available.");
-						stopSelf(startId);
 						return;
 					}
-					TiAnalyticsModel model = new TiAnalyticsModel(self);
+					TiAnalyticsModel model = new TiAnalyticsModel(context);
 					if (!model.hasEvents()) {
 						Log.i(LCAT, "No events to send.");
-						stopSelf(startId);
 						return;
 					}
 
+					TiAnalyticsUploader uploader = getUploader(context);
+					int attempts = 0;
 					while(model.hasEvents()) {
-						if(canSend())
-						{
-							HashMap<Integer,JSONObject> events = model.getEventsAsJSON(BUCKET_SIZE_FAST_NETWORK);
-
-							int len = events.size();
-							int[] eventIds = new int[len];
-							Iterator<Integer> keys = events.keySet().iterator();
-
-							JSONArray records = new JSONArray();
-							// build up data to send and records to delete on success
-							for(int i = 0; i < len; i++) {
-								int id = keys.next();
-								// ids are kept even on error JSON to prevent unrestrained growth
-								// and a queue blocked by bad records.
-								eventIds[i] = id;
-								records.put(events.get(id));
-							}
-							boolean deleteEvents = true;
-							if (records.length() > 0) {
-								String jsonData = records.toString() + "\n";
-
-								Log.i(LCAT, "Sending " + records.length() + " analytics events.");
-						   		try {
-							   		HttpPost httpPost = new HttpPost(ANALYTICS_URL);
-							   		StringEntity entity = new StringEntity(jsonData);
-							   		entity.setContentType("text/json");
-							   		httpPost.setEntity(entity);
-
-							   		HttpParams httpParams = new BasicHttpParams();
-							   		HttpConnectionParams.setConnectionTimeout(httpParams, 5000); //TODO use property
-							   		//HttpConnectionParams.setSoTimeout(httpParams, 15000); //TODO use property
-							   		HttpClient client = new DefaultHttpClient(httpParams);
-
-							   		ResponseHandler<String> responseHandler = new BasicResponseHandler();
-							   		client.getParams().setBooleanParameter("http.protocol.expect-continue", false);
-
-						   			@SuppressWarnings("unused")
-									String response = client.execute(httpPost, responseHandler);
-						   		} catch (Throwable t) {
-						   			Log.e(LCAT, "Error posting events: " + t.getMessage(), t);
-						   			deleteEvents = false;
-						   			records = null;
-						   			break;
-						   		}
-							}
-
-							records = null;
-
-							if (deleteEvents) {
-								model.deleteEvents(eventIds);
-							}
-
-							events.clear();
-						} else {
+						int networkType = getNetworkType(cm);
+						if (networkType < 0) {
 							Log.i(LCAT, "Network unavailable, can't send analytics");
 							//TODO reset alarm?
 							break;
 						}
-					}
 
-					Log.w(LCAT, "Stopping Analytics Service");
-					stopSelf(startId);
+						if (uploader.sendBatch(model, networkType)) {
+							attempts = 0;
+						} else {
+							if (++attempts >= MAX_ATTEMPTS) {
+								Log.w(LCAT, "Giving up after " + MAX_ATTEMPTS + " failed attempts");
+								break;
+							}
+							long delay = uploader.getBackoffDelay();
+							Log.i(LCAT, "Retrying analytics upload in " + delay + "ms");
+							Thread.sleep(delay);
+						}
+					}
+				} catch (InterruptedException e) {
+					Log.w(LCAT, "Analytics upload interrupted");
 				} catch (Throwable t) {
 					Log.e(LCAT, "Unhandle exception in analytics thread: ", t);
-					stopSelf(startId);
 				} finally {
-					if (!sending.compareAndSet(true, false)) {
-						Log.w(LCAT, "Expected to be in a sending state. Sending was already false.");
+					Log.w(LCAT, "Stopping Analytics Service");
+					synchronized (sendingLock) {
+						if (!sending.compareAndSet(true, false)) {
+							Log.w(LCAT, "Expected to be in a sending state. Sending was already false.");
+						}
+						stopSelf(lastStartId);
 					}
 				}
 			}
 		});
-		t.setPriority(Thread.MIN_PRIORITY);
-		t.start();
 	}
 
-	private boolean canSend() {
-		boolean result = false;
+	private static synchronized ExecutorService getWorker()
+	{
+		if (worker == null) {
+			worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "TiAnalyticsWorker");
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return worker;
+	}
 
-		//int type = netInfo.getType();
-		//int subType = netInfo.getSubType();
-		// TODO change defaults based on implied speed of network
+	private static synchronized TiAnalyticsUploader getUploader(Context context)
+	{
+		if (uploader == null) {
+			String url = ANALYTICS_URL;
+			if (context instanceof TiApplication) {
+				url = ((TiApplication) context).getSystemProperties().getString(PROPERTY_ANALYTICS_URL, ANALYTICS_URL);
+			}
+			uploader = new TiAnalyticsUploader(url);
+		}
+		return uploader;
+	}
 
+	/**
+	 * @return one of the TiAnalyticsUploader network types, or -1 when events can't be sent.
+	 */
+	private int getNetworkType(ConnectivityManager cm)
+	{
 		NetworkInfo netInfo = null;
 		try {
-			netInfo = connectivityManager.getActiveNetworkInfo();
+			netInfo = cm.getActiveNetworkInfo();
 		} catch (SecurityException e) {
 			Log.w(LCAT, "Connectivity permissions have been removed from AndroidManifest.xml: " + e.getMessage());
 		}
-		if (netInfo != null && netInfo.isConnected() && !netInfo.isRoaming()) {
-			result = true;
+		if (netInfo == null || !netInfo.isConnected() || netInfo.isRoaming()) {
+			return -1;
 		}
 
-		return result;
+		if (netInfo.getType() == ConnectivityManager.TYPE_WIFI) {
+			return TiAnalyticsUploader.NETWORK_WIFI;
+		}
+		switch (netInfo.getSubtype()) {
+			case TelephonyManager.NETWORK_TYPE_GPRS:
+			case TelephonyManager.NETWORK_TYPE_EDGE:
+			case TelephonyManager.NETWORK_TYPE_CDMA:
+			case TelephonyManager.NETWORK_TYPE_1xRTT:
+				return TiAnalyticsUploader.NETWORK_SLOW;
+			default:
+				return TiAnalyticsUploader.NETWORK_FAST;
+		}
 	}
+
 	@Override
 	public IBinder onBind(Intent intent) {
 		return null; // Not handling
@@ -0,0 +1,179 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2009-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiConfig;
+
+/**
+ * Uploads queued analytics events in gzip compressed batches.
+ *
+ * Events are written from the model's cursor through a gzip stream into a buffer, which
+ * is sent with a Content-Length. A batch is at most a few dozen events, so the compressed
+ * body stays small, and the ids of the events in it are known before anything is sent.
+ * The batch size adapts to the network type and shrinks after failures, and failed
+ * uploads are retried with an exponential backoff plus random jitter.
+ *
+ * The target URL is supplied by the caller, so the uploader can be pointed at a
+ * local HTTP server for testing.
+ */
+public class TiAnalyticsUploader
+{
+	private static final String LCAT = "TiAnalyticsUploader";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	public static final int NETWORK_SLOW = 0;
+	public static final int NETWORK_FAST = 1;
+	public static final int NETWORK_WIFI = 2;
+
+	private static final int[] MAX_BATCH_SIZE = { 5, 10, 50 };
+
+	private static final int CONNECTION_TIMEOUT = 5000;
+	private static final int SOCKET_TIMEOUT = 15000;
+
+	private static final long BACKOFF_BASE = 2000;
+	private static final long BACKOFF_MAX = 5 * 60 * 1000;
+
+	private String url;
+	private HttpClient client;
+	private Random random = new Random();
+
+	private int batchSize = MAX_BATCH_SIZE[NETWORK_FAST];
+	private int failures = 0;
+
+	public TiAnalyticsUploader(String url)
+	{
+		this.url = url;
+
+		HttpParams httpParams = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(httpParams, CONNECTION_TIMEOUT);
+		HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT);
+		client = new DefaultHttpClient(httpParams);
+		client.getParams().setBooleanParameter("http.protocol.expect-continue", false);
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	/**
+	 * @return the number of events to send in the next batch for the given network type.
+	 * The size doubles after each successful upload up to the network's maximum and
+	 * is halved after each failure.
+	 */
+	public int getBatchSize(int networkType)
+	{
+		int max = MAX_BATCH_SIZE[Math.max(NETWORK_SLOW, Math.min(NETWORK_WIFI, networkType))];
+		return Math.max(1, Math.min(batchSize, max));
+	}
+
+	/**
+	 * @return the number of consecutive failed uploads.
+	 */
+	public int getFailureCount()
+	{
+		return failures;
+	}
+
+	/**
+	 * @return the delay in milliseconds to wait before retrying after the current number
+	 * of consecutive failures: a random value between half and all of the exponential delay.
+	 */
+	public long getBackoffDelay()
+	{
+		if (failures == 0) {
+			return 0;
+		}
+		long delay = BACKOFF_BASE << Math.min(failures - 1, 16);
+		delay = Math.min(delay, BACKOFF_MAX);
+		long half = delay / 2;
+		return half + (long) (random.nextDouble() * half);
+	}
+
+	/**
+	 * Sends the next batch of events from the model and deletes them once the server accepted them.
+	 * @return true if the batch was delivered (or there was nothing to send), false on failure.
+	 */
+	public boolean sendBatch(TiAnalyticsModel model, int networkType)
+	{
+		if (!model.hasEvents()) {
+			return true;
+		}
+
+		int limit = getBatchSize(networkType);
+		if (DBG) {
+			Log.d(LCAT, "Sending up to " + limit + " analytics events");
+		}
+		int[] eventIds;
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			Writer out = new OutputStreamWriter(new GZIPOutputStream(body), "UTF-8");
+			eventIds = model.writeEventsAsJSON(limit, out);
+			out.close();
+
+			ByteArrayEntity entity = new ByteArrayEntity(body.toByteArray());
+			entity.setContentType("text/json");
+			entity.setContentEncoding("gzip");
+			HttpPost httpPost = new HttpPost(url);
+			httpPost.setEntity(entity);
+
+			HttpResponse response = client.execute(httpPost);
+			int status = response.getStatusLine().getStatusCode();
+			if (response.getEntity() != null) {
+				response.getEntity().consumeContent();
+			}
+			if (status < 200 || status >= 300) {
+				Log.w(LCAT, "Error posting events, server returned status " + status);
+				onFailure();
+				return false;
+			}
+		} catch (Throwable t) {
+			Log.e(LCAT, "Error posting events: " + t.getMessage(), t);
+			onFailure();
+			return false;
+		}
+
+		model.deleteEvents(eventIds);
+		onSuccess();
+		return true;
+	}
+
+	/**
+	 * Releases the underlying connections.
+	 */
+	public void shutdown()
+	{
+		client.getConnectionManager().shutdown();
+	}
+
+	private void onSuccess()
+	{
+		failures = 0;
+		batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE[NETWORK_WIFI]);
+	}
+
+	private void onFailure()
+	{
+		failures++;
+		batchSize = Math.max(1, batchSize / 2);
+	}
+}
@@ -156,6 +156,14 @@ public class KrollCallback extends KrollMethod implements KrollConvertable
 		return KrollProxy.UNDEFINED;
 	}
 
+	/**
+	 * Runs <code>runnable</code> on this callback's Kroll thread after <code>delay</code> milliseconds.
+	 */
+	public void post(Runnable runnable, long delay) {
+		KrollContext kroll = this.kroll == null ? TiContext.getCurrentTiContext().getKrollContext() : this.kroll;
+		kroll.getMessageQueue().getHandler().postDelayed(runnable, delay);
+	}
+
 	public void callAsync(final KrollInvocation invocation, final Object[] args, final boolean recycleInvocation) {
 		KrollContext kroll = getKrollContext(invocation);
 		// Force using the handler here, listeners should post after the top level has stopped blocking
@@ -185,6 +193,11 @@ public class KrollCallback extends KrollMethod implements KrollConvertable
 		return method.equals(kb.method);
 	}
 
+	@Override
+	public int hashCode() {
+		return method.hashCode();
+	}
+
 	public Object toJSFunction() {
 		return Context.javaToJS(method, kroll.getScope());
 	}
@@ -28,6 +28,7 @@ import org.appcelerator.titanium.util.TiFileHelper2;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.EcmaError;
 import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
@@ -100,6 +101,12 @@ public class KrollContext implements Handler.Callback
 			BufferedReader br = null;
 			Object result = Scriptable.NOT_FOUND;
 			try {
+				if (context.getOptimizationLevel() == -1) {
+					// interpreted scripts are compiled once and shared by all contexts
+					Script script = KrollScriptCache.getInstance().getScript(context, file, filename);
+					Log.d(LCAT, "Running evaluated script: " + filename);
+					return script.exec(context, scope);
+				}
 				br = new BufferedReader(new InputStreamReader(file.getInputStream()), 4000);
 				Log.d(LCAT, "Running evaluated script: " + filename);
 				result = context.evaluateReader(scope, br, filename, 1, null);
@@ -250,6 +257,14 @@ public class KrollContext implements Handler.Callback
 		return sourceUrl;
 	}
 
+	public void setSourceUrl(String sourceUrl)
+	{
+		this.sourceUrl = sourceUrl;
+		if (sourceUrl != null) {
+			thread.setName("kroll$" + krollThreadId + ": " + sourceUrl);
+		}
+	}
+
 	public int getKrollThreadId()
 	{
 		return krollThreadId;
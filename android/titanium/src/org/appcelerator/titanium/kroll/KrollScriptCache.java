@@ -0,0 +1,259 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.kroll;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.io.TiBaseFile;
+import org.appcelerator.titanium.util.Log;
+import org.appcelerator.titanium.util.TiConfig;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+/**
+ * A process-wide cache of interpreted scripts, shared by every KrollContext.
+ *
+ * When JS isn't precompiled (development and test builds), each evaluated file used to be
+ * parsed again by every context that included it. Scripts are now compiled once and
+ * keyed by their url and a digest of their source, so edits (e.g. through fastdev) are
+ * still picked up. Interpreted Rhino scripts hold no reference to a scope and re-wrap
+ * their regexp literals on each execution, so they can safely run in several contexts.
+ *
+ * When the <code>ti.android.scriptcache.persist</code> property is true, compiled
+ * scripts are also serialized to the application's cache directory so the next run
+ * of the app can skip parsing.
+ */
+public class KrollScriptCache
+{
+	private static final String LCAT = "KrollScriptCache";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	public static final String PROPERTY_PERSIST = "ti.android.scriptcache.persist";
+	private static final String CACHE_DIR = "ti-scripts";
+
+	private static KrollScriptCache _instance;
+
+	private static class CachedScript
+	{
+		String digest;
+		Script script;
+
+		CachedScript(String digest, Script script)
+		{
+			this.digest = digest;
+			this.script = script;
+		}
+	}
+
+	private ConcurrentHashMap<String, CachedScript> scripts = new ConcurrentHashMap<String, CachedScript>();
+	private AtomicInteger hits = new AtomicInteger();
+	private AtomicInteger misses = new AtomicInteger();
+	private File cacheDir;
+	private ExecutorService writer;
+
+	public static synchronized KrollScriptCache getInstance()
+	{
+		if (_instance == null) {
+			_instance = new KrollScriptCache();
+		}
+		return _instance;
+	}
+
+	private KrollScriptCache()
+	{
+		TiApplication app = TiApplication.getInstance();
+		if (app != null && app.getSystemProperties().getBool(PROPERTY_PERSIST, false)) {
+			cacheDir = new File(app.getCacheDir(), CACHE_DIR);
+			if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+				Log.w(LCAT, "Couldn't create script cache directory, scripts won't be persisted");
+				cacheDir = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the compiled script for a file, compiling it if it isn't cached or if its
+	 * source changed. The context must be in interpreted mode (optimization level -1).
+	 */
+	public Script getScript(Context context, TiBaseFile file, String filename)
+		throws IOException
+	{
+		byte[] source = readFully(file.getInputStream());
+		String digest = digest(source);
+
+		CachedScript cached = scripts.get(filename);
+		if (cached != null && cached.digest.equals(digest)) {
+			hits.incrementAndGet();
+			return cached.script;
+		}
+
+		Script script = null;
+		if (cacheDir != null) {
+			script = readPersisted(context, filename, digest);
+		}
+		if (script == null) {
+			misses.incrementAndGet();
+			long start = System.currentTimeMillis();
+			script = context.compileString(new String(source), filename, 1, null);
+			if (DBG) {
+				Log.d(LCAT, "Compiled " + filename + " in " + (System.currentTimeMillis() - start) + "ms");
+			}
+			if (cacheDir != null) {
+				persist(context.getImplementationVersion(), filename, digest, script);
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+
+		scripts.put(filename, new CachedScript(digest, script));
+		return script;
+	}
+
+	public int getHitCount()
+	{
+		return hits.get();
+	}
+
+	public int getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Drops every script held in memory, persisted scripts are kept.
+	 */
+	public void clear()
+	{
+		scripts.clear();
+	}
+
+	private Script readPersisted(Context context, String filename, String digest)
+	{
+		File file = new File(cacheDir, digest(filename.getBytes()));
+		if (!file.exists()) {
+			return null;
+		}
+
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+			if (!context.getImplementationVersion().equals(in.readUTF()) || !digest.equals(in.readUTF())) {
+				return null;
+			}
+			Script script = (Script) in.readObject();
+			if (DBG) {
+				Log.d(LCAT, "Loaded persisted script for " + filename);
+			}
+			return script;
+		} catch (Exception e) {
+			// stale or corrupt entry, it'll be replaced once recompiled
+			Log.w(LCAT, "Couldn't read persisted script for " + filename + ": " + e.getMessage());
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	private void persist(final String version, final String filename, final String digest, final Script script)
+	{
+		getWriter().execute(new Runnable() {
+			public void run()
+			{
+				File file = new File(cacheDir, digest(filename.getBytes()));
+				ObjectOutputStream out = null;
+				try {
+					out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file), 8192));
+					out.writeUTF(version);
+					out.writeUTF(digest);
+					out.writeObject(script);
+				} catch (IOException e) {
+					Log.w(LCAT, "Couldn't persist script for " + filename + ": " + e.getMessage());
+					file.delete();
+				} finally {
+					if (out != null) {
+						try {
+							out.close();
+						} catch (IOException e) {
+							// Ignore
+						}
+					}
+				}
+			}
+		});
+	}
+
+	private synchronized ExecutorService getWriter()
+	{
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "KrollScriptCache");
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return writer;
+	}
+
+	private static byte[] readFully(InputStream in)
+		throws IOException
+	{
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String digest(byte[] data)
+	{
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte[] hash = md.digest(data);
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// MD5 is always available on Android
+			throw new RuntimeException(e);
+		}
+	}
+}
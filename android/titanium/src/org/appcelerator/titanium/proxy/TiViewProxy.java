@@ -13,6 +13,7 @@ import java.util.TreeSet;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollProxy;
+import org.appcelerator.kroll.KrollScriptableDict;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
@@ -78,6 +79,8 @@ public abstract class TiViewProxy extends KrollProxy implements Handler.Callback
 
 	public TiViewProxy(TiContext tiContext) {
 		super(tiContext);
+		// a touchmove arrives for every pointer sample, listeners only need the latest one
+		eventManager.setCoalesced(TiC.EVENT_TOUCH_MOVE, true);
 	}
 
 	@Override
@@ -96,6 +99,10 @@ public abstract class TiViewProxy extends KrollProxy implements Handler.Callback
 						try {
 							int resid = TiRHelper.getResource("string." + langKey);
 							if (resid != 0) {
+								if (options instanceof KrollScriptableDict) {
+									// puts would write through to the JS creation object
+									options = new KrollDict(options);
+								}
 								options.put(key, activity.getString(resid));
 							}
 						}
@@ -157,7 +164,7 @@ public abstract class TiViewProxy extends KrollProxy implements Handler.Callback
 		if (DBG) {
 			Log.d(LCAT, "trying to get stylesheet for base:" + baseUrl + ",classes:" + styleClasses + ",id:" + viewId + ",dict:" + dict);
 		}
-		if (dict != null) {
+		if (dict != null && !dict.isEmpty()) {
 			// merge in our stylesheet details to the passed in dictionary
 			// our passed in dictionary takes precedence over the stylesheet
 			dict.putAll(options);
@@ -597,6 +604,21 @@ public abstract class TiViewProxy extends KrollProxy implements Handler.Callback
 		return handled;
 	}
 
+	/**
+	 * @return whether this view or any of its ancestors has a listener for the event, since
+	 * {@link #fireEvent(String, KrollDict)} bubbles events up to the parents
+	 */
+	public boolean hierarchyHasListener(String eventName) {
+		TiViewProxy proxy = this;
+		while (proxy != null) {
+			if (proxy.hasListeners(eventName)) {
+				return true;
+			}
+			proxy = proxy.getParent();
+		}
+		return false;
+	}
+
 	@Kroll.getProperty @Kroll.method
 	public TiViewProxy getParent() {
 		if (this.parent == null) { return null; }
@@ -136,6 +136,18 @@ public class TiAnimationBuilder
 		this.callback = callback;
 	}
 
+	/**
+	 * Starts this animation on view with {@link TiAnimator}.
+	 *
+	 * @return false if view can't be animated that way, render() it instead
+	 */
+	public boolean start(TiViewProxy viewProxy, View view)
+	{
+		this.view = view;
+		this.viewProxy = viewProxy;
+		return TiAnimator.getInstance().start(this, viewProxy, view);
+	}
+
 	public AnimationSet render(TiViewProxy viewProxy, View view)
 	{
 		ViewParent parent = view.getParent();
@@ -0,0 +1,456 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.util.ArrayList;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.titanium.TiC;
+import org.appcelerator.titanium.TiDimension;
+import org.appcelerator.titanium.proxy.TiViewProxy;
+import org.appcelerator.titanium.view.TiCompositeLayout;
+import org.appcelerator.titanium.view.TiUIView;
+
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Runs the animations of views inside a TiCompositeLayout from a single frame callback.
+ *
+ * Rather than attaching an AnimationSet to each view, a frame sets the opacity and
+ * transform of every running view on its layout params, which the parent layout
+ * applies when it draws. Views that only move, fade or transform are drawn from their
+ * drawing cache while they animate. When an animation ends, a view that only moved is
+ * placed at its new position without a layout pass where the parent allows it.
+ *
+ * Only used on the UI thread, apart from cancel().
+ */
+public class TiAnimator
+{
+	private static final String LCAT = "TiAnimator";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	protected static final int FRAME_INTERVAL = 16;
+	// how long a run waits for its view to be shown before it's dropped
+	protected static final int ATTACH_TIMEOUT = 5000;
+
+	protected static TiAnimator _instance;
+
+	protected static class Run
+	{
+		TiAnimationBuilder builder;
+		TiViewProxy viewProxy;
+		View view;
+		TiCompositeLayout parent;
+		TiCompositeLayout.LayoutParams params;
+
+		long startTime;
+		long duration;
+		int repeatCount;
+		boolean autoreverse;
+		boolean started;
+		boolean cached;
+		// whether the view has been in a window since the run was queued
+		boolean attached;
+		long queuedTime;
+
+		// what the params held before the animation, kept under its transform
+		float baseAlpha;
+		Matrix baseMatrix;
+
+		boolean hasAlpha;
+		float fromAlpha, toAlpha;
+		boolean hasTranslation;
+		int dx, dy;
+		boolean hasSize;
+		int fromWidth, fromHeight, toWidth, toHeight;
+		int viewWidth, viewHeight;
+		Matrix frameMatrix;
+
+		int frames, droppedFrames;
+	}
+
+	protected Handler handler;
+	protected ArrayList<Run> runs = new ArrayList<Run>();
+	protected Interpolator interpolator = new AccelerateDecelerateInterpolator();
+	private ArrayList<TiCompositeLayout> dirtyParents = new ArrayList<TiCompositeLayout>();
+	private long lastFrameTime;
+	private boolean scheduled;
+
+	private Runnable frame = new Runnable() {
+		public void run() {
+			doFrame();
+		}
+	};
+
+	public static TiAnimator getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiAnimator();
+		}
+		return _instance;
+	}
+
+	protected TiAnimator()
+	{
+		handler = new Handler(Looper.getMainLooper());
+	}
+
+	/**
+	 * Starts the animation described by builder on view.
+	 *
+	 * @return false if view isn't in a TiCompositeLayout, in which case the builder
+	 * should render a regular Animation instead
+	 */
+	public boolean start(TiAnimationBuilder builder, TiViewProxy viewProxy, View view)
+	{
+		if (!(view.getParent() instanceof TiCompositeLayout)
+			|| !(view.getLayoutParams() instanceof TiCompositeLayout.LayoutParams)) {
+			return false;
+		}
+		cancel(view);
+		// a regular animation would hide the transform we draw
+		view.clearAnimation();
+
+		Run run = new Run();
+		run.builder = builder;
+		run.viewProxy = viewProxy;
+		run.view = view;
+		run.parent = (TiCompositeLayout) view.getParent();
+		run.params = (TiCompositeLayout.LayoutParams) view.getLayoutParams();
+		run.baseAlpha = run.params.animatedAlpha;
+		run.baseMatrix = run.params.animatedMatrix;
+		run.viewWidth = view.getWidth();
+		run.viewHeight = view.getHeight();
+
+		long now = SystemClock.uptimeMillis();
+		run.queuedTime = now;
+		run.startTime = now + (builder.delay != null ? builder.delay.longValue() : 0);
+		run.duration = builder.duration != null ? Math.max(0, builder.duration.longValue()) : 0;
+		run.repeatCount = builder.repeat != null ? builder.repeat.intValue() : 0;
+		run.autoreverse = builder.autoreverse != null && builder.autoreverse;
+
+		if (builder.toOpacity != null) {
+			if (viewProxy.hasProperty(TiC.PROPERTY_OPACITY)) {
+				builder.fromOpacity = TiConvert.toDouble(viewProxy.getProperty(TiC.PROPERTY_OPACITY));
+				if (builder.fromOpacity > 0 && builder.fromOpacity < 1) {
+					// the animated alpha stands in for the opacity from here on
+					TiUIView uiView = viewProxy.getView(null);
+					uiView.setOpacity(1);
+				}
+			} else {
+				builder.fromOpacity = 1.0 - builder.toOpacity;
+			}
+			run.hasAlpha = true;
+			run.fromAlpha = builder.fromOpacity.floatValue();
+			run.toAlpha = builder.toOpacity.floatValue();
+		}
+
+		if (builder.top != null || builder.bottom != null || builder.left != null || builder.right != null
+			|| builder.centerX != null || builder.centerY != null) {
+			computeTranslation(run);
+			run.hasTranslation = true;
+		}
+
+		if (builder.tdm == null && (builder.width != null || builder.height != null)) {
+			run.hasSize = true;
+			run.fromWidth = view.getMeasuredWidth();
+			run.fromHeight = view.getMeasuredHeight();
+			run.toWidth = builder.width != null ? builder.width : run.fromWidth;
+			run.toHeight = builder.height != null ? builder.height : run.fromHeight;
+		}
+
+		if (builder.tdm != null || run.hasTranslation) {
+			run.frameMatrix = new Matrix();
+		}
+
+		if (DBG) {
+			Log.d(LCAT, "animate " + viewProxy + " alpha: " + run.hasAlpha + ", matrix: " + (builder.tdm != null)
+				+ ", translate: " + run.dx + "," + run.dy + ", size: " + run.hasSize);
+		}
+		runs.add(run);
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Stops the animation of view, if it has one, without completing it.
+	 */
+	public void cancel(final View view)
+	{
+		if (Looper.myLooper() != Looper.getMainLooper()) {
+			handler.post(new Runnable() {
+				public void run() {
+					cancel(view);
+				}
+			});
+			return;
+		}
+		for (int i = 0; i < runs.size(); i++) {
+			Run run = runs.get(i);
+			if (run.view == view) {
+				runs.remove(i);
+				run.params.animatedAlpha = run.baseAlpha;
+				run.params.animatedMatrix = run.baseMatrix;
+				stopped(run);
+				run.parent.invalidate();
+				return;
+			}
+		}
+	}
+
+	private void computeTranslation(Run run)
+	{
+		TiAnimationBuilder builder = run.builder;
+		View view = run.view;
+		TiDimension optionTop = null, optionBottom = null;
+		TiDimension optionLeft = null, optionRight = null;
+		TiDimension optionCenterX = null, optionCenterY = null;
+
+		if (builder.top != null) {
+			optionTop = new TiDimension(builder.top, TiDimension.TYPE_TOP);
+		}
+		if (builder.bottom != null) {
+			optionBottom = new TiDimension(builder.bottom, TiDimension.TYPE_BOTTOM);
+		}
+		if (builder.left != null) {
+			optionLeft = new TiDimension(builder.left, TiDimension.TYPE_LEFT);
+		}
+		if (builder.right != null) {
+			optionRight = new TiDimension(builder.right, TiDimension.TYPE_RIGHT);
+		}
+		if (builder.centerX != null) {
+			optionCenterX = new TiDimension(builder.centerX, TiDimension.TYPE_CENTER_X);
+		}
+		if (builder.centerY != null) {
+			optionCenterY = new TiDimension(builder.centerY, TiDimension.TYPE_CENTER_Y);
+		}
+
+		int horizontal[] = new int[2];
+		int vertical[] = new int[2];
+		TiCompositeLayout parent = run.parent;
+		TiCompositeLayout.computePosition(parent, optionLeft, optionCenterX, optionRight,
+			view.getMeasuredWidth(), 0, parent.getMeasuredWidth(), horizontal);
+		TiCompositeLayout.computePosition(parent, optionTop, optionCenterY, optionBottom,
+			view.getMeasuredHeight(), 0, parent.getMeasuredHeight(), vertical);
+		run.dx = horizontal[0] - view.getLeft();
+		run.dy = vertical[0] - view.getTop();
+	}
+
+	private void schedule()
+	{
+		if (scheduled || runs.isEmpty()) {
+			return;
+		}
+		scheduled = true;
+		lastFrameTime = SystemClock.uptimeMillis();
+		handler.post(frame);
+	}
+
+	private void doFrame()
+	{
+		scheduled = false;
+		long now = SystemClock.uptimeMillis();
+		long delta = now - lastFrameTime;
+		// frames we should have drawn since the last one
+		int dropped = delta > FRAME_INTERVAL * 3 / 2 ? (int) (delta / FRAME_INTERVAL) - 1 : 0;
+		lastFrameTime = now;
+
+		for (int i = 0; i < runs.size(); i++) {
+			Run run = runs.get(i);
+			if (run.view.getParent() != run.parent) {
+				// removed from its parent, nothing left to animate
+				runs.remove(i--);
+				stopped(run);
+				continue;
+			}
+			if (run.view.getWindowToken() == null) {
+				if (run.attached || now - run.queuedTime > ATTACH_TIMEOUT) {
+					// its window went away (or never showed up), nothing will draw it again
+					runs.remove(i--);
+					stopped(run);
+					continue;
+				}
+				// not shown yet, the animation starts once it is
+				run.startTime += delta;
+				continue;
+			}
+			run.attached = true;
+			long elapsed = now - run.startTime;
+			if (elapsed < 0) {
+				continue;
+			}
+			if (!run.started) {
+				started(run);
+			} else {
+				run.droppedFrames += dropped;
+			}
+			run.frames++;
+			boolean done = step(run, elapsed);
+			if (!dirtyParents.contains(run.parent)) {
+				dirtyParents.add(run.parent);
+			}
+			if (done) {
+				runs.remove(i--);
+				finish(run);
+			}
+		}
+
+		for (int i = 0; i < dirtyParents.size(); i++) {
+			dirtyParents.get(i).invalidate();
+		}
+		dirtyParents.clear();
+
+		if (!runs.isEmpty()) {
+			scheduled = true;
+			long next = FRAME_INTERVAL - (SystemClock.uptimeMillis() - now);
+			handler.postDelayed(frame, Math.max(0, next));
+		}
+	}
+
+	private void started(Run run)
+	{
+		run.started = true;
+		// sizes change every frame, a cached bitmap would be rebuilt each time anyway
+		run.cached = !run.hasSize && !run.view.isDrawingCacheEnabled();
+		run.parent.setChildAnimating(run.view, true, run.cached);
+		if (run.builder.animationProxy != null) {
+			run.builder.animationProxy.fireEvent(TiC.EVENT_START, null);
+		}
+	}
+
+	private void stopped(Run run)
+	{
+		if (run.started) {
+			run.parent.setChildAnimating(run.view, false, run.cached);
+		}
+	}
+
+	/**
+	 * Applies the state of run at elapsed ms.
+	 *
+	 * @return true once run has finished
+	 */
+	private boolean step(Run run, long elapsed)
+	{
+		TiAnimationBuilder builder = run.builder;
+		TiCompositeLayout.LayoutParams params = run.params;
+
+		// opacity and transforms repeat, moves and resizes only run once
+		boolean repeatsDone;
+		float repeating;
+		long iteration = run.duration > 0 ? elapsed / run.duration : 0;
+		if (run.duration == 0) {
+			repeating = 1;
+			repeatsDone = true;
+		} else if (run.repeatCount >= 0 && iteration > run.repeatCount) {
+			iteration = run.repeatCount;
+			repeating = 1;
+			repeatsDone = true;
+		} else {
+			repeating = (float) (elapsed - iteration * run.duration) / run.duration;
+			repeatsDone = false;
+		}
+		if (run.autoreverse && iteration % 2 == 1) {
+			repeating = 1 - repeating;
+		}
+		boolean onceDone = elapsed >= run.duration;
+		float once = onceDone ? 1 : (float) elapsed / run.duration;
+
+		if (run.hasAlpha) {
+			float fraction = interpolator.getInterpolation(repeating);
+			params.animatedAlpha = run.fromAlpha + (run.toAlpha - run.fromAlpha) * fraction;
+		}
+
+		if (run.frameMatrix != null) {
+			Matrix matrix = run.frameMatrix;
+			if (builder.tdm != null) {
+				matrix.set(builder.tdm.interpolate(interpolator.getInterpolation(repeating),
+					run.viewWidth, run.viewHeight, builder.anchorX, builder.anchorY));
+			} else if (run.baseMatrix != null) {
+				matrix.set(run.baseMatrix);
+			} else {
+				matrix.reset();
+			}
+			if (run.hasTranslation) {
+				float fraction = interpolator.getInterpolation(once);
+				matrix.postTranslate(run.dx * fraction, run.dy * fraction);
+			}
+			params.animatedMatrix = matrix;
+		}
+
+		if (run.hasSize) {
+			int width = run.fromWidth + (int) Math.floor((run.toWidth - run.fromWidth) * once);
+			int height = run.fromHeight + (int) Math.floor((run.toHeight - run.fromHeight) * once);
+			if (width != params.width || height != params.height) {
+				params.width = width;
+				params.height = height;
+				params.optionWidth = new TiDimension(width, TiDimension.TYPE_WIDTH);
+				params.optionHeight = new TiDimension(height, TiDimension.TYPE_HEIGHT);
+				run.view.setLayoutParams(params);
+			}
+		}
+
+		boolean repeats = run.hasAlpha || builder.tdm != null;
+		boolean runsOnce = run.hasTranslation || run.hasSize;
+		return (!repeats || repeatsDone) && (!runsOnce || onceDone);
+	}
+
+	private void finish(Run run)
+	{
+		TiAnimationBuilder builder = run.builder;
+		TiCompositeLayout.LayoutParams params = run.params;
+		View view = run.view;
+		stopped(run);
+
+		// what's left drawn on top of the layout
+		if (builder.tdm != null) {
+			params.animatedMatrix = builder.tdm.interpolate(run.autoreverse && run.repeatCount % 2 == 1 ? 0 : 1,
+				run.viewWidth, run.viewHeight, builder.anchorX, builder.anchorY);
+		} else {
+			params.animatedMatrix = run.baseMatrix;
+		}
+
+		if (run.hasTranslation || run.hasSize) {
+			TiConvert.fillLayout(builder.options, params);
+			if (run.hasSize || !run.parent.layoutChildInPlace(view)) {
+				view.setLayoutParams(params);
+			}
+		}
+
+		if (run.hasAlpha) {
+			if (run.toAlpha == 0) {
+				view.setVisibility(View.INVISIBLE);
+				params.animatedAlpha = 1;
+			} else if (run.toAlpha == 1) {
+				view.setVisibility(View.VISIBLE);
+				params.animatedAlpha = 1;
+			} else {
+				params.animatedAlpha = run.toAlpha;
+			}
+		}
+		run.parent.invalidate();
+
+		if (DBG) {
+			Log.d(LCAT, "finished " + run.viewProxy + " in " + run.frames + " frames, " + run.droppedFrames + " dropped");
+		}
+		if (builder.callback != null) {
+			builder.callback.callAsync();
+		}
+		if (builder.animationProxy != null) {
+			KrollDict data = new KrollDict();
+			data.put("frames", run.frames);
+			data.put("droppedFrames", run.droppedFrames);
+			builder.animationProxy.fireEvent(TiC.EVENT_COMPLETE, data);
+		}
+	}
+}
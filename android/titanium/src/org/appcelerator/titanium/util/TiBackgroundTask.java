@@ -0,0 +1,82 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Handler;
+
+/**
+ * Work that computes a result off the UI thread and hands it back through a Handler.
+ * All tasks share one background thread, so they should be short and run one at a time;
+ * anything that blocks on I/O belongs somewhere else.
+ *
+ * The result is delivered even if the caller has moved on by then, so onResult should
+ * check the result is still wanted before using it.
+ */
+public abstract class TiBackgroundTask<T>
+{
+	private static final String LCAT = "TiBackgroundTask";
+
+	private static ExecutorService worker;
+
+	private final String description;
+
+	/**
+	 * @param description what the task does, used when logging an error, e.g. "filtering table"
+	 */
+	public TiBackgroundTask(String description)
+	{
+		this.description = description;
+	}
+
+	/**
+	 * Called on the background thread. If this throws, the error is logged and onResult
+	 * isn't called.
+	 */
+	protected abstract T doInBackground() throws Exception;
+
+	/**
+	 * Called on the handler's thread with what doInBackground returned.
+	 */
+	protected abstract void onResult(T result);
+
+	public void execute(final Handler handler)
+	{
+		getWorker().execute(new Runnable() {
+			public void run() {
+				final T result;
+				try {
+					result = doInBackground();
+				} catch (Throwable t) {
+					Log.e(LCAT, "Error " + description + ": " + t.getMessage(), t);
+					return;
+				}
+				handler.post(new Runnable() {
+					public void run() {
+						onResult(result);
+					}
+				});
+			}
+		});
+	}
+
+	private static synchronized ExecutorService getWorker()
+	{
+		if (worker == null) {
+			worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					return new Thread(r, "TiBackgroundTask");
+				}
+			});
+		}
+		return worker;
+	}
+}
@@ -8,67 +8,153 @@
 package org.appcelerator.titanium.util;
 
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import android.graphics.Color;
 
 public class TiColorHelper
 {
-	static Pattern shortHexPattern = Pattern.compile("#([0-9a-f])([0-9a-f])([0-9a-f])([0-9a-f]?)");
-	static Pattern rgbPattern = Pattern.compile("rgb\\(([0-9]{1,3}),([0-9]{1,3}),([0-9]{1,3})\\)");
-	static Pattern argbPattern = Pattern.compile("rgba\\(([0-9]{1,3}),([0-9]{1,3}),([0-9]{1,3}),([0-9]{1,3})\\)");
+	private static final int MAX_CACHED_COLORS = 128;
+	private static final int INVALID = -1;
 
 	private static HashMap<String, Integer> colorTable;
 
+	// by the exact string, since "#FFF" and "#fff" parse alike but aren't the same key
+	private static TiLruCache<String, Integer> parsedColors = new TiLruCache<String, Integer>(MAX_CACHED_COLORS);
+
+	/**
+	 * Parses #rgb, #argb, #rrggbb, #aarrggbb, rgb(r,g,b), rgba(r,g,b,a) and color names.
+	 * Unknown colors are yellow.
+	 */
 	public static int parseColor(String value) {
+		if (value == null) {
+			return Color.YELLOW; // Something noticeable
+		}
+		Integer cached = parsedColors.get(value);
+		if (cached != null) {
+			return cached;
+		}
+		int color = parse(value);
+		parsedColors.put(value, color);
+		return color;
+	}
+
+	private static int parse(String value) {
 		int color = Color.YELLOW; // Something noticeable
-		if (value != null) {
-			String lowval = value.trim().toLowerCase();
-
-			Matcher m = null;
-			if ((m = shortHexPattern.matcher(lowval)).matches()) {
-				StringBuilder sb = new StringBuilder();
-				sb.append("#");
-				for(int i = 1; i <= m.groupCount(); i++) {
-					String s = m.group(i);
-					sb.append(s).append(s);
-				}
-				String newColor = sb.toString();
-				color = Color.parseColor(newColor);
-			} else if ((m = rgbPattern.matcher(lowval)).matches()) {
-				color = Color.rgb(
-					Integer.valueOf(m.group(1)),
-					Integer.valueOf(m.group(2)),
-					Integer.valueOf(m.group(3))
-					);
-			} else if ((m = argbPattern.matcher(lowval)).matches()) {
-				color = Color.argb(
-						Integer.valueOf(m.group(4)),
-						Integer.valueOf(m.group(1)),
-						Integer.valueOf(m.group(2)),
-						Integer.valueOf(m.group(3))
-						);
-			} else {
-				// Try the parser, will throw illegalArgument if it can't parse it.
-				try {
-					color = Color.parseColor(lowval);
-				} catch (IllegalArgumentException e) {
-					if (colorTable == null) {
-						buildColorTable();
-					}
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			end--;
+		}
 
-					if (colorTable.containsKey(lowval)) {
-						color = colorTable.get(lowval);
-					} else {
-						Log.w("TiColorHelper", "Unknown color: " + value);
+		if (start < end && value.charAt(start) == '#') {
+			int digits = end - start - 1;
+			long hex = parseHex(value, start + 1, end);
+			if (hex != INVALID) {
+				if (digits == 3 || digits == 4) {
+					// #rgb or #argb, each digit doubled
+					long expanded = 0;
+					for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+						int digit = (int) (hex >> shift) & 0xf;
+						expanded = (expanded << 8) | (digit << 4) | digit;
 					}
+					hex = expanded;
+					digits *= 2;
 				}
+				if (digits == 6) {
+					return (int) hex | 0xff000000;
+				} else if (digits == 8) {
+					return (int) hex;
+				}
+			}
+		} else if (value.regionMatches(true, start, "rgb(", 0, 4)) {
+			long rgb = parseComponents(value, start + 4, end, 3);
+			if (rgb != INVALID) {
+				return Color.rgb(component(rgb, 0), component(rgb, 1), component(rgb, 2));
+			}
+		} else if (value.regionMatches(true, start, "rgba(", 0, 5)) {
+			long rgba = parseComponents(value, start + 5, end, 4);
+			if (rgba != INVALID) {
+				return Color.argb(component(rgba, 3), component(rgba, 0), component(rgba, 1), component(rgba, 2));
+			}
+		}
+
+		// Try the parser, will throw illegalArgument if it can't parse it.
+		String lowval = value.trim().toLowerCase();
+		try {
+			color = Color.parseColor(lowval);
+		} catch (IllegalArgumentException e) {
+			if (colorTable == null) {
+				buildColorTable();
+			}
+
+			if (colorTable.containsKey(lowval)) {
+				color = colorTable.get(lowval);
+			} else {
+				Log.w("TiColorHelper", "Unknown color: " + value);
 			}
 		}
 		return color;
 	}
 
+	/**
+	 * @return the hex digits of value from start to end, or INVALID if there are none,
+	 * more than 8 or something other than a hex digit
+	 */
+	private static long parseHex(String value, int start, int end) {
+		if (end == start || end - start > 8) {
+			return INVALID;
+		}
+		long hex = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			int digit;
+			if (c >= '0' && c <= '9') {
+				digit = c - '0';
+			} else if (c >= 'a' && c <= 'f') {
+				digit = c - 'a' + 10;
+			} else if (c >= 'A' && c <= 'F') {
+				digit = c - 'A' + 10;
+			} else {
+				return INVALID;
+			}
+			hex = (hex << 4) | digit;
+		}
+		return hex;
+	}
+
+	/**
+	 * @return count comma separated components of up to 3 digits each, followed by ")"
+	 * and the end of value, packed 10 bits apiece, or INVALID if value doesn't look like that
+	 */
+	private static long parseComponents(String value, int start, int end, int count) {
+		long components = 0;
+		int i = start;
+		for (int c = 0; c < count; c++) {
+			int digits = 0;
+			int component = 0;
+			while (i < end && value.charAt(i) >= '0' && value.charAt(i) <= '9' && digits < 3) {
+				component = component * 10 + (value.charAt(i++) - '0');
+				digits++;
+			}
+			if (digits == 0 || i >= end) {
+				return INVALID;
+			}
+			char separator = value.charAt(i++);
+			if (separator != (c == count - 1 ? ')' : ',')) {
+				return INVALID;
+			}
+			components |= (long) component << (c * 10);
+		}
+		return i == end ? components : INVALID;
+	}
+
+	private static int component(long components, int index) {
+		return (int) (components >> (index * 10)) & 0x3ff;
+	}
+
 	private static void buildColorTable() {
 		synchronized(TiColorHelper.class) {
 			colorTable = new HashMap<String, Integer>(16);
@@ -0,0 +1,562 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.appcelerator.kroll.KrollDict;
+import org.json.JSONException;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * A streaming JSON parser that builds its result in a single pass over the characters.
+ *
+ * Given a scope, objects and arrays are created directly as Rhino NativeObject / NativeArray,
+ * ready to be handed back to JS. Without a scope, they are built as {@link KrollDict} and
+ * Object[], the same shapes {@link KrollDict#fromJSON(Object)} produces.
+ * Numbers are returned as Integer when they fit, Double otherwise.
+ *
+ * A {@link #setPath(String) path} can be set to only build the value found at that path,
+ * everything else is skipped as it is read.
+ */
+public class TiJSONReader
+{
+	private static final int BUFFER_SIZE = 8192;
+	// keys repeat a lot in arrays of objects, share their strings up to this many distinct keys
+	private static final int MAX_INTERNED_KEYS = 512;
+
+	private Reader in;
+	private char[] buffer;
+	private int pos, limit;
+	// characters read before the current buffer, for error messages
+	private int offset;
+
+	private Scriptable scope;
+	private String[] path;
+	private Scriptable objectPrototype, arrayPrototype;
+
+	private StringBuilder chars = new StringBuilder();
+	private HashMap<String, String> keys = new HashMap<String, String>();
+	private ArrayList<ArrayList<Object>> arrayPool = new ArrayList<ArrayList<Object>>();
+
+	/**
+	 * @param in the JSON text
+	 * @param scope the scope to create JS objects in, or null to build Java objects
+	 */
+	public TiJSONReader(Reader in, Scriptable scope)
+	{
+		this.in = in;
+		this.buffer = new char[BUFFER_SIZE];
+		if (scope != null) {
+			this.scope = ScriptableObject.getTopLevelScope(scope);
+			objectPrototype = ScriptableObject.getObjectPrototype(scope);
+			arrayPrototype = ScriptableObject.getArrayPrototype(scope);
+		}
+	}
+
+	public static Object parse(String json, Scriptable scope)
+		throws JSONException
+	{
+		try {
+			return new TiJSONReader(new StringReader(json), scope).parse();
+		} catch (IOException e) {
+			// a StringReader never throws
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Only build the value at path, a '.' separated list of object keys and array indexes
+	 * (e.g. "data.items" or "results.0"). {@link #parse()} then returns null if the document
+	 * has nothing at that path.
+	 */
+	public void setPath(String path)
+	{
+		if (path == null || path.length() == 0) {
+			this.path = null;
+		} else {
+			this.path = path.split("\\.");
+		}
+	}
+
+	/**
+	 * Reads a complete JSON document, only whitespace may follow the value. Errors reading
+	 * the input are thrown as they are, malformed JSON as a JSONException.
+	 */
+	public Object parse()
+		throws IOException, JSONException
+	{
+		Object value = path == null ? readValue(nextClean()) : readSelected(nextClean(), 0);
+		int c = nextClean();
+		if (c != -1) {
+			throw syntaxError("Unexpected character '" + (char) c + "' after JSON value");
+		}
+		return value;
+	}
+
+	private int read()
+		throws IOException, JSONException
+	{
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return buffer[pos++];
+	}
+
+	private boolean fill()
+		throws IOException
+	{
+		offset += limit;
+		pos = limit = 0;
+		int count = in.read(buffer, 0, buffer.length);
+		if (count <= 0) {
+			return false;
+		}
+		limit = count;
+		return true;
+	}
+
+	private int nextClean()
+		throws IOException, JSONException
+	{
+		while (true) {
+			if (pos == limit && !fill()) {
+				return -1;
+			}
+			char c = buffer[pos++];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+
+	private JSONException syntaxError(String message)
+	{
+		return new JSONException(message + " at character " + (offset + pos));
+	}
+
+	private Object readValue(int c)
+		throws IOException, JSONException
+	{
+		switch (c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				readLiteral("rue");
+				return Boolean.TRUE;
+			case 'f':
+				readLiteral("alse");
+				return Boolean.FALSE;
+			case 'n':
+				readLiteral("ull");
+				return null;
+			case -1:
+				throw syntaxError("Unexpected end of JSON");
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					return readNumber((char) c);
+				}
+				throw syntaxError("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	private Object readSelected(int c, int depth)
+		throws IOException, JSONException
+	{
+		if (depth == path.length) {
+			return readValue(c);
+		}
+
+		Object selected = null;
+		String segment = path[depth];
+		if (c == '{') {
+			c = nextClean();
+			if (c == '}') {
+				return null;
+			}
+			while (true) {
+				if (c != '"') {
+					throw syntaxError("Expected a string key");
+				}
+				boolean matches = segment.equals(readString());
+				if (nextClean() != ':') {
+					throw syntaxError("Expected ':' after key");
+				}
+				if (matches) {
+					selected = readSelected(nextClean(), depth + 1);
+				} else {
+					skipValue(nextClean());
+				}
+
+				c = nextClean();
+				if (c == '}') {
+					return selected;
+				} else if (c != ',') {
+					throw syntaxError("Expected ',' or '}'");
+				}
+				c = nextClean();
+			}
+		} else if (c == '[') {
+			int index = toArrayIndex(segment);
+			c = nextClean();
+			if (c == ']') {
+				return null;
+			}
+			for (int i = 0; ; i++) {
+				if (i == index) {
+					selected = readSelected(c, depth + 1);
+				} else {
+					skipValue(c);
+				}
+
+				c = nextClean();
+				if (c == ']') {
+					return selected;
+				} else if (c != ',') {
+					throw syntaxError("Expected ',' or ']'");
+				}
+				c = nextClean();
+			}
+		}
+
+		skipValue(c);
+		return null;
+	}
+
+	private void skipValue(int c)
+		throws IOException, JSONException
+	{
+		switch (c) {
+			case '{':
+				c = nextClean();
+				if (c == '}') {
+					return;
+				}
+				while (true) {
+					if (c != '"') {
+						throw syntaxError("Expected a string key");
+					}
+					skipString();
+					if (nextClean() != ':') {
+						throw syntaxError("Expected ':' after key");
+					}
+					skipValue(nextClean());
+					c = nextClean();
+					if (c == '}') {
+						return;
+					} else if (c != ',') {
+						throw syntaxError("Expected ',' or '}'");
+					}
+					c = nextClean();
+				}
+			case '[':
+				c = nextClean();
+				if (c == ']') {
+					return;
+				}
+				while (true) {
+					skipValue(c);
+					c = nextClean();
+					if (c == ']') {
+						return;
+					} else if (c != ',') {
+						throw syntaxError("Expected ',' or ']'");
+					}
+					c = nextClean();
+				}
+			case '"':
+				skipString();
+				return;
+			case 't':
+				readLiteral("rue");
+				return;
+			case 'f':
+				readLiteral("alse");
+				return;
+			case 'n':
+				readLiteral("ull");
+				return;
+			case -1:
+				throw syntaxError("Unexpected end of JSON");
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					while (pos < limit || fill()) {
+						char next = buffer[pos];
+						if ((next < '0' || next > '9') && next != '.' && next != 'e' && next != 'E' && next != '+' && next != '-') {
+							return;
+						}
+						pos++;
+					}
+					return;
+				}
+				throw syntaxError("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	private void skipString()
+		throws IOException, JSONException
+	{
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				// the escaped character can't end the string, unicode escape digits are skipped as plain characters
+				read();
+			} else if (c == -1) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	private void readLiteral(String rest)
+		throws IOException, JSONException
+	{
+		for (int i = 0; i < rest.length(); i++) {
+			if (read() != rest.charAt(i)) {
+				throw syntaxError("Invalid literal");
+			}
+		}
+	}
+
+	private Object readObject()
+		throws IOException, JSONException
+	{
+		Object object = newObject();
+		int c = nextClean();
+		if (c == '}') {
+			return object;
+		}
+		while (true) {
+			if (c != '"') {
+				throw syntaxError("Expected a string key");
+			}
+			String key = internKey(readString());
+			if (nextClean() != ':') {
+				throw syntaxError("Expected ':' after key");
+			}
+			putProperty(object, key, readValue(nextClean()));
+
+			c = nextClean();
+			if (c == '}') {
+				return object;
+			} else if (c != ',') {
+				throw syntaxError("Expected ',' or '}'");
+			}
+			c = nextClean();
+		}
+	}
+
+	private Object readArray()
+		throws IOException, JSONException
+	{
+		int c = nextClean();
+		if (c == ']') {
+			return newArray(new Object[0]);
+		}
+
+		// nested arrays are read depth first, so reuse their element lists like a stack
+		ArrayList<Object> elements = arrayPool.isEmpty() ? new ArrayList<Object>() : arrayPool.remove(arrayPool.size() - 1);
+		try {
+			while (true) {
+				elements.add(readValue(c));
+				c = nextClean();
+				if (c == ']') {
+					return newArray(elements.toArray());
+				} else if (c != ',') {
+					throw syntaxError("Expected ',' or ']'");
+				}
+				c = nextClean();
+			}
+		} finally {
+			elements.clear();
+			arrayPool.add(elements);
+		}
+	}
+
+	private String readString()
+		throws IOException, JSONException
+	{
+		chars.setLength(0);
+		while (true) {
+			// copy runs of plain characters straight from the buffer
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos];
+				if (c == '"' || c == '\\') {
+					break;
+				}
+				pos++;
+			}
+			if (pos > start) {
+				chars.append(buffer, start, pos - start);
+			}
+			if (pos == limit) {
+				if (!fill()) {
+					throw syntaxError("Unterminated string");
+				}
+				continue;
+			}
+
+			char c = buffer[pos++];
+			if (c == '"') {
+				return chars.toString();
+			}
+			int escaped = read();
+			switch (escaped) {
+				case 'b': chars.append('\b'); break;
+				case 'f': chars.append('\f'); break;
+				case 'n': chars.append('\n'); break;
+				case 'r': chars.append('\r'); break;
+				case 't': chars.append('\t'); break;
+				case 'u':
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0) {
+							throw syntaxError("Invalid unicode escape");
+						}
+						code = (code << 4) | digit;
+					}
+					chars.append((char) code);
+					break;
+				case -1:
+					throw syntaxError("Unterminated string");
+				default:
+					// \" \\ \/ and anything else lenient parsers accept
+					chars.append((char) escaped);
+			}
+		}
+	}
+
+	private Object readNumber(char first)
+		throws IOException, JSONException
+	{
+		chars.setLength(0);
+		chars.append(first);
+		boolean integral = true;
+		while (true) {
+			if (pos == limit && !fill()) {
+				break;
+			}
+			char c = buffer[pos];
+			if (c >= '0' && c <= '9') {
+				chars.append(c);
+			} else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+				chars.append(c);
+				integral = false;
+			} else {
+				break;
+			}
+			pos++;
+		}
+
+		int length = chars.length();
+		if (integral && length < 10) {
+			// fits in an int without overflow, skip the generic parse
+			boolean negative = first == '-';
+			int i = negative ? 1 : 0;
+			if (i == length) {
+				throw syntaxError("Invalid number");
+			}
+			int value = 0;
+			for (; i < length; i++) {
+				value = value * 10 + (chars.charAt(i) - '0');
+			}
+			return negative ? -value : value;
+		}
+
+		try {
+			double value = Double.parseDouble(chars.toString());
+			if (integral && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				return (int) value;
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			throw syntaxError("Invalid number '" + chars + "'");
+		}
+	}
+
+	private String internKey(String key)
+	{
+		String interned = keys.get(key);
+		if (interned != null) {
+			return interned;
+		}
+		if (keys.size() < MAX_INTERNED_KEYS) {
+			keys.put(key, key);
+		}
+		return key;
+	}
+
+	private Object newObject()
+	{
+		if (scope == null) {
+			return new KrollDict();
+		}
+		NativeObject object = new NativeObject();
+		object.setPrototype(objectPrototype);
+		object.setParentScope(scope);
+		return object;
+	}
+
+	private void putProperty(Object object, String key, Object value)
+	{
+		if (scope == null) {
+			((KrollDict) object).put(key, value);
+			return;
+		}
+
+		NativeObject nativeObject = (NativeObject) object;
+		int index = toArrayIndex(key);
+		if (index >= 0) {
+			// JS looks up "0" as index 0, so it has to be stored there
+			nativeObject.put(index, nativeObject, value);
+		} else {
+			nativeObject.put(key, nativeObject, value);
+		}
+	}
+
+	private Object newArray(Object[] elements)
+	{
+		if (scope == null) {
+			return elements;
+		}
+		NativeArray array = new NativeArray(elements);
+		array.setPrototype(arrayPrototype);
+		array.setParentScope(scope);
+		return array;
+	}
+
+	private static int toArrayIndex(String key)
+	{
+		int length = key.length();
+		if (length == 0 || length > 9 || (length > 1 && key.charAt(0) == '0')) {
+			return -1;
+		}
+		int index = 0;
+		for (int i = 0; i < length; i++) {
+			char c = key.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			index = index * 10 + (c - '0');
+		}
+		return index;
+	}
+}
@@ -0,0 +1,273 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.appcelerator.kroll.KrollObject;
+import org.appcelerator.kroll.KrollProxy;
+import org.appcelerator.kroll.KrollScriptableDict;
+import org.json.JSONException;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+/**
+ * Serializes JS values (Rhino objects, arrays and primitives) and their Java counterparts
+ * (Map / KrollDict, arrays, Collection) as JSON straight to a Writer, without building an
+ * intermediate JSONObject tree.
+ *
+ * Follows JSON.stringify: functions and undefined are skipped in objects and written as
+ * null in arrays, non finite numbers are written as null, and objects with a toJSON()
+ * method (e.g. Date) are written as its result. Proxies are written as objects holding
+ * their readable properties, the ones JS code can enumerate.
+ */
+public class TiJSONWriter
+{
+	private Writer out;
+	// objects currently being written, to catch cycles
+	private IdentityHashMap<Object, Object> stack = new IdentityHashMap<Object, Object>();
+
+	public TiJSONWriter(Writer out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * @return the JSON text for value, or null if value can't be serialized (undefined or a function)
+	 */
+	public static String stringify(Object value)
+		throws JSONException
+	{
+		if (!isSerializable(value)) {
+			return null;
+		}
+		StringWriter writer = new StringWriter();
+		new TiJSONWriter(writer).write(value);
+		return writer.toString();
+	}
+
+	public void write(Object value)
+		throws JSONException
+	{
+		// toJSON() and Date need a context to be called
+		Context.enter();
+		try {
+			writeValue(value);
+			out.flush();
+		} catch (IOException e) {
+			throw new JSONException("Error writing JSON: " + e.getMessage());
+		} finally {
+			Context.exit();
+		}
+	}
+
+	private static boolean isSerializable(Object value)
+	{
+		return value != Undefined.instance && value != Scriptable.NOT_FOUND
+			&& !(value instanceof Function && !(value instanceof KrollObject));
+	}
+
+	private void writeValue(Object value)
+		throws IOException, JSONException
+	{
+		if (value == null || !isSerializable(value)) {
+			out.write("null");
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else if (value instanceof Number) {
+			writeNumber(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			out.write(((Boolean) value).booleanValue() ? "true" : "false");
+		} else if (value instanceof KrollScriptableDict) {
+			writeScriptable(((KrollScriptableDict) value).getScriptable());
+		} else if (value instanceof Scriptable) {
+			writeScriptable((Scriptable) value);
+		} else if (value instanceof Map) {
+			writeMap((Map<?, ?>) value);
+		} else if (value instanceof Object[]) {
+			writeArray((Object[]) value);
+		} else if (value instanceof Collection) {
+			writeArray(((Collection<?>) value).toArray());
+		} else if (value instanceof Date) {
+			writeString(TiConvert.toJSONString(value));
+		} else if (value instanceof KrollProxy) {
+			writeScriptable(((KrollProxy) value).getKrollObject());
+		} else if (value.getClass().isArray()) {
+			// primitive arrays
+			int length = java.lang.reflect.Array.getLength(value);
+			Object[] array = new Object[length];
+			for (int i = 0; i < length; i++) {
+				array[i] = java.lang.reflect.Array.get(value, i);
+			}
+			writeArray(array);
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	private void writeNumber(double d)
+		throws IOException
+	{
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			out.write("null");
+		} else if (d == (long) d) {
+			// whole numbers are written without a fraction
+			out.write(Long.toString((long) d));
+		} else {
+			out.write(ScriptRuntime.numberToString(d, 10));
+		}
+	}
+
+	private void writeString(String s)
+		throws IOException
+	{
+		out.write('"');
+		int length = s.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			String escaped;
+			switch (c) {
+				case '"': escaped = "\\\""; break;
+				case '\\': escaped = "\\\\"; break;
+				case '\b': escaped = "\\b"; break;
+				case '\f': escaped = "\\f"; break;
+				case '\n': escaped = "\\n"; break;
+				case '\r': escaped = "\\r"; break;
+				case '\t': escaped = "\\t"; break;
+				default:
+					if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+						String hex = Integer.toHexString(c);
+						escaped = "\\u0000".substring(0, 6 - hex.length()) + hex;
+					} else {
+						continue;
+					}
+			}
+			// write the plain run before this character in one go
+			if (i > start) {
+				out.write(s, start, i - start);
+			}
+			out.write(escaped);
+			start = i + 1;
+		}
+		if (length > start) {
+			out.write(s, start, length - start);
+		}
+		out.write('"');
+	}
+
+	private void push(Object object)
+		throws JSONException
+	{
+		if (stack.put(object, object) != null) {
+			throw new JSONException("Cyclic object value");
+		}
+	}
+
+	private void writeScriptable(Scriptable object)
+		throws IOException, JSONException
+	{
+		Object toJSON = ScriptableObject.getProperty(object, "toJSON");
+		if (toJSON instanceof Function) {
+			Context context = Context.getCurrentContext();
+			Object value = ((Function) toJSON).call(context, ScriptableObject.getTopLevelScope(object), object, ScriptRuntime.emptyArgs);
+			writeValue(value);
+			return;
+		}
+		if ("Date".equals(object.getClassName())) {
+			double time = Context.toNumber(ScriptableObject.callMethod(object, "getTime", ScriptRuntime.emptyArgs));
+			writeString(TiConvert.toJSONString(new Date((long) time)));
+			return;
+		}
+
+		push(object);
+		if (object instanceof NativeArray) {
+			NativeArray array = (NativeArray) object;
+			long length = array.getLength();
+			out.write('[');
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				writeValue(array.get(i, array));
+			}
+			out.write(']');
+		} else {
+			out.write('{');
+			boolean first = true;
+			for (Object id : object.getIds()) {
+				Object value;
+				if (id instanceof Number) {
+					value = object.get(((Number) id).intValue(), object);
+				} else {
+					value = object.get(id.toString(), object);
+				}
+				if (!isSerializable(value)) {
+					continue;
+				}
+				if (!first) {
+					out.write(',');
+				}
+				first = false;
+				writeString(id.toString());
+				out.write(':');
+				writeValue(value);
+			}
+			out.write('}');
+		}
+		stack.remove(object);
+	}
+
+	private void writeMap(Map<?, ?> map)
+		throws IOException, JSONException
+	{
+		push(map);
+		out.write('{');
+		boolean first = true;
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			Object value = entry.getValue();
+			if (!isSerializable(value)) {
+				continue;
+			}
+			if (!first) {
+				out.write(',');
+			}
+			first = false;
+			writeString(String.valueOf(entry.getKey()));
+			out.write(':');
+			writeValue(value);
+		}
+		out.write('}');
+		stack.remove(map);
+	}
+
+	private void writeArray(Object[] array)
+		throws IOException, JSONException
+	{
+		push(array);
+		out.write('[');
+		for (int i = 0; i < array.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			writeValue(array[i]);
+		}
+		out.write(']');
+		stack.remove(array);
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map that holds at most maxSize entries, dropping the least recently used one
+ * when it's full. Safe to use from any thread.
+ */
+public class TiLruCache<K, V>
+{
+	private final LinkedHashMap<K, V> entries;
+
+	@SuppressWarnings("serial")
+	public TiLruCache(final int maxSize)
+	{
+		entries = new LinkedHashMap<K, V>(Math.min(maxSize, 64), 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the value for key, or null if it isn't cached
+	 */
+	public synchronized V get(K key)
+	{
+		return entries.get(key);
+	}
+
+	public synchronized void put(K key, V value)
+	{
+		entries.put(key, value);
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * A hashed timer wheel that runs its timers on a single Handler's thread.
+ *
+ * Timers are kept in doubly linked buckets indexed by their expiration tick, so
+ * scheduling and canceling are O(1). Instead of one Looper message per timer, the
+ * wheel posts a single message for the next non-empty bucket and fires every timer
+ * that expired by then in one batch. All methods may be called from any thread.
+ */
+public class TiTimerWheel
+{
+	private static final String LCAT = "TiTimerWheel";
+	private static final boolean DBG = TiConfig.LOGD;
+
+	public static final long TICK_DURATION = 10;
+	private static final int WHEEL_SIZE = 512;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	/**
+	 * A timer owned by a wheel. Subclasses implement {@link #run()}.
+	 */
+	public static abstract class Timer implements Runnable
+	{
+		protected long interval;
+		protected boolean repeat;
+
+		// absolute due time in ms and the tick it was bucketed for
+		private long deadline;
+		private long tick;
+		private TiTimerWheel wheel;
+		private Timer prev, next;
+		private boolean canceled;
+
+		public Timer(long interval, boolean repeat)
+		{
+			this.interval = Math.max(0, interval);
+			this.repeat = repeat;
+		}
+
+		public boolean isCanceled()
+		{
+			return canceled;
+		}
+
+		/**
+		 * Called once a non-repeating timer fired, or when any timer is canceled.
+		 */
+		protected void onFinished()
+		{
+		}
+	}
+
+	private Handler handler;
+	private Timer[] buckets = new Timer[WHEEL_SIZE];
+	private long startTime;
+	private long lastTick;
+	private int count;
+	private long alignment;
+	private long wakeupTick = -1;
+	// the timers processExpired() took out of the buckets and hasn't put back yet
+	private ArrayList<Timer> firing;
+	private final Runnable tickRunnable = new Runnable() {
+		public void run()
+		{
+			processExpired();
+		}
+	};
+
+	public TiTimerWheel(Handler handler)
+	{
+		this.handler = handler;
+		this.startTime = SystemClock.uptimeMillis();
+		this.lastTick = 0;
+	}
+
+	/**
+	 * When non-zero, repeating timers are realigned to multiples of <code>alignment</code>
+	 * milliseconds when rescheduled, so that intervals fire together and the thread wakes
+	 * up less often. Meant for when the application is in the background.
+	 */
+	public synchronized void setAlignment(long alignment)
+	{
+		this.alignment = Math.max(0, alignment);
+	}
+
+	public synchronized int size()
+	{
+		return count;
+	}
+
+	public synchronized void schedule(Timer timer)
+	{
+		if (timer.wheel != null) {
+			throw new IllegalStateException("Timer is already scheduled");
+		}
+		timer.wheel = this;
+		timer.canceled = false;
+		insert(timer, SystemClock.uptimeMillis() + timer.interval);
+		scheduleWakeup();
+	}
+
+	public void cancel(Timer timer)
+	{
+		synchronized (this) {
+			if (timer.wheel != this || timer.canceled) {
+				return;
+			}
+			timer.canceled = true;
+			if (timer.prev != null || timer.next != null || buckets[(int) (timer.tick & WHEEL_MASK)] == timer) {
+				unlink(timer);
+			}
+			timer.wheel = null;
+		}
+		timer.onFinished();
+	}
+
+	public void cancelAll()
+	{
+		ArrayList<Timer> canceled = new ArrayList<Timer>(count);
+		synchronized (this) {
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				Timer timer = buckets[i];
+				while (timer != null) {
+					Timer next = timer.next;
+					timer.prev = timer.next = null;
+					timer.canceled = true;
+					timer.wheel = null;
+					canceled.add(timer);
+					timer = next;
+				}
+				buckets[i] = null;
+			}
+			if (firing != null) {
+				// they're not in a bucket right now, but would be rescheduled after the batch
+				for (Timer timer : firing) {
+					if (!timer.canceled && timer.wheel == this) {
+						timer.canceled = true;
+						timer.wheel = null;
+						canceled.add(timer);
+					}
+				}
+			}
+			count = 0;
+			handler.removeCallbacks(tickRunnable);
+			wakeupTick = -1;
+		}
+		for (Timer timer : canceled) {
+			timer.onFinished();
+		}
+	}
+
+	private long tickFor(long time)
+	{
+		// round up so timers never fire early
+		return (time - startTime + TICK_DURATION - 1) / TICK_DURATION;
+	}
+
+	// must be called while holding the lock on this
+	private void insert(Timer timer, long deadline)
+	{
+		timer.deadline = deadline;
+		timer.tick = Math.max(tickFor(deadline), lastTick + 1);
+		int index = (int) (timer.tick & WHEEL_MASK);
+		timer.prev = null;
+		timer.next = buckets[index];
+		if (timer.next != null) {
+			timer.next.prev = timer;
+		}
+		buckets[index] = timer;
+		count++;
+	}
+
+	// must be called while holding the lock on this
+	private void unlink(Timer timer)
+	{
+		int index = (int) (timer.tick & WHEEL_MASK);
+		if (timer.prev != null) {
+			timer.prev.next = timer.next;
+		} else {
+			buckets[index] = timer.next;
+		}
+		if (timer.next != null) {
+			timer.next.prev = timer.prev;
+		}
+		timer.prev = timer.next = null;
+		count--;
+	}
+
+	// must be called while holding the lock on this
+	private void scheduleWakeup()
+	{
+		if (count == 0) {
+			handler.removeCallbacks(tickRunnable);
+			wakeupTick = -1;
+			return;
+		}
+
+		// find the first non-empty bucket, timers further than one rotation away
+		// just cause a wakeup per rotation
+		long tick = lastTick + 1;
+		for (int i = 0; i < WHEEL_SIZE; i++, tick++) {
+			Timer timer = buckets[(int) (tick & WHEEL_MASK)];
+			boolean due = false;
+			for (; timer != null; timer = timer.next) {
+				if (timer.tick <= tick) {
+					due = true;
+					break;
+				}
+			}
+			if (due) {
+				break;
+			}
+		}
+
+		if (wakeupTick != -1 && wakeupTick <= tick) {
+			// an earlier (or the same) wakeup is already pending
+			return;
+		}
+		handler.removeCallbacks(tickRunnable);
+		wakeupTick = tick;
+		handler.postAtTime(tickRunnable, startTime + tick * TICK_DURATION);
+	}
+
+	private void processExpired()
+	{
+		ArrayList<Timer> expired = new ArrayList<Timer>();
+		long now = SystemClock.uptimeMillis();
+		synchronized (this) {
+			wakeupTick = -1;
+			long currentTick = (now - startTime) / TICK_DURATION;
+			long ticks = Math.min(currentTick - lastTick, WHEEL_SIZE);
+			for (long t = currentTick - ticks + 1; t <= currentTick; t++) {
+				int index = (int) (t & WHEEL_MASK);
+				Timer timer = buckets[index];
+				while (timer != null) {
+					Timer next = timer.next;
+					if (timer.tick <= currentTick) {
+						unlink(timer);
+						expired.add(timer);
+					}
+					timer = next;
+				}
+			}
+			lastTick = Math.max(lastTick, currentTick);
+			firing = expired;
+		}
+
+		if (DBG && expired.size() > 1) {
+			Log.d(LCAT, "Firing " + expired.size() + " timers in one batch");
+		}
+		for (Timer timer : expired) {
+			if (timer.canceled) {
+				continue;
+			}
+			try {
+				timer.run();
+			} catch (Throwable t) {
+				Log.e(LCAT, "Error running timer: " + t.getMessage(), t);
+			}
+		}
+
+		ArrayList<Timer> finished = new ArrayList<Timer>();
+		synchronized (this) {
+			firing = null;
+			now = SystemClock.uptimeMillis();
+			for (Timer timer : expired) {
+				if (timer.canceled) {
+					continue;
+				}
+				if (timer.repeat) {
+					// fixed rate from the previous due time, but don't try to catch up on missed runs
+					long deadline = timer.deadline + timer.interval;
+					if (deadline <= now) {
+						deadline = now + timer.interval;
+					}
+					if (alignment > 0) {
+						deadline = ((deadline + alignment - 1) / alignment) * alignment;
+					}
+					insert(timer, deadline);
+				} else {
+					timer.wheel = null;
+					finished.add(timer);
+				}
+			}
+			scheduleWakeup();
+		}
+		for (Timer timer : finished) {
+			timer.onFinished();
+		}
+	}
+}
@@ -6,8 +6,7 @@
  */
 package org.appcelerator.titanium.view;
 
-import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.Arrays;
 
 import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiDimension;
@@ -15,10 +14,12 @@ import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
 
 import android.content.Context;
+import android.graphics.Matrix;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.OnHierarchyChangeListener;
+import android.view.animation.Transformation;
 
 public class TiCompositeLayout extends ViewGroup
 	implements OnHierarchyChangeListener
@@ -30,8 +31,9 @@ public class TiCompositeLayout extends ViewGroup
 
 	public static final int NOT_SET = Integer.MIN_VALUE;
 
-	private TreeSet<View> viewSorter;
 	private boolean needsSort;
+	// reused by the z-order sort, grown as needed
+	private View[] sortedChildren = new View[0];
 	protected LayoutArrangement arrangement;
 	
 	// Used by horizonal arrangement calculations
@@ -40,6 +42,13 @@ public class TiCompositeLayout extends ViewGroup
 	private int horizontalLayoutLineHeight = 0;
 	private boolean disableHorizontalWrap = false;
 
+	// reused by every layout pass, 0 is left/top, 1 is right/bottom
+	private int[] horizontal = new int[2];
+	private int[] vertical = new int[2];
+
+	// children being animated from their drawing cache
+	private int cachedChildren = 0;
+
 	public TiCompositeLayout(Context context)
 	{
 		this(context, LayoutArrangement.DEFAULT);
@@ -49,50 +58,6 @@ public class TiCompositeLayout extends ViewGroup
 	{
 		super(context);
 		this.arrangement = arrangement;
-		this.viewSorter = new TreeSet<View>(new Comparator<View>(){
-
-			public int compare(View o1, View o2)
-			{
-				TiCompositeLayout.LayoutParams p1 =
-					(TiCompositeLayout.LayoutParams) o1.getLayoutParams();
-				TiCompositeLayout.LayoutParams p2 =
-					(TiCompositeLayout.LayoutParams) o2.getLayoutParams();
-
-				int result = 0;
-
-				if (p1.optionZIndex != NOT_SET && p2.optionZIndex != NOT_SET) {
-					if (p1.optionZIndex < p2.optionZIndex) {
-						result = -1;
-					} else if (p1.optionZIndex > p2.optionZIndex) {
-						result = 1;
-					}
-				} else if (p1.optionZIndex != NOT_SET) {
-					if (p1.optionZIndex < 0) {
-						result = -1;
-					} if (p1.optionZIndex > 0) {
-						result = 1;
-					}
-				} else if (p2.optionZIndex != NOT_SET) {
-					if (p2.optionZIndex < 0) {
-						result = 1;
-					} if (p2.optionZIndex > 0) {
-						result = -1;
-					}
-				}
-
-				if (result == 0) {
-					if (p1.index < p2.index) {
-						result = -1;
-					} else if (p1.index > p2.index) {
-						result = 1;
-					} else {
-						throw new IllegalStateException("Ambiguous Z-Order");
-					}
-				}
-
-				return result;
-			}});
-
 		needsSort = true;
 		setOnHierarchyChangeListener(this);
 	}
@@ -112,6 +77,13 @@ public class TiCompositeLayout extends ViewGroup
 
 	public void onChildViewAdded(View parent, View child) {
 		needsSort = true;
+		if (child.getLayoutParams() instanceof LayoutParams) {
+			LayoutParams params = (LayoutParams) child.getLayoutParams();
+			if (params.animatedAlpha != 1 || params.animatedMatrix != null) {
+				// left over from an animation in another layout
+				setStaticTransformationsEnabled(true);
+			}
+		}
 		if (DBG && parent != null && child != null) {
 			Log.d(TAG, "Attaching: " + viewToString(child) + " to " + viewToString(parent));
 		}
@@ -144,28 +116,38 @@ public class TiCompositeLayout extends ViewGroup
 		return params;
 	}
 
+	/**
+	 * Resolves the options of p to pixels against the current size of this layout. Values from
+	 * the last pass are reused unless an option was replaced or, for percentages, this layout
+	 * changed size.
+	 */
+	protected void resolveDimensions(LayoutParams p)
+	{
+		int width = getWidth();
+		int height = getHeight();
+		boolean resized = width != p.resolvedWidth || height != p.resolvedHeight;
+		p.resolve(TiDimension.TYPE_LEFT, p.optionLeft, this, resized);
+		p.resolve(TiDimension.TYPE_CENTER_X, p.optionCenterX, this, resized);
+		p.resolve(TiDimension.TYPE_RIGHT, p.optionRight, this, resized);
+		p.resolve(TiDimension.TYPE_TOP, p.optionTop, this, resized);
+		p.resolve(TiDimension.TYPE_CENTER_Y, p.optionCenterY, this, resized);
+		p.resolve(TiDimension.TYPE_BOTTOM, p.optionBottom, this, resized);
+		p.resolve(TiDimension.TYPE_WIDTH, p.optionWidth, this, resized);
+		p.resolve(TiDimension.TYPE_HEIGHT, p.optionHeight, this, resized);
+		p.resolvedWidth = width;
+		p.resolvedHeight = height;
+	}
+
 	protected int getViewWidthPadding(View child) {
 		LayoutParams p = (LayoutParams) child.getLayoutParams();
-		int padding = 0;
-		if (p.optionLeft != null) {
-			padding += p.optionLeft.getAsPixels(this);
-		}
-		if (p.optionRight != null) {
-			padding += p.optionRight.getAsPixels(this);
-		}
-		return padding;
+		resolveDimensions(p);
+		return p.pixels[TiDimension.TYPE_LEFT] + p.pixels[TiDimension.TYPE_RIGHT];
 	}
 	
 	protected int getViewHeightPadding(View child) {
 		LayoutParams p = (LayoutParams) child.getLayoutParams();
-		int padding = 0;
-		if (p.optionTop != null) {
-			padding += p.optionTop.getAsPixels(this);
-		}
-		if (p.optionBottom != null) {
-			padding += p.optionBottom.getAsPixels(this);
-		}
-		return padding;
+		resolveDimensions(p);
+		return p.pixels[TiDimension.TYPE_TOP] + p.pixels[TiDimension.TYPE_BOTTOM];
 	}
 
 	@Override
@@ -186,6 +168,8 @@ public class TiCompositeLayout extends ViewGroup
 
 		for(int i = 0; i < childCount; i++) {
 			View child = getChildAt(i);
+			LayoutParams p = (LayoutParams) child.getLayoutParams();
+			resolveDimensions(p);
 			if (child.getVisibility() != View.GONE) {
 				constrainChild(child, w, wMode, h, hMode);
 			}
@@ -198,21 +182,16 @@ public class TiCompositeLayout extends ViewGroup
 			}
 
 			if (isHorizontalArrangement()) {
-				LayoutParams p = (LayoutParams) child.getLayoutParams();
 				maxWidth += childWidth;
-				if (p.optionLeft != null) {
-					maxWidth += p.optionLeft.getAsPixels(this);  // I think this is wrong -- getViewWidthPadding above has already done this, I believe
-				}
+				// I think this is wrong -- getViewWidthPadding above has already done this, I believe
+				maxWidth += p.pixels[TiDimension.TYPE_LEFT];
 			} else {
 				maxWidth = Math.max(maxWidth, childWidth);
 			}
 
 			if (isVerticalArrangement()) {
-				LayoutParams p = (LayoutParams) child.getLayoutParams();
 				maxHeight += childHeight;
-				if (p.optionTop != null) {
-					maxHeight += p.optionTop.getAsPixels(this);
-				}
+				maxHeight += p.pixels[TiDimension.TYPE_TOP];
 			} else {
 				maxHeight = Math.max(maxHeight, childHeight);
 			}
@@ -240,9 +219,10 @@ public class TiCompositeLayout extends ViewGroup
 	{
 		LayoutParams p =
 			(LayoutParams) child.getLayoutParams();
+		resolveDimensions(p);
 		int childDimension = LayoutParams.WRAP_CONTENT;
 		if (p.optionWidth != null) {
-			childDimension = p.optionWidth.getAsPixels(this);
+			childDimension = p.pixels[TiDimension.TYPE_WIDTH];
 			if (childDimension == 0 && p.optionWidth.isUnitPercent() && width > 0) {
 				childDimension = (int) ((p.optionWidth.getValue() / 100.0) * width);
 			}
@@ -255,7 +235,7 @@ public class TiCompositeLayout extends ViewGroup
 		int widthSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(width, wMode), widthPadding, childDimension);
 		childDimension = LayoutParams.WRAP_CONTENT;
 		if (p.optionHeight != null) {
-			childDimension = p.optionHeight.getAsPixels(this);
+			childDimension = p.pixels[TiDimension.TYPE_HEIGHT];
 			if (childDimension == 0 && p.optionHeight.isUnitPercent() && height > 0) {
 				childDimension = (int) ((p.optionHeight.getValue() / 100.0) * height);
 			}
@@ -295,27 +275,11 @@ public class TiCompositeLayout extends ViewGroup
 
 		if (needsSort) {
 			if (count > 1) { // No need to sort one item.
-				viewSorter.clear();
-				for(int i = 0; i < count; i++) {
-					View child = getChildAt(i);
-					TiCompositeLayout.LayoutParams params =
-						(TiCompositeLayout.LayoutParams) child.getLayoutParams();
-					params.index = i;
-					viewSorter.add(child);
-				}
-
-				detachAllViewsFromParent();
-				int i = 0;
-				for (View child : viewSorter) {
-					attachViewToParent(child, i++, child.getLayoutParams());
-				}
+				sortChildren(count);
 			}
 			needsSort = false;
 		}
 
-		int[] horizontal = new int[2];
-		int[] vertical = new int[2];
-
 		int currentHeight = 0; // Used by vertical arrangement calcs
 		
 		for (int i = 0; i < count; i++) {
@@ -323,6 +287,7 @@ public class TiCompositeLayout extends ViewGroup
 			TiCompositeLayout.LayoutParams params =
 				(TiCompositeLayout.LayoutParams) child.getLayoutParams();
 			if (child.getVisibility() != View.GONE) {
+				resolveDimensions(params);
 				// Dimension is required from Measure. Positioning is determined here.
 				int childMeasuredWidth = child.getMeasuredWidth();
 				int childMeasuredHeight = child.getMeasuredHeight();
@@ -335,11 +300,13 @@ public class TiCompositeLayout extends ViewGroup
 					}
 					computeHorizontalLayoutPosition(params, childMeasuredWidth, childMeasuredHeight, right, top, bottom, horizontal, vertical);
 				} else {
-					computePosition(this, params.optionLeft, params.optionCenterX, params.optionRight, childMeasuredWidth, left, right, horizontal);
+					computePosition(params.pixelsOf(TiDimension.TYPE_LEFT), params.pixelsOf(TiDimension.TYPE_CENTER_X),
+						params.pixelsOf(TiDimension.TYPE_RIGHT), childMeasuredWidth, left, right, horizontal);
 					if (isVerticalArrangement()) {
-						computeVerticalLayoutPosition(currentHeight, params.optionTop, params.optionBottom, childMeasuredHeight, top, bottom, vertical);
+						computeVerticalLayoutPosition(currentHeight, params, childMeasuredHeight, top, bottom, vertical);
 					} else {
-						computePosition(this, params.optionTop, params.optionCenterY, params.optionBottom, childMeasuredHeight, top, bottom, vertical);
+						computePosition(params.pixelsOf(TiDimension.TYPE_TOP), params.pixelsOf(TiDimension.TYPE_CENTER_Y),
+							params.pixelsOf(TiDimension.TYPE_BOTTOM), childMeasuredHeight, top, bottom, vertical);
 					}
 				}
 
@@ -358,51 +325,129 @@ public class TiCompositeLayout extends ViewGroup
 				child.layout(horizontal[0], vertical[0], horizontal[1], vertical[1]);
 
 				currentHeight += newHeight;
-				if (params.optionTop != null) {
-					currentHeight += params.optionTop.getAsPixels(this);
-				}
+				currentHeight += params.pixels[TiDimension.TYPE_TOP];
+			}
+		}
+	}
+
+	/**
+	 * Reorders the children by z-index, keeping the current order for ties. Children are only
+	 * detached and re-attached when that changes their order, which it doesn't unless a
+	 * z-index was set.
+	 */
+	private void sortChildren(int count)
+	{
+		if (sortedChildren.length < count) {
+			sortedChildren = new View[count];
+		}
+		View[] sorted = sortedChildren;
+		boolean reordered = false;
+		for (int i = 0; i < count; i++) {
+			View child = getChildAt(i);
+			LayoutParams params = (LayoutParams) child.getLayoutParams();
+			params.index = i;
+
+			// insertion sort, children are almost always in order already
+			int j = i;
+			while (j > 0 && compareZOrder((LayoutParams) sorted[j - 1].getLayoutParams(), params) > 0) {
+				sorted[j] = sorted[j - 1];
+				j--;
+			}
+			sorted[j] = child;
+			reordered |= (j != i);
+		}
+
+		if (reordered) {
+			detachAllViewsFromParent();
+			for (int i = 0; i < count; i++) {
+				attachViewToParent(sorted[i], i, sorted[i].getLayoutParams());
 			}
 		}
+		// don't hold on to removed children
+		Arrays.fill(sorted, 0, count, null);
+	}
+
+	private static int compareZOrder(LayoutParams p1, LayoutParams p2)
+	{
+		int result = 0;
+
+		if (p1.optionZIndex != NOT_SET && p2.optionZIndex != NOT_SET) {
+			if (p1.optionZIndex < p2.optionZIndex) {
+				result = -1;
+			} else if (p1.optionZIndex > p2.optionZIndex) {
+				result = 1;
+			}
+		} else if (p1.optionZIndex != NOT_SET) {
+			if (p1.optionZIndex < 0) {
+				result = -1;
+			} else if (p1.optionZIndex > 0) {
+				result = 1;
+			}
+		} else if (p2.optionZIndex != NOT_SET) {
+			if (p2.optionZIndex < 0) {
+				result = 1;
+			} else if (p2.optionZIndex > 0) {
+				result = -1;
+			}
+		}
+
+		if (result == 0) {
+			if (p1.index < p2.index) {
+				result = -1;
+			} else if (p1.index > p2.index) {
+				result = 1;
+			} else {
+				throw new IllegalStateException("Ambiguous Z-Order");
+			}
+		}
+
+		return result;
 	}
 
 	// 0 is left/top, 1 is right/bottom
 	public static void computePosition(View parent, TiDimension option0, TiDimension optionCenter, TiDimension option1,
 		int measuredSize, int layoutPosition0, int layoutPosition1, int[] pos)
+	{
+		computePosition(
+			option0 != null ? option0.getAsPixels(parent) : NOT_SET,
+			optionCenter != null ? optionCenter.getAsPixels(parent) : NOT_SET,
+			option1 != null ? option1.getAsPixels(parent) : NOT_SET,
+			measuredSize, layoutPosition0, layoutPosition1, pos);
+	}
+
+	// Same as above from options already in pixels, NOT_SET where an option isn't set
+	private static void computePosition(int option0, int optionCenter, int option1,
+		int measuredSize, int layoutPosition0, int layoutPosition1, int[] pos)
 	{
 		int dist = layoutPosition1 - layoutPosition0;
-		if (optionCenter != null) {
+		if (optionCenter != NOT_SET) {
 			int halfSize= measuredSize/2;
-			pos[0] = layoutPosition0 + optionCenter.getAsPixels(parent) - halfSize;
+			pos[0] = layoutPosition0 + optionCenter - halfSize;
 			pos[1] = pos[0] + measuredSize;
-		} else if (option0 == null && option1 == null) {
+		} else if (option0 == NOT_SET && option1 == NOT_SET) {
 			// Center
 			int offset = (dist-measuredSize)/2;
 			pos[0] = layoutPosition0 + offset;
 			pos[1] = pos[0] + measuredSize;
-		} else if (option0 == null) {
+		} else if (option0 == NOT_SET) {
 			// peg right/bottom
-			int option1Pixels = option1.getAsPixels(parent);
-			pos[0] = dist - option1Pixels - measuredSize;
-			pos[1] = dist - option1Pixels;
-		} else if (option1 == null) {
+			pos[0] = dist - option1 - measuredSize;
+			pos[1] = dist - option1;
+		} else if (option1 == NOT_SET) {
 			// peg left/top
-			int option0Pixels = option0.getAsPixels(parent);
-			pos[0] = layoutPosition0 + option0Pixels;
-			pos[1] = layoutPosition0 + option0Pixels + measuredSize;
+			pos[0] = layoutPosition0 + option0;
+			pos[1] = layoutPosition0 + option0 + measuredSize;
 		} else {
 			// pegged both. override and force.
-			pos[0] = layoutPosition0 + option0.getAsPixels(parent);
-			pos[1] = layoutPosition1 - option1.getAsPixels(parent);
+			pos[0] = layoutPosition0 + option0;
+			pos[1] = layoutPosition1 - option1;
 		}
 	}
 
 	private void computeVerticalLayoutPosition(int currentHeight,
-		TiDimension optionTop, TiDimension optionBottom, int measuredHeight, int layoutTop, int layoutBottom, int[] pos)
+		TiCompositeLayout.LayoutParams params, int measuredHeight, int layoutTop, int layoutBottom, int[] pos)
 	{
-		int top = layoutTop + currentHeight;
-		if (optionTop != null) {
-			top += optionTop.getAsPixels(this);
-		}
+		int top = layoutTop + currentHeight + params.pixels[TiDimension.TYPE_TOP];
 		int bottom = top + measuredHeight;
 		pos[0] = top;
 		pos[1] = bottom;
@@ -410,11 +455,7 @@ public class TiCompositeLayout extends ViewGroup
 
 	private void computeHorizontalLayoutPosition(TiCompositeLayout.LayoutParams params, int measuredWidth, int measuredHeight, int layoutRight, int layoutTop, int layoutBottom, int[] hpos, int[] vpos)
 	{
-		TiDimension optionLeft = params.optionLeft;
-		int left = horizontalLayoutCurrentLeft;
-		if (optionLeft != null) {
-			left += optionLeft.getAsPixels(this);
-		}
+		int left = horizontalLayoutCurrentLeft + params.pixels[TiDimension.TYPE_LEFT];
 		int right = left + measuredWidth;
 		if (right > layoutRight && !disableHorizontalWrap) {
 			// Too long for the current "line" that it's on.  Need to move it down.
@@ -427,13 +468,103 @@ public class TiCompositeLayout extends ViewGroup
 		hpos[1] = right;
 		horizontalLayoutCurrentLeft = right;
 		// Get vertical position into vpos
-		computePosition(this, params.optionTop, params.optionCenterY, params.optionBottom, measuredHeight, layoutTop, layoutBottom, vpos);
+		computePosition(params.pixelsOf(TiDimension.TYPE_TOP), params.pixelsOf(TiDimension.TYPE_CENTER_Y),
+			params.pixelsOf(TiDimension.TYPE_BOTTOM), measuredHeight, layoutTop, layoutBottom, vpos);
 		horizontalLayoutLineHeight = Math.max(horizontalLayoutLineHeight, vpos[1] - vpos[0]);
 		// account for moving the item "down" to later line(s) if there has been wrapping.
 		vpos[0] = vpos[0] + horizontalLayoutTopBuffer;
 		vpos[1] = vpos[1] + horizontalLayoutTopBuffer;
 	}
 
+	/**
+	 * Positions child from its layout params without a layout pass. This only works when just its
+	 * position changed, so it returns false if the child's size or this layout's size could depend
+	 * on the change, and the caller should request a layout instead.
+	 */
+	public boolean layoutChildInPlace(View child)
+	{
+		if (!isDefaultArrangement() || child.getParent() != this || isLayoutRequested() || !hasFixedSize()) {
+			return false;
+		}
+		LayoutParams params = (LayoutParams) child.getLayoutParams();
+		// without an explicit size, moving the child can change how it measures
+		if (params.optionWidth == null || params.optionHeight == null) {
+			return false;
+		}
+		resolveDimensions(params);
+		int width = child.getMeasuredWidth();
+		int height = child.getMeasuredHeight();
+		computePosition(params.pixelsOf(TiDimension.TYPE_LEFT), params.pixelsOf(TiDimension.TYPE_CENTER_X),
+			params.pixelsOf(TiDimension.TYPE_RIGHT), width, 0, getWidth(), horizontal);
+		computePosition(params.pixelsOf(TiDimension.TYPE_TOP), params.pixelsOf(TiDimension.TYPE_CENTER_Y),
+			params.pixelsOf(TiDimension.TYPE_BOTTOM), height, 0, getHeight(), vertical);
+		if (horizontal[1] - horizontal[0] != width || vertical[1] - vertical[0] != height) {
+			return false;
+		}
+		child.layout(horizontal[0], vertical[0], horizontal[1], vertical[1]);
+		return true;
+	}
+
+	/**
+	 * @return true if the size of this layout doesn't depend on its children
+	 */
+	private boolean hasFixedSize()
+	{
+		ViewGroup.LayoutParams p = getLayoutParams();
+		if (p instanceof LayoutParams) {
+			LayoutParams params = (LayoutParams) p;
+			return (params.optionWidth != null || (params.autoWidth && params.autoFillsWidth))
+				&& (params.optionHeight != null || (params.autoHeight && params.autoFillsHeight));
+		} else if (p != null) {
+			return p.width != LayoutParams.WRAP_CONTENT && p.height != LayoutParams.WRAP_CONTENT;
+		}
+		return false;
+	}
+
+	/**
+	 * Called when a child starts or stops animating its animatedAlpha and animatedMatrix. With
+	 * cache set, the child is drawn from its drawing cache while it animates, so each frame only
+	 * composites a bitmap instead of redrawing the child. Only pass cache for children that
+	 * don't otherwise have their drawing cache enabled.
+	 */
+	public void setChildAnimating(View child, boolean animating, boolean cache)
+	{
+		setStaticTransformationsEnabled(true);
+		if (!cache) {
+			return;
+		}
+		child.setDrawingCacheEnabled(animating);
+		if (!animating) {
+			child.destroyDrawingCache();
+		}
+		if (animating) {
+			if (cachedChildren++ == 0) {
+				setChildrenDrawnWithCacheEnabled(true);
+			}
+		} else if (--cachedChildren == 0) {
+			setChildrenDrawnWithCacheEnabled(false);
+		}
+	}
+
+	@Override
+	protected boolean getChildStaticTransformation(View child, Transformation t)
+	{
+		ViewGroup.LayoutParams p = child.getLayoutParams();
+		if (!(p instanceof LayoutParams)) {
+			return false;
+		}
+		LayoutParams params = (LayoutParams) p;
+		if (params.animatedAlpha == 1 && params.animatedMatrix == null) {
+			return false;
+		}
+		t.clear();
+		t.setAlpha(params.animatedAlpha);
+		if (params.animatedMatrix != null) {
+			t.getMatrix().set(params.animatedMatrix);
+		}
+		return true;
+	}
+
 	protected int getWidthMeasureSpec(View child) {
 		return MeasureSpec.EXACTLY;
 	}
@@ -461,11 +592,36 @@ public class TiCompositeLayout extends ViewGroup
 		public boolean autoFillsWidth = false;
 		public boolean autoFillsHeight = false;
 
+		// Drawn on top of the layout by TiCompositeLayout, see TiAnimator
+		public float animatedAlpha = 1;
+		public Matrix animatedMatrix = null;
+
+		// The options in pixels as of the last layout pass, indexed by TiDimension.TYPE_*
+		// and 0 for options that aren't set. They're keyed on the option objects, so
+		// replace an option rather than changing its value.
+		protected int[] pixels = new int[8];
+		private TiDimension[] resolved = new TiDimension[8];
+		private int resolvedWidth = -1, resolvedHeight = -1;
+
 		public LayoutParams() {
 			super(WRAP_CONTENT, WRAP_CONTENT);
 
 			index = Integer.MIN_VALUE;
 		}
+
+		private void resolve(int type, TiDimension option, View parent, boolean resized)
+		{
+			// only percentages depend on the parent's size
+			if (option != resolved[type] || (resized && option != null && option.isUnitPercent())) {
+				resolved[type] = option;
+				pixels[type] = option != null ? option.getAsPixels(parent) : 0;
+			}
+		}
+
+		private int pixelsOf(int type)
+		{
+			return resolved[type] != null ? pixels[type] : NOT_SET;
+		}
 	}
 
 	protected boolean isVerticalArrangement()
@@ -24,6 +24,7 @@ import org.appcelerator.titanium.proxy.TiViewProxy;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiAnimationBuilder;
 import org.appcelerator.titanium.util.TiAnimationBuilder.TiMatrixAnimation;
+import org.appcelerator.titanium.util.TiAnimator;
 import org.appcelerator.titanium.util.TiConfig;
 import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.util.TiUIHelper;
@@ -185,11 +186,13 @@ public abstract class TiUIView
 	{
 		TiAnimationBuilder builder = proxy.getPendingAnimation();
 		if (builder != null && nativeView != null) {
-			AnimationSet as = builder.render(proxy, nativeView);
-			if (DBG) {
-				Log.d(LCAT, "starting animation: "+as);
+			if (!builder.start(proxy, nativeView)) {
+				AnimationSet as = builder.render(proxy, nativeView);
+				if (DBG) {
+					Log.d(LCAT, "starting animation: "+as);
+				}
+				nativeView.startAnimation(as);
 			}
-			nativeView.startAnimation(as);
 			// Clean up proxy
 			proxy.clearAnimation();
 		}
@@ -230,6 +233,9 @@ public abstract class TiUIView
 			animBuilder = new TiAnimationBuilder();
 		}
 		if (nativeView != null) {
+			// replaces whatever transform an animation left behind
+			TiAnimator.getInstance().cancel(nativeView);
+			layoutParams.animatedMatrix = null;
 			if (matrix != null) {
 				TiMatrixAnimation matrixAnimation = animBuilder.createMatrixAnimation(matrix);
 				matrixAnimation.interpolate = false;
@@ -573,6 +579,8 @@ public abstract class TiUIView
 		}
 		View nv = getNativeView();
 		if (nv != null) {
+			// a running animation would otherwise hold on to the view until it ends
+			TiAnimator.getInstance().cancel(nv);
 			if (nv instanceof ViewGroup) {
 				ViewGroup vg = (ViewGroup) nv;
 				if (DBG) {
@@ -817,7 +825,12 @@ public abstract class TiUIView
 						}
 						return handled;
 					} else {
-						handled = proxy.fireEvent(motionEvents.get(event.getAction()), dictFromEvent(event));
+						String eventName = motionEvents.get(event.getAction());
+						// touchmove arrives for every pointer sample, skip building its data when nobody
+						// listens, neither this view nor the parents the event bubbles up to
+						if (proxy.hierarchyHasListener(eventName)) {
+							handled = proxy.fireEvent(eventName, dictFromEvent(event));
+						}
 					}
 				}
 				return handled;
@@ -14,9 +14,12 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appcelerator.kroll.KrollInvocation;
 import org.appcelerator.kroll.KrollModule;
@@ -27,6 +30,7 @@ import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiBaseActivity;
 import org.appcelerator.titanium.TiBlob;
+import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.TiLaunchActivity;
 import org.appcelerator.titanium.io.TiBaseFile;
@@ -38,8 +42,10 @@ import org.appcelerator.titanium.proxy.TiWindowProxy;
 import org.appcelerator.titanium.util.Log;
 import org.appcelerator.titanium.util.TiConfig;
 import org.appcelerator.titanium.util.TiConvert;
+import org.appcelerator.titanium.util.TiFileHelper2;
 import org.appcelerator.titanium.util.TiPlatformHelper;
 import org.appcelerator.titanium.util.TiRHelper;
+import org.appcelerator.titanium.util.TiTimerWheel;
 import org.appcelerator.titanium.util.TiUIHelper;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Scriptable;
@@ -50,25 +56,38 @@ import android.os.Environment;
 import android.os.Handler;
 
 @Kroll.module @Kroll.topLevel({"Ti", "Titanium"})
-public class TitaniumModule extends KrollModule implements TiContext.OnLifecycleEvent, TiContext.OnServiceLifecycleEvent
+public class TitaniumModule extends KrollModule implements TiContext.OnLifecycleEvent, TiContext.OnServiceLifecycleEvent,
+	TiApplication.OnForegroundChangeListener
 {
 	private static final String LCAT = "TitaniumModule";
 	private static final boolean DBG = TiConfig.LOGD;
 
-	private Stack<String> basePath;
+	private static final String PROPERTY_COMMONJS_SHARED = "ti.android.commonjs.shared";
+
+	// include() nests on the calling context's thread, so each Kroll thread gets its own stack
+	private ThreadLocal<Stack<String>> basePath = new ThreadLocal<Stack<String>>() {
+		@Override
+		protected Stack<String> initialValue()
+		{
+			return new Stack<String>();
+		}
+	};
+	// CommonJS module exports by resolved id when ti.android.commonjs.shared is set,
+	// otherwise each context keeps its own
+	private ConcurrentMap<String, KrollProxy> sharedCommonJsModules = new ConcurrentHashMap<String, KrollProxy>();
+	private Map<String, Long> commonJsLoadTimes = new ConcurrentHashMap<String, Long>();
 	private Map<String, NumberFormat> numberFormats = java.util.Collections.synchronizedMap(
 		new HashMap<String, NumberFormat>());
 
 	public TitaniumModule(TiContext tiContext)
 	{
 		super(tiContext);
-		basePath = new Stack<String>();
-		basePath.push(tiContext.getBaseUrl());
 		if (tiContext.isServiceContext()) {
 			tiContext.addOnServiceLifecycleEventListener(this);
 		} else {
 			tiContext.addOnLifecycleEventListener(this);
 		}
+		tiContext.getTiApp().addOnForegroundChangeListener(this);
 	}
 
 	@Kroll.getProperty @Kroll.method
@@ -109,6 +128,7 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 	public void include(KrollInvocation invocation, Object[] files)
 	{
 		TiContext tiContext = invocation.getTiContext();
+		Stack<String> basePath = this.basePath.get();
 		for(Object filename : files) {
 			try {
 				// we need to make sure paths included from sub-js files are actually relative
@@ -131,50 +151,54 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 		}
 	}
 
-	private HashMap<Thread, HashMap<Integer, Timer>> timers = new HashMap<Thread, HashMap<Integer, Timer>>();
-	private int currentTimerId;
+	private static final String PROPERTY_TIMER_BACKGROUND_ALIGNMENT = "ti.android.timers.backgroundalignment";
+	private static final long DEFAULT_TIMER_BACKGROUND_ALIGNMENT = 1000;
 
-	protected class Timer implements Runnable
+	// one timer wheel per Kroll thread, and every live timer by id so any thread can clear it
+	private Map<Thread, TiTimerWheel> timerWheels = new ConcurrentHashMap<Thread, TiTimerWheel>();
+	private Map<Integer, Timer> timers = new ConcurrentHashMap<Integer, Timer>();
+	private AtomicInteger currentTimerId = new AtomicInteger();
+	private long timerAlignment = 0;
+
+	protected class Timer extends TiTimerWheel.Timer
 	{
-		protected long timeout;
-		protected boolean interval;
 		protected Object[] args;
 		protected KrollCallback callback;
-		protected Handler handler;
+		protected TiTimerWheel timerWheel;
 		protected int id;
-		protected boolean canceled;
 	
-		public Timer(int id, Handler handler, KrollCallback callback, long timeout, Object[] args, boolean interval)
+		public Timer(int id, TiTimerWheel wheel, KrollCallback callback, long timeout, Object[] args, boolean interval)
 		{
+			super(timeout, interval);
 			this.id = id;
-			this.handler = handler;
+			this.timerWheel = wheel;
 			this.callback = callback;
-			this.timeout = timeout;
 			this.args = args;
-			this.interval = interval;
 		}
 
 		public void schedule()
 		{
-			handler.postDelayed(this, timeout);
+			timerWheel.schedule(this);
 		}
 
 		@Override
 		public void run()
 		{
-			if (canceled) return;
-			Log.d(LCAT, "calling " + (interval?"interval":"timeout") + " timer " + id + " @" + new Date().getTime());
-			long start = System.currentTimeMillis();
-			callback.callSync(args);
-			if (interval && !canceled) {
-				handler.postDelayed(this, timeout - (System.currentTimeMillis() - start));
+			if (DBG) {
+				Log.d(LCAT, "calling " + (repeat?"interval":"timeout") + " timer " + id + " @" + new Date().getTime());
 			}
+			callback.callSync(args);
 		}
 
 		public void cancel()
 		{
-			handler.removeCallbacks(this);
-			canceled = true;
+			timerWheel.cancel(this);
+		}
+
+		@Override
+		protected void onFinished()
+		{
+			timers.remove(id);
 		}
 	}
 
@@ -184,17 +208,21 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 		// TODO: we should handle evaluatable code eventually too..
 		if (fn instanceof KrollCallback) {
 			KrollCallback callback = (KrollCallback) fn;
-			int timerId = currentTimerId++;
+			int timerId = currentTimerId.getAndIncrement();
 			Handler handler = context.getMessageQueue().getHandler();
 
-			Timer timer = new Timer(timerId, handler, callback, timeout, args, interval);
 			Thread thread = handler.getLooper().getThread();
-			HashMap<Integer, Timer> threadTimers = timers.get(thread);
-			if (threadTimers == null) {
-				threadTimers = new HashMap<Integer, Timer>();
-				timers.put(thread, threadTimers);
+			TiTimerWheel wheel;
+			synchronized (timerWheels) {
+				wheel = timerWheels.get(thread);
+				if (wheel == null) {
+					wheel = new TiTimerWheel(handler);
+					wheel.setAlignment(timerAlignment);
+					timerWheels.put(thread, wheel);
+				}
 			}
-			threadTimers.put(timerId, timer);
+			Timer timer = new Timer(timerId, wheel, callback, timeout, args, interval);
+			timers.put(timerId, timer);
 			timer.schedule();
 			return timerId;
 		}
@@ -211,13 +239,9 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 	@Kroll.method @Kroll.topLevel
 	public void clearTimeout(int timerId)
 	{
-		for (Thread thread : timers.keySet()) {
-			HashMap<Integer, Timer> threadTimers = timers.get(thread);
-			if (threadTimers.containsKey(timerId)) {
-				Timer timer = threadTimers.remove(timerId);
-				timer.cancel();
-				break;
-			}
+		Timer timer = timers.remove(timerId);
+		if (timer != null) {
+			timer.cancel();
 		}
 	}
 
@@ -267,18 +291,20 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 
 	public void cancelTimers(Thread thread)
 	{
-		HashMap<Integer, Timer> threadTimers = timers.get(thread);
-		if (threadTimers == null) return;
-
-		Iterator<Timer> timerIter = threadTimers.values().iterator();
-		while (timerIter.hasNext()) {
-			Timer timer = timerIter.next();
-			if (timer != null) {
-				timer.cancel();
-				timerIter.remove();
+		TiTimerWheel wheel = timerWheels.remove(thread);
+		if (wheel == null) return;
+
+		wheel.cancelAll();
+	}
+
+	protected void setTimerAlignment(long alignment)
+	{
+		synchronized (timerWheels) {
+			timerAlignment = alignment;
+			for (TiTimerWheel wheel : timerWheels.values()) {
+				wheel.setAlignment(alignment);
 			}
 		}
-		threadTimers.clear();
 	}
 
 	@Kroll.method @Kroll.topLevel("String.format")
@@ -417,8 +443,38 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 			return module;
 		}
 
-		// NOTE: commonjs modules load absolute to root in Titanium
-		String fileUrl = "app://"+path+".js";
+		// NOTE: commonjs modules load absolute to root in Titanium, relative ids
+		// resolve against the requiring module or the current context's base url
+		String baseDir = TiFileHelper2.getResourceRelativePath(invocation.getTiContext().getBaseUrl());
+		String id = resolveModuleId(path, baseDir == null ? "" : baseDir);
+
+		// a module's exports belong to the context that required it, unless the app
+		// opts in to one copy of each module evaluated in the root context
+		ConcurrentMap<String, KrollProxy> modules;
+		if (ctx.getTiApp().getSystemProperties().getBool(PROPERTY_COMMONJS_SHARED, false)) {
+			modules = sharedCommonJsModules;
+		} else {
+			ctx = invocation.getTiContext();
+			modules = ctx.getCommonJsModules();
+		}
+
+		KrollProxy exports = modules.get(id);
+		if (exports != null) {
+			return exports;
+		}
+
+		exports = loadCommonJsModule(ctx, id);
+		if (exports == null) {
+			return null;
+		}
+		// a concurrent require of the same module may have finished first
+		KrollProxy loaded = modules.putIfAbsent(id, exports);
+		return loaded != null ? loaded : exports;
+	}
+
+	protected KrollProxy loadCommonJsModule(TiContext ctx, String id)
+	{
+		String fileUrl = TiC.URL_APP_PREFIX + id + ".js";
 		TiBaseFile tbf = TiFileFactory.createTitaniumFile(ctx, new String[]{ fileUrl }, false);
 		if (tbf!=null)
 		{
@@ -430,42 +486,95 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 					return null;
 				}
 
-				// create the common js exporter
+				long start = System.currentTimeMillis();
+				// create the common js exporter, with a require() that resolves
+				// relative ids against this module's directory
+				String moduleDir = id.substring(0, id.lastIndexOf('/') + 1)
+					.replace("\\", "\\\\").replace("'", "\\'");
 				KrollProxy proxy = new KrollProxy(ctx);
 				StringBuilder buf = new StringBuilder();
-				buf.append("(function(exports){");
+				buf.append("(function(exports,require){");
 				buf.append(blob.getText());
-				buf.append("return exports;");
-				buf.append("})({})");
+				buf.append("\nreturn exports;");
+				buf.append("})({},function(id){return Titanium.require(id.charAt(0)=='.'?'");
+				buf.append(moduleDir);
+				buf.append("'+id:id);})");
 				Scriptable result = (Scriptable)ctx.evalJS(buf.toString());
 				// common js modules export all functions/properties as 
 				// properties of the special export object provided
 				for (Object key : result.getIds())
 				{
 					String propName = key.toString();
-					Scriptable propValue = (Scriptable)result.get(propName,result);
-					proxy.setProperty(propName, propValue);
+					proxy.setProperty(propName, result.get(propName,result));
 				}
 				// spec says you must have a read-only id property - we don't
 				// currently support readonly in kroll so this is probably OK for now
-				proxy.setProperty("id", path);
+				proxy.setProperty("id", id);
 				// uri is optional but we point it to where we loaded it
 				proxy.setProperty("uri",fileUrl);
+
+				long elapsed = System.currentTimeMillis() - start;
+				commonJsLoadTimes.put(id, elapsed);
+				if (DBG) {
+					Log.d(LCAT, "Loaded CommonJS module " + id + " in " + elapsed + "ms");
+				}
 				return proxy;
 			}
 			catch(Exception ex)
 			{
-				Log.e(LCAT,"Error loading module named: "+path,ex);
+				Log.e(LCAT,"Error loading module named: "+id,ex);
 				Context.throwAsScriptRuntimeEx(ex);
 				return null;
 			}
 		}
 
 		//the spec says we are required to throw an exception
-		Context.reportError("couldn't find module: "+path);
+		Context.reportError("couldn't find module: "+id);
 		return null;
 	}
 
+	/**
+	 * @return how long each CommonJS module loaded so far took to evaluate, in milliseconds.
+	 */
+	public Map<String, Long> getCommonJsLoadTimes()
+	{
+		return new HashMap<String, Long>(commonJsLoadTimes);
+	}
+
+	// ids starting with "./" or "../" are relative to baseDir, others to the Resources root
+	protected static String resolveModuleId(String path, String baseDir)
+	{
+		if (path.startsWith("./") || path.startsWith("../")) {
+			path = baseDir + path;
+		}
+		if (path.endsWith(".js")) {
+			path = path.substring(0, path.length() - 3);
+		}
+
+		LinkedList<String> segments = new LinkedList<String>();
+		for (String segment : path.split("/")) {
+			if (segment.length() == 0 || segment.equals(".")) {
+				continue;
+			}
+			if (segment.equals("..")) {
+				if (!segments.isEmpty()) {
+					segments.removeLast();
+				}
+				continue;
+			}
+			segments.add(segment);
+		}
+
+		StringBuilder id = new StringBuilder(path.length());
+		for (String segment : segments) {
+			if (id.length() > 0) {
+				id.append('/');
+			}
+			id.append(segment);
+		}
+		return id.toString();
+	}
+
 	@Kroll.method
 	public void dumpCoverage()
 	{
@@ -486,6 +595,18 @@ public class TitaniumModule extends KrollModule implements TiContext.OnLifecycle
 		}
 	}
 
+	public void onForegroundChanged(boolean foreground)
+	{
+		if (foreground) {
+			setTimerAlignment(0);
+		} else {
+			// align intervals while none of the app's activities are visible so they fire together
+			long alignment = getTiContext().getTiApp().getSystemProperties().getInt(
+				PROPERTY_TIMER_BACKGROUND_ALIGNMENT, (int) DEFAULT_TIMER_BACKGROUND_ALIGNMENT);
+			setTimerAlignment(alignment);
+		}
+	}
+
 	@Override
 	public void onDestroy(Activity activity) {
 		if (activity instanceof TiBaseActivity) {
@@ -281,7 +281,7 @@ var harnessBuildTriggers = [
 	ti.path.join('build', 'android', 'AndroidManifest.custom.xml'),
 	
 	// Directory triggers (any file under these dirs)
-	'modules', 'Resources',
+	'modules', 'Resources', 'i18n',
 	ti.path.join('build', 'android', 'src'),
 	ti.path.join('build', 'android', 'res')
 ];
@@ -0,0 +1,69 @@
+describe("Ti.Analytics upload tests", {
+	// tiapp.xml points ti.android.analytics.url at this port, so the events queued at
+	// startup are posted to a listener the test runs instead of the analytics server
+	uploadsEventsToServer: asyncTest({
+		start: function() {
+			var request = "", received = 0, continued = false;
+			var listener = Ti.Network.Socket.createTCP({
+				host:'localhost',
+				port:40406
+			});
+
+			var respond = this.async(function(inbound) {
+				valueOf(request.indexOf("POST ")).shouldBe(0);
+				valueOf(request).shouldContain("Content-Encoding: gzip");
+				valueOf(request.indexOf("Transfer-Encoding: chunked")).shouldBe(-1);
+				valueOf(contentLength(request)).shouldBeGreaterThan(0);
+
+				var response = Ti.createBuffer({
+					value:"HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+				});
+				Ti.Stream.write(inbound, response, function(e) {
+					inbound.close();
+					listener.close();
+				});
+			});
+
+			var contentLength = function(request) {
+				var match = /\r\nContent-Length: *(\d+)/i.exec(request);
+				return match ? parseInt(match[1], 10) : -1;
+			};
+
+			var readRequest = function(inbound) {
+				var readBuffer = Ti.createBuffer({ length:4096 });
+				Ti.Stream.read(inbound, readBuffer, function(e) {
+					if (e.bytesProcessed > 0) {
+						request += readBuffer.clone(0, e.bytesProcessed).toString();
+						received += e.bytesProcessed;
+					}
+					if (!continued && request.indexOf("Expect: 100-continue") != -1 && request.indexOf("\r\n\r\n") != -1) {
+						// let the client go ahead with the body instead of waiting for it to give up on us
+						continued = true;
+						Ti.Stream.write(inbound, Ti.createBuffer({ value:"HTTP/1.1 100 Continue\r\n\r\n" }), function(e) {});
+					}
+					// the headers are ASCII, so their length in the string is their length in bytes,
+					// the gzipped body after them is only counted
+					var headerEnd = request.indexOf("\r\n\r\n");
+					var complete = headerEnd != -1 && contentLength(request) >= 0
+						&& received - (headerEnd + 4) >= contentLength(request);
+					if (e.bytesProcessed < 0 || complete) {
+						respond(inbound);
+					} else {
+						readRequest(inbound);
+					}
+				});
+			};
+
+			listener.accepted = function(e) {
+				readRequest(e.inbound);
+			};
+			valueOf(function() { listener.listen(); }).shouldNotThrowException();
+			valueOf(function() { listener.accept({}); }).shouldNotThrowException();
+
+			// the startup send retries with a backoff, this event goes out with one of the retries
+			Ti.Analytics.featureEvent("drillbit.analytics", { suite:"android.analytics" });
+		},
+		timeout: 60000,
+		timeoutError: "Timed out waiting for the analytics upload"
+	})
+});
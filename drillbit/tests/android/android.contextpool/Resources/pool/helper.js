@@ -0,0 +1 @@
+var poolHelper = 'pool/helper.js';
@@ -0,0 +1,9 @@
+// included relative to this window's url, so it only loads when the base url is bound
+Ti.include('helper.js');
+
+var win = Ti.UI.currentWindow;
+Ti.App.fireEvent('contextpool_opened', {
+	openCount: win.openCount,
+	helper: typeof poolHelper == 'undefined' ? null : poolHelper
+});
+win.close();
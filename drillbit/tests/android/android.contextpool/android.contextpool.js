@@ -0,0 +1,61 @@
+describe("Android context pool tests", {
+	// tiapp.xml sets ti.android.contextpool.size to 1, so url windows claim a warm context
+	// whenever one is ready and the pool refills after each claim
+	claimsAndRefills: asyncTest({
+		start: function() {
+			var opened = [];
+			var openWindow = function(count) {
+				var w = Ti.UI.createWindow({ url:'pool/win.js', openCount:count });
+				w.open();
+			};
+
+			var finish = this.async(function() {
+				valueOf(opened.length).shouldBe(3);
+				for (var i = 0; i < opened.length; i++) {
+					valueOf(opened[i].openCount).shouldBe(i + 1);
+					valueOf(opened[i].helper).shouldBe('pool/helper.js');
+				}
+			});
+
+			var listener = function(e) {
+				opened.push({ openCount:e.openCount, helper:e.helper });
+				if (opened.length < 3) {
+					// give the pool an idle moment to warm the next context
+					setTimeout(function() { openWindow(opened.length + 1); }, 1500);
+				} else {
+					Ti.App.removeEventListener('contextpool_opened', listener);
+					finish();
+				}
+			};
+			Ti.App.addEventListener('contextpool_opened', listener);
+
+			// the pool fills once the modules are booted and the UI thread goes idle
+			setTimeout(function() { openWindow(1); }, 1500);
+		},
+		timeout: 30000,
+		timeoutError: "Timed out waiting for the url windows to open"
+	}),
+
+	coldWhenPoolEmpty: asyncTest({
+		start: function() {
+			var opened = 0;
+			var finish = this.async(function(e) {
+				valueOf(e.helper).shouldBe('pool/helper.js');
+			});
+			var listener = function(e) {
+				opened++;
+				if (opened == 2) {
+					Ti.App.removeEventListener('contextpool_opened', listener);
+					finish(e);
+				}
+			};
+			Ti.App.addEventListener('contextpool_opened', listener);
+
+			// the second window opens before the pool had a chance to refill
+			Ti.UI.createWindow({ url:'pool/win.js', openCount:1 }).open();
+			Ti.UI.createWindow({ url:'pool/win.js', openCount:2 }).open();
+		},
+		timeout: 30000,
+		timeoutError: "Timed out waiting for the url windows to open"
+	})
+});
@@ -0,0 +1,27 @@
+describe("Ti.UI lang conversion tests", {
+	// i18n/en/strings.xml in this suite holds the strings looked up by the *id properties
+	creationDictUnchanged: function() {
+		var labelOptions = { textid:'drillbit_label_text' };
+		var label = Ti.UI.createLabel(labelOptions);
+		valueOf(label.text).shouldBe('Localized label');
+		valueOf(labelOptions.text).shouldBeUndefined();
+		valueOf(labelOptions.textid).shouldBe('drillbit_label_text');
+
+		var windowOptions = { titleid:'drillbit_window_title' };
+		var w = Ti.UI.createWindow(windowOptions);
+		valueOf(w.title).shouldBe('Localized window');
+		valueOf(windowOptions.title).shouldBeUndefined();
+
+		var tabOptions = { titleid:'drillbit_tab_title', window:w };
+		var tab = Ti.UI.createTab(tabOptions);
+		valueOf(tab.title).shouldBe('Localized tab');
+		valueOf(tabOptions.title).shouldBeUndefined();
+	},
+
+	explicitValueWins: function() {
+		var options = { text:'plain', textid:'drillbit_label_text' };
+		var label = Ti.UI.createLabel(options);
+		valueOf(label.text).shouldBe('plain');
+		valueOf(options.text).shouldBe('plain');
+	}
+});
@@ -16,5 +16,87 @@ describe("Android HTTPClient tests", {
 		var xhr = Ti.Network.createHTTPClient();
 		xhr.open('GET', url);
 		valueOf(xhr.location).shouldBe(encoded);
-	}
+	},
+
+	// parseJSON builds responseJSON while the response streams in, it has to come out the
+	// same as parsing the text of the same response
+	parseJSONResponse_as_async: function(callback) {
+		var url = 'https://api.github.com/repos/appcelerator/titanium_mobile';
+		var timer = setTimeout(function() {
+			callback.failed("Timed out waiting for HTTP onload");
+		}, 60000);
+		var fail = function(e) {
+			clearTimeout(timer);
+			callback.failed(e.error);
+		};
+
+		var plain = Ti.Network.createHTTPClient();
+		plain.setTimeout(30000);
+		plain.onload = function(e) {
+			var expected = JSON.parse(this.responseText);
+			var xhr = Ti.Network.createHTTPClient();
+			xhr.setTimeout(30000);
+			xhr.parseJSON = true;
+			xhr.onload = function(e) {
+				clearTimeout(timer);
+				try {
+					var json = this.responseJSON;
+					valueOf(json).shouldBeObject();
+					valueOf(json.id).shouldBe(expected.id);
+					valueOf(json.name).shouldBe('titanium_mobile');
+					valueOf(json.full_name).shouldBe(expected.full_name);
+					valueOf(json.owner.login).shouldBe('appcelerator');
+					valueOf(json.owner.id).shouldBe(expected.owner.id);
+					valueOf(json.fork).shouldBe(expected.fork);
+					callback.passed();
+				} catch (err) {
+					callback.failed(err);
+				}
+			};
+			xhr.onerror = fail;
+			xhr.open('GET', url);
+			xhr.send();
+		};
+		plain.onerror = fail;
+		plain.open('GET', url);
+		plain.send();
+	},
+
+	jsonPathResponse: asyncTest({
+		start: function() {
+			var xhr = Ti.Network.createHTTPClient();
+			xhr.setTimeout(30000);
+			xhr.parseJSON = true;
+			xhr.jsonPath = 'owner.login';
+			xhr.onload = this.async(function(e) {
+				valueOf(this.responseJSON).shouldBe('appcelerator');
+			});
+			xhr.onerror = this.async(function(e) {
+				throw e.error;
+			});
+			xhr.open('GET', 'https://api.github.com/repos/appcelerator/titanium_mobile');
+			xhr.send();
+		},
+		timeout: 30000,
+		timeoutError: "Timed out waiting for HTTP onload"
+	}),
+
+	jsonPathMissing: asyncTest({
+		start: function() {
+			var xhr = Ti.Network.createHTTPClient();
+			xhr.setTimeout(30000);
+			xhr.parseJSON = true;
+			xhr.jsonPath = 'owner.no_such_key';
+			xhr.onload = this.async(function(e) {
+				valueOf(this.responseJSON).shouldBeNull();
+			});
+			xhr.onerror = this.async(function(e) {
+				throw e.error;
+			});
+			xhr.open('GET', 'https://api.github.com/repos/appcelerator/titanium_mobile');
+			xhr.send();
+		},
+		timeout: 30000,
+		timeoutError: "Timed out waiting for HTTP onload"
+	})
 });
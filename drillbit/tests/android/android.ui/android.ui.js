@@ -287,6 +287,164 @@ describe("Ti.UI.Android tests", {
 		},10000);
 		w.open();
 
+	},
+
+	// rows added to a section directly mustn't throw off the table's own edits afterwards
+	sectionEditsThenTableEdits_as_async: function(callback) {
+		var w = Ti.UI.createWindow();
+		var section = Ti.UI.createTableViewSection({ headerTitle: 'section' });
+		section.add(Ti.UI.createTableViewRow({ title: 'row 0' }));
+		var tv = Ti.UI.createTableView({ data: [ section ] });
+		w.add(tv);
+		var failureTimeout = setTimeout(function() {
+			w.close();
+			callback.failed("Timed out editing the table");
+		}, 10000);
+		w.addEventListener('open', function() {
+			setTimeout(function() {
+				try {
+					var row2 = Ti.UI.createTableViewRow({ title: 'row 2' });
+					var row3 = Ti.UI.createTableViewRow({ title: 'row 3' });
+					section.add(Ti.UI.createTableViewRow({ title: 'row 1' }));
+					section.add(row2);
+					tv.appendRow(row3);
+					tv.deleteRow(0);
+					tv.insertRowAfter(2, Ti.UI.createTableViewRow({ title: 'row 4' }));
+
+					// updating by row looks the row up in the table's model, so a stale model
+					// would miss row 2 or update the wrong position for row 3
+					tv.updateRow(row2, { title: 'row 2 updated' });
+					tv.updateRow(row3, { title: 'row 3 updated' });
+					var rows = tv.data[0].rows;
+					valueOf(rows.length).shouldBe(4);
+					valueOf(rows[0].title).shouldBe('row 1');
+					valueOf(rows[1].title).shouldBe('row 2 updated');
+					valueOf(rows[2].title).shouldBe('row 3 updated');
+					valueOf(rows[3].title).shouldBe('row 4');
+				} catch (e) {
+					clearTimeout(failureTimeout);
+					w.close();
+					callback.failed(e);
+					return;
+				}
+				// let the list redraw from the model before passing
+				setTimeout(function() {
+					clearTimeout(failureTimeout);
+					w.close();
+					callback.passed();
+				}, 1000);
+			}, 500);
+		});
+		w.open();
+	},
+
+	// Times TiDimension and TiColorHelper on the strings layouts usually use, calling the
+	// parsers directly so nothing else is measured, and checks what they come up with
+	layoutValueParseThroughput: function() {
+		var TiDimension = Packages.org.appcelerator.titanium.TiDimension;
+		var TiColorHelper = Packages.org.appcelerator.titanium.util.TiColorHelper;
+		var TypedValue = Packages.android.util.TypedValue;
+		var dimensions = [
+			['10', 10, TypedValue.COMPLEX_UNIT_PX],
+			['10dp', 10, TypedValue.COMPLEX_UNIT_DIP],
+			['5dip', 5, TypedValue.COMPLEX_UNIT_DIP],
+			['14sp', 14, TypedValue.COMPLEX_UNIT_SP],
+			['50%', 50, TiDimension.COMPLEX_UNIT_PERCENT],
+			['1.5in', 1.5, TypedValue.COMPLEX_UNIT_IN],
+			['12pt', 12, TypedValue.COMPLEX_UNIT_PT],
+			['-4px', -4, TypedValue.COMPLEX_UNIT_PX]
+		];
+		var colors = [
+			['#fff', 0xffffffff | 0],
+			['#abc', 0xffaabbcc | 0],
+			['#ABCDEF', 0xffabcdef | 0],
+			['#80000000', 0x80000000 | 0],
+			['rgb(10,20,30)', 0xff0a141e | 0],
+			['rgba(10,20,30,128)', 0x800a141e | 0],
+			['red', 0xffff0000 | 0]
+		];
+		var check = function() {
+			for (var i = 0; i < dimensions.length; i++) {
+				var d = new TiDimension(dimensions[i][0], TiDimension.TYPE_WIDTH);
+				valueOf(Number(d.getValue())).shouldBe(dimensions[i][1]);
+				valueOf(Number(d.getUnits())).shouldBe(dimensions[i][2]);
+			}
+			for (var j = 0; j < colors.length; j++) {
+				valueOf(Number(TiColorHelper.parseColor(colors[j][0]))).shouldBe(colors[j][1]);
+			}
+		};
+
+		check();
+		var iterations = 5000;
+		var start = new Date().getTime();
+		for (var k = 0; k < iterations; k++) {
+			new TiDimension(dimensions[k % dimensions.length][0], TiDimension.TYPE_WIDTH);
+			TiColorHelper.parseColor(colors[k % colors.length][0]);
+		}
+		var elapsed = new Date().getTime() - start;
+		Ti.API.info("layoutValueParseThroughput: " + iterations + " dimensions and colors in " + elapsed + "ms");
+		// the same answers once they come from the caches
+		check();
+	},
+
+	// odd dimension and color strings have to come out the same as their plain spellings
+	layoutValueEdgeInputs_as_async: function(callback) {
+		var w = Ti.UI.createWindow();
+		var pairs = [];
+		var addPair = function(kind, odd, plain) {
+			var views = [odd, plain].map(function(value) {
+				var props = { top: 0, left: 0, width: 10, height: 10, backgroundColor: '#000' };
+				props[kind] = value;
+				var view = Ti.UI.createView(props);
+				w.add(view);
+				return view;
+			});
+			pairs.push({ kind: kind, odd: odd, plain: plain, views: views });
+		};
+		// neither of these is a number, so they're 0px like any other bad dimension
+		addPair('width', '-', '0');
+		addPair('width', '5.', '0');
+		addPair('width', ' 10 ', '10px');
+		addPair('width', '5dip', '5dp');
+		addPair('backgroundColor', '#abcd', '#aabbccdd');
+		addPair('backgroundColor', '#ABCDEF', '#abcdef');
+		addPair('backgroundColor', '#ABC', '#aabbcc');
+		addPair('backgroundColor', 'rgb(10,20,30)', '#0a141e');
+		addPair('backgroundColor', 'rgba(10,20,30,128)', '#800a141e');
+
+		var failureTimeout = setTimeout(function() {
+			w.close();
+			callback.failed("Timed out laying out views");
+		}, 10000);
+		w.addEventListener('open', function() {
+			setTimeout(function() {
+				clearTimeout(failureTimeout);
+				var pixels = function(view) {
+					return Ti.Utils.base64encode(view.toImage().media).toString();
+				};
+				for (var i = 0; i < pairs.length; i++) {
+					var pair = pairs[i], odd = pair.views[0], plain = pair.views[1];
+					var same = pair.kind == 'width' ?
+						odd.size.width == plain.size.width : pixels(odd) == pixels(plain);
+					if (!same) {
+						w.close();
+						callback.failed(pair.kind + " '" + pair.odd + "' doesn't match '" + pair.plain + "'");
+						return;
+					}
+				}
+				// and a color that is different has to show up as such
+				var other = Ti.UI.createView({ top: 0, left: 0, width: 10, height: 10, backgroundColor: '#abc' });
+				w.add(other);
+				if (pixels(other) == pixels(pairs[4].views[0])) {
+					w.close();
+					callback.failed("'#abc' drew the same as '#abcd'");
+					return;
+				}
+				w.close();
+				callback.passed();
+			}, 1000);
+		});
+		w.open();
 	}
 })
 
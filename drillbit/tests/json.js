@@ -60,5 +60,46 @@ describe("JSON tests", {
 		valueOf(o[1]).shouldBe('mobile');
 		valueOf(o[2]).shouldBeObject();
 		valueOf(o[2].name_value_list).shouldBeObject();
+	},
+
+	// Times parse / stringify of a large document, and makes sure every item round trips
+	largeDocument: function() {
+		var items = [];
+		for (var i = 0; i < 5000; i++) {
+			items.push({ id: i, title: "Item \"" + i + "\"", price: i * 1.25, tags: ["a", "b"], available: i % 2 == 0, parent: null });
+		}
+		var start = new Date().getTime();
+		var str = JSON.stringify({ items: items });
+		Ti.API.info("largeDocument: stringify " + str.length + " chars: " + (new Date().getTime() - start) + "ms");
+
+		start = new Date().getTime();
+		var o = JSON.parse(str);
+		Ti.API.info("largeDocument: parse " + str.length + " chars: " + (new Date().getTime() - start) + "ms");
+
+		valueOf(o.items.length).shouldBe(items.length);
+		var mismatch = null;
+		for (var i = 0; i < items.length && mismatch === null; i++) {
+			var expected = items[i], actual = o.items[i];
+			var keys = 0;
+			for (var key in actual) {
+				keys++;
+			}
+			if (keys != 6 || actual.id !== expected.id || actual.title !== expected.title
+				|| actual.price !== expected.price || actual.available !== expected.available
+				|| actual.parent !== null || actual.tags.length != 2
+				|| actual.tags[0] !== "a" || actual.tags[1] !== "b") {
+				mismatch = i;
+			}
+		}
+		valueOf(mismatch).shouldBeNull();
+		valueOf(JSON.stringify(o)).shouldBe(str);
+	},
+
+	// proxies are written with their properties, like any other object
+	proxies: function() {
+		var o = JSON.parse(JSON.stringify({ button: Ti.UI.createButton({ title: "json", custom: 5 }) }));
+		valueOf(o.button).shouldBeObject();
+		valueOf(o.button.title).shouldBe("json");
+		valueOf(o.button.custom).shouldBe(5);
 	}
 })
\ No newline at end of file
@@ -165,5 +165,71 @@ describe("Kroll tests",
 		valueOf(results['xyz']).shouldBe('title');
 		valueOf(results['foo.jpg']).shouldBe('backgroundImage');
 		valueOf(results['sup']).shouldBe('custom');
+	},
+
+	// Times argument conversion for the call shapes we see most, and makes sure the
+	// converter's fast paths hand back the same values as the generic ones
+	convertArgumentShapes: function() {
+		function time(name, iterations, fn) {
+			var start = new Date().getTime();
+			for (var i = 0; i < iterations; i++) {
+				fn();
+			}
+			Ti.API.info("convertArgumentShapes: " + name + " x" + iterations + ": " + (new Date().getTime() - start) + "ms");
+		}
+
+		// strings, numbers and booleans
+		var view = Ti.UI.createView();
+		time("primitives", 500, function() {
+			view.setWidth(100);
+			view.setVisible(true);
+			view.setBackgroundColor("#fff");
+		});
+		valueOf(view.width).shouldBe(100);
+		valueOf(view.backgroundColor).shouldBe("#fff");
+
+		// option dictionaries
+		time("dict", 200, function() {
+			Ti.UI.createView({ width: 10, height: 10, top: 0, left: 0, backgroundColor: "red", custom: { a: 1 } });
+		});
+
+		// arrays of primitives and mixed arrays
+		var list = [];
+		for (var i = 0; i < 100; i++) {
+			list.push("item" + i);
+		}
+		time("string array", 50, function() {
+			Ti.App.Properties.setList("kroll.convert.list", list);
+		});
+		valueOf(Ti.App.Properties.getList("kroll.convert.list")).shouldMatchArray(list);
+		Ti.App.Properties.removeProperty("kroll.convert.list");
+
+		// large arrays of dictionaries, e.g. table data
+		var data = [];
+		for (var i = 0; i < 1000; i++) {
+			data.push({ title: "Row " + i, hasChild: i % 2 == 0 });
+		}
+		var tv = Ti.UI.createTableView();
+		time("table data", 5, function() {
+			tv.setData(data);
+		});
+		valueOf(tv.data[0].rowCount).shouldBe(1000);
+	},
+
+	creationDictIsCopied: function() {
+		// proxies keep the values they were created with, not a view of the options object
+		var options = { title: "created", width: 100 };
+		var button = Ti.UI.createButton(options);
+		options.title = "changed";
+		options.custom = "added";
+		delete options.width;
+
+		valueOf(button.title).shouldBe("created");
+		valueOf(button.width).shouldBe(100);
+		valueOf(button.custom).shouldNotBe("added");
+
+		button.title = "set";
+		valueOf(button.title).shouldBe("set");
+		valueOf(options.title).shouldBe("changed");
 	}
 });
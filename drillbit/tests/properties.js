@@ -77,6 +77,27 @@ describe("Ti.Properties tests", {
 
 		var value = Ti.App.Properties.getDouble('time');
 		valueOf(value).shouldBe(time);
+	},
+
+	setPropertiesKeepsTypes: function() {
+		Ti.App.Properties.setProperties({
+			spCount: 3,
+			spRatio: 2.5,
+			spFlag: true,
+			spName: 'name'
+		});
+		valueOf(Ti.App.Properties.getInt('spCount')).shouldBe(3);
+		valueOf(Ti.App.Properties.getDouble('spCount')).shouldBe(3);
+		valueOf(Ti.App.Properties.getDouble('spRatio')).shouldBe(2.5);
+		valueOf(Ti.App.Properties.getInt('spRatio')).shouldBe(2);
+		valueOf(Ti.App.Properties.getBool('spFlag')).shouldBe(true);
+		valueOf(Ti.App.Properties.getString('spName')).shouldBe('name');
+
+		// the same keys still work with the typed setters afterwards
+		Ti.App.Properties.setInt('spCount', 4);
+		valueOf(Ti.App.Properties.getInt('spCount')).shouldBe(4);
+		Ti.App.Properties.setBool('spFlag', false);
+		valueOf(Ti.App.Properties.getBool('spFlag')).shouldBe(false);
 	}
 });
 
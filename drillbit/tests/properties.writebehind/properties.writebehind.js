@@ -0,0 +1,94 @@
+/*global Titanium, Ti, describe, valueOf */
+// tiapp.xml turns on ti.android.properties.writebehind, so writes here are cached and
+// committed by a background flush
+describe("Ti.Properties write-behind tests", {
+	readsOwnWrites: function() {
+		Ti.App.Properties.setProperties({
+			wbString: 'write behind',
+			wbInt: 42,
+			wbBool: true,
+			wbDouble: 2.25
+		});
+		valueOf(Ti.App.Properties.getString('wbString')).shouldBe('write behind');
+		valueOf(Ti.App.Properties.getInt('wbInt')).shouldBe(42);
+		valueOf(Ti.App.Properties.getBool('wbBool')).shouldBe(true);
+		valueOf(Ti.App.Properties.getDouble('wbDouble')).shouldBe(2.25);
+
+		var proplist = Ti.App.Properties.listProperties();
+		valueOf(proplist.indexOf('wbString')).shouldBeGreaterThan(-1);
+		valueOf(proplist.indexOf('wbDouble')).shouldBeGreaterThan(-1);
+	},
+
+	removedDoubleReturnsDefault: function() {
+		Ti.App.Properties.setDouble('wbRemoved', 1.5);
+		Ti.App.Properties.removeProperty('wbRemoved');
+		valueOf(Ti.App.Properties.getDouble('wbRemoved', 3.5)).shouldBe(3.5);
+		valueOf(Ti.App.Properties.getDouble('wbRemoved')).shouldBeNull();
+
+		Ti.App.Properties.setProperties({ wbRemoved: null });
+		valueOf(Ti.App.Properties.getDouble('wbRemoved', 4.5)).shouldBe(4.5);
+	},
+
+	doubleOfIntProperty: function() {
+		Ti.App.Properties.setInt('wbIntAsDouble', 7);
+		valueOf(Ti.App.Properties.getDouble('wbIntAsDouble', 0)).shouldBe(7);
+	},
+
+	flushKeepsValues: function() {
+		Ti.App.Properties.setString('wbFlushed', 'before flush');
+		Ti.App.Properties.setList('wbList', ['one', 'two']);
+		valueOf(function() { Ti.App.Properties.flush(); }).shouldNotThrowException();
+
+		valueOf(Ti.App.Properties.getString('wbFlushed')).shouldBe('before flush');
+		valueOf(Ti.App.Properties.getList('wbList').length).shouldBe(2);
+
+		// writes after a flush start a new batch
+		Ti.App.Properties.setString('wbFlushed', 'after flush');
+		valueOf(Ti.App.Properties.getString('wbFlushed')).shouldBe('after flush');
+		Ti.App.Properties.flush();
+		valueOf(Ti.App.Properties.getString('wbFlushed')).shouldBe('after flush');
+	},
+
+	valuesSurviveScheduledFlush: asyncTest({
+		start: function() {
+			Ti.App.Properties.setString('wbScheduled', 'first');
+			Ti.App.Properties.setInt('wbCounter', 1);
+
+			var checkFlushed = this.async(function() {
+				valueOf(Ti.App.Properties.getString('wbScheduled')).shouldBe('second');
+				valueOf(Ti.App.Properties.getInt('wbCounter')).shouldBe(2);
+				valueOf(Ti.App.Properties.hasProperty('wbScheduled')).shouldBe(true);
+			});
+
+			// the second round of writes lands while the first one is waiting to be flushed
+			setTimeout(function() {
+				Ti.App.Properties.setString('wbScheduled', 'second');
+				Ti.App.Properties.setInt('wbCounter', 2);
+				setTimeout(checkFlushed, 1500);
+			}, 250);
+		},
+		timeout: 10000,
+		timeoutError: "Timed out waiting for the scheduled flush"
+	}),
+
+	setPropertiesKeepsTypes: function() {
+		Ti.App.Properties.setProperties({
+			spCount: 3,
+			spRatio: 2.5,
+			spFlag: true,
+			spName: 'name'
+		});
+		valueOf(Ti.App.Properties.getInt('spCount')).shouldBe(3);
+		valueOf(Ti.App.Properties.getDouble('spCount')).shouldBe(3);
+		valueOf(Ti.App.Properties.getDouble('spRatio')).shouldBe(2.5);
+		valueOf(Ti.App.Properties.getInt('spRatio')).shouldBe(2);
+		valueOf(Ti.App.Properties.getBool('spFlag')).shouldBe(true);
+		valueOf(Ti.App.Properties.getString('spName')).shouldBe('name');
+
+		// the same keys still work with the typed setters afterwards
+		Ti.App.Properties.setInt('spCount', 4);
+		valueOf(Ti.App.Properties.getInt('spCount')).shouldBe(4);
+		Ti.App.Properties.setBool('spFlag', false);
+		valueOf(Ti.App.Properties.getBool('spFlag')).shouldBe(false);
+	}
+});
@@ -1124,5 +1124,50 @@ describe("Ti.XML tests", {
 		valueOf(name).shouldNotBeNull();
 		valueOf(name.nodeName).shouldBe("test:name");
 		valueOf(name.value).shouldBe("value");
+	},
+
+	pullParser: function() {
+		if (Ti.Platform.osname != 'android') {
+			return;
+		}
+		var doc = Ti.XML.parseString(this.testSource["nodes.xml"]);
+		var elementCount = this.countNodes(doc, 1);
+
+		// from a string and from a file, in small batches to cross batch boundaries
+		var sources = [this.testSource["nodes.xml"], Ti.Filesystem.getFile("nodes.xml")];
+		for (var s = 0; s < sources.length; s++) {
+			var parser = Ti.XML.createPullParser(sources[s]);
+			var starts = 0, ends = 0, depth = 0, maxDepth = 0;
+			var events = parser.next(5);
+			while (events.length > 0) {
+				for (var i = 0; i < events.length; i++) {
+					var event = events[i];
+					if (event.type == parser.START_TAG) {
+						starts++;
+						valueOf(event.depth).shouldBe(++depth);
+						maxDepth = Math.max(maxDepth, depth);
+					} else if (event.type == parser.END_TAG) {
+						ends++;
+						valueOf(event.depth).shouldBe(depth--);
+					} else {
+						valueOf(event.type).shouldBe(parser.TEXT);
+					}
+				}
+				events = parser.next(5);
+			}
+			valueOf(starts).shouldBe(elementCount);
+			valueOf(ends).shouldBe(elementCount);
+			valueOf(depth).shouldBe(0);
+		}
+
+		// skipping the root element leaves nothing else
+		parser = Ti.XML.createPullParser(this.testSource["nodes.xml"]);
+		events = parser.next(1);
+		valueOf(events[0].type).shouldBe(parser.START_TAG);
+		parser.skip();
+		valueOf(parser.next().length).shouldBe(0);
+
+		var attrs = Ti.XML.createPullParser(this.testSource["attrs.xml"]).next(1);
+		valueOf(attrs[0].attributes).shouldBeObject();
 	}
 });
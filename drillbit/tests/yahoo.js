@@ -1,4 +1,10 @@
 describe("Ti.Yahoo tests", {
+	// yahoo.js is evaluated by the module's context specific bindings
+	scriptBindings: function() {
+		valueOf(Ti.Yahoo.percentEscape).shouldBeFunction();
+		valueOf(Ti.Yahoo.oauthRequest).shouldBeFunction();
+	},
+
 	yqlFlickrCats: asyncTest({
 		start: function() {
 			Ti.Yahoo.yql('select * from flickr.photos.search where text="Cat" limit 10', this.async(function(e) {
@@ -1189,7 +1189,8 @@ class Builder(object):
 			# No sources are older than their classfile counterparts, we can skip javac / dex
 			return False
 
-		classpath = os.pathsep.join([self.android_jar, os.pathsep.join(self.android_jars)])
+		# the classes dir holds the compiled JS referenced by the generated script index
+		classpath = os.pathsep.join([self.android_jar, os.pathsep.join(self.android_jars), self.classes_dir])
 
 		project_module_dir = os.path.join(self.top_dir,'modules','android')
 		for module in self.modules:
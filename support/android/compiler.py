@@ -157,6 +157,66 @@ class Compiler(object):
 			sys.stderr.write("[ERROR] %s\n" % se)
 			sys.stderr.flush()
 			sys.exit(1)
+		return (resource_relative_path, js_class_name)
+
+	def write_script_index(self, scripts):
+		# TiScriptRunner instantiates compiled scripts through this index instead of reflection
+		index_dir = os.path.join(self.root_dir, 'gen', self.appid.replace('.', os.sep))
+		index_file = os.path.join(index_dir, 'AppScriptIndex.java')
+		if scripts is None:
+			if os.path.exists(index_file):
+				os.remove(index_file)
+			# the class from an earlier compiled build would still end up in the dex
+			index_class = os.path.join(self.classes_dir, self.appid.replace('.', os.sep), 'AppScriptIndex.class')
+			if os.path.exists(index_class):
+				os.remove(index_class)
+			return
+
+		paths = []
+		cases = []
+		for index, (relative_path, class_name) in enumerate(scripts):
+			paths.append('\t\tpaths.put("%s", %d);' % (relative_path.replace('\\', '\\\\').replace('"', '\\"'), index))
+			cases.append('\t\t\tcase %d: return new %s.js.%s();' % (index, self.appid, class_name))
+
+		source = """/* AUTO-GENERATED FILE.  DO NOT MODIFY.
+ *
+ * This class was automatically generated by 
+ * Appcelerator. It should not be modified by hand.
+ */
+package %s;
+
+import java.util.HashMap;
+
+import org.appcelerator.titanium.ITiScriptIndex;
+import org.mozilla.javascript.Script;
+
+public final class AppScriptIndex implements ITiScriptIndex {
+	private static final HashMap<String, Integer> paths = new HashMap<String, Integer>(%d);
+	static {
+%s
+	}
+
+	public Script createScript(String relativePath) {
+		Integer index = paths.get(relativePath);
+		if (index == null) {
+			return null;
+		}
+		switch (index) {
+%s
+		}
+		return null;
+	}
+}
+""" % (self.appid, max(16, len(scripts) * 2), '\n'.join(paths), '\n'.join(cases))
+
+		# only touch the file when it changed, so javac can skip it
+		if os.path.exists(index_file) and codecs.open(index_file, 'r', encoding='utf-8').read() == source:
+			return
+		if not os.path.exists(index_dir):
+			os.makedirs(index_dir)
+		out = codecs.open(index_file, 'w', encoding='utf-8')
+		out.write(source)
+		out.close()
 
 	def compile_into_bytecode(self, paths):
 		compile_js = False
@@ -172,12 +232,16 @@ class Compiler(object):
 				sys.stdout.flush()
 				compile_js = True
 		
-		if not compile_js: return
+		if not compile_js:
+			self.write_script_index(None)
+			return
 
+		scripts = []
 		for fullpath in paths:
 			# skip any JS found inside HTML <script>
 			if fullpath in self.html_scripts: continue
-			self.compile_javascript(fullpath)
+			scripts.append(self.compile_javascript(fullpath))
+		self.write_script_index(scripts)
 		
 	def get_ext(self, path):
 		fp = os.path.splitext(path)
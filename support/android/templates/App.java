@@ -31,7 +31,7 @@ public final class ${config['classname']}Application extends TiApplication {
 	protected void bootModules(TiContext context) {
 		%for module in app_modules:
 		// ${module['api_name']} module
-		modules.add(new ${module['class_name']}(context));
+		addModule(context, ${module['class_name']}.class);
 		%for child_module in module['external_child_modules']:
 		// ${module['api_name']}.${child_module['name']}
 		KrollModule.addExternalChildModule(${module['class_name']}.class, ${child_module['proxyClassName']}.class);